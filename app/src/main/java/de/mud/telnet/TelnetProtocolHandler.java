@@ -117,6 +117,9 @@ public abstract class TelnetProtocolHandler {
     sentDX = new byte[256];
     receivedWX = new byte[256];
     sentWX = new byte[256];
+    synchronized (timingMarkLock) {
+      timingMarksPending = 0;
+    }
   }
 
   // ===================================================================
@@ -166,6 +169,8 @@ public abstract class TelnetProtocolHandler {
   private final static byte TELOPT_ECHO  = (byte)1;  /* echo on/off */
   /** Telnet option: sga */
   private final static byte TELOPT_SGA   = (byte)3;  /* supress go ahead */
+  /** Telnet option: timing mark */
+  private final static byte TELOPT_TM    = (byte)6;  /* timing mark */
   /** Telnet option: End Of Record */
   private final static byte TELOPT_EOR   = (byte)25;  /* end of record */
   /** Telnet option: Negotiate About Window Size */
@@ -199,6 +204,56 @@ public abstract class TelnetProtocolHandler {
   /** What IAC WILL/WONT request do we have sent already ? */
   private byte[] sentWX;
 
+  /** Timing marks asked for and not yet answered, guarded by timingMarkLock. */
+  private final Object timingMarkLock = new Object();
+  private int timingMarksPending = 0;
+
+  /**
+   * Ask the remote host for a timing mark (IAC DO TIMING-MARK, RFC 860).
+   * It answers with WILL or WONT once it has processed everything sent
+   * before, which is reported through notifyTimingMark(). A WILL or WONT
+   * that arrives while no timing mark is outstanding is negotiated like
+   * any other option instead.
+   */
+  public void sendTimingMark()
+    throws IOException {
+    byte[] b = new byte[3];
+
+    b[0] = IAC;
+    b[1] = DO;
+    b[2] = TELOPT_TM;
+    synchronized (timingMarkLock) {
+      timingMarksPending++;
+    }
+    try {
+      write(b);
+    } catch (IOException e) {
+      synchronized (timingMarkLock) {
+        timingMarksPending--;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return whether a timing mark was outstanding, in which case it is
+   *         now answered
+   */
+  private boolean answerTimingMark() {
+    synchronized (timingMarkLock) {
+      if (timingMarksPending == 0)
+        return false;
+      timingMarksPending--;
+      return true;
+    }
+  }
+
+  /**
+   * Called when the remote host answers a timing mark request.
+   */
+  protected void notifyTimingMark() {
+  }
+
   /**
    * Send a Telnet Escape character (IAC <code>)
    */
@@ -433,6 +488,12 @@ public abstract class TelnetProtocolHandler {
         }
         break;
       case STATE_IACWILL:
+        if (b == TELOPT_TM && answerTimingMark()) {
+          // the answer to sendTimingMark(), which needs no reply
+          notifyTimingMark();
+          neg_state = STATE_DATA;
+          break;
+        }
         switch(b) {
         case TELOPT_ECHO:
           if(debug > 2) System.err.println("ECHO");
@@ -468,6 +529,11 @@ public abstract class TelnetProtocolHandler {
         neg_state = STATE_DATA;
         break;
       case STATE_IACWONT:
+        if (b == TELOPT_TM && answerTimingMark()) {
+          notifyTimingMark();
+          neg_state = STATE_DATA;
+          break;
+        }
         switch(b) {
         case TELOPT_ECHO:
           if(debug > 2) System.err.println("ECHO");
@@ -959,6 +959,8 @@ public class ConsoleActivity extends AppCompatActivity implements BridgeDisconne
 		if (forcedOrientation && bound != null) {
 			bound.setResizeAllowed(false);
 		}
+
+		updateVisibleBridges(false);
 	}
 
 	@Override
@@ -979,6 +981,8 @@ public class ConsoleActivity extends AppCompatActivity implements BridgeDisconne
 		if (forcedOrientation && bound != null) {
 			bound.setResizeAllowed(true);
 		}
+
+		updateVisibleBridges(true);
 	}
 
 	/* (non-Javadoc)
@@ -1170,9 +1174,28 @@ public class ConsoleActivity extends AppCompatActivity implements BridgeDisconne
 			terminalNameOverlay.startAnimation(fade_out_delayed);
 		updateDefault();
 		updatePromptVisible();
+		updateVisibleBridges(true);
 		ActivityCompat.invalidateOptionsMenu(ConsoleActivity.this);
 	}
 
+	/**
+	 * Tell each bridge whether it is the one being shown. Every other bridge,
+	 * including those on off-screen pages the pager keeps around, runs headless
+	 * until it is selected again.
+	 *
+	 * @param shown whether this activity is in the foreground
+	 */
+	private void updateVisibleBridges(boolean shown) {
+		if (bound == null) {
+			return;
+		}
+
+		TerminalBridge current = shown ? adapter.getBridgeAtPosition(pager.getCurrentItem()) : null;
+		for (TerminalBridge bridge : bound.getBridges()) {
+			bridge.setVisible(bridge == current);
+		}
+	}
+
 	/**
 	 * Displays the child in the ViewPager at the requestedIndex and updates the prompts.
 	 *
@@ -1215,6 +1238,7 @@ public class ConsoleActivity extends AppCompatActivity implements BridgeDisconne
 			}
 			TerminalBridge bridge = bound.getBridges().get(position);
 			bridge.promptHelper.setHandler(promptHandler);
+			bridge.setVisible(position == pager.getCurrentItem());
 
 			// inflate each terminal view
 			RelativeLayout view = (RelativeLayout) inflater.inflate(
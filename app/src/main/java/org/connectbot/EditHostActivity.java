@@ -38,6 +38,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import org.connectbot.bean.HostBean;
+import org.connectbot.data.HostStorage;
 import org.connectbot.service.TerminalBridge;
 import org.connectbot.service.TerminalManager;
 import org.connectbot.util.HostDatabase;
@@ -51,6 +52,7 @@ public class EditHostActivity extends AppCompatActivity implements HostEditorFra
 	private static final int DISABLED_ALPHA = 130;
 
 	private HostDatabase mHostDb;
+	private HostStorage mServiceHostDb;
 	private PubkeyDatabase mPubkeyDb;
 	private ServiceConnection mTerminalConnection;
 	private HostBean mHost;
@@ -79,10 +81,12 @@ public class EditHostActivity extends AppCompatActivity implements HostEditorFra
 			public void onServiceConnected(ComponentName className, IBinder service) {
 				TerminalManager bound = ((TerminalManager.TerminalBinder) service).getService();
 				mBridge = bound.getConnectedBridge(mHost);
+				mServiceHostDb = bound.hostdb;
 			}
 
 			public void onServiceDisconnected(ComponentName name) {
 				mBridge = null;
+				mServiceHostDb = null;
 			}
 		};
 
@@ -222,7 +226,12 @@ public class EditHostActivity extends AppCompatActivity implements HostEditorFra
 			return;
 		}
 
-		mHostDb.saveHost(mHost);
+		// Save through the service when we can, so this replaces any update to
+		// the host it is still holding back rather than being overwritten by it.
+		if (mServiceHostDb != null)
+			mServiceHostDb.saveHost(mHost);
+		else
+			mHostDb.saveHost(mHost);
 
 		if (mBridge != null) {
 			// If the console is already open, apply the new encoding now. If the console
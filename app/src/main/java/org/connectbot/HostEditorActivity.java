@@ -75,7 +75,6 @@ public class HostEditorActivity extends AppCompatPreferenceActivity implements O
 			if (cursor.moveToFirst()) {
 				for (int i = 0; i < cursor.getColumnCount(); i++) {
 					String key = cursor.getColumnName(i);
-					if (key.equals(HostDatabase.FIELD_HOST_HOSTKEY)) continue;
 					String value = cursor.getString(i);
 					values.put(key, value);
 				}
@@ -98,6 +97,10 @@ public class HostEditorActivity extends AppCompatPreferenceActivity implements O
 			}
 
 			public boolean commit() {
+				// a held back update written after ours would undo it
+				if (bound != null)
+					bound.flushHostWrites();
+
 				SQLiteDatabase db = hostdb.getWritableDatabase();
 				db.beginTransaction();
 				try {
@@ -221,6 +224,7 @@ public class HostEditorActivity extends AppCompatPreferenceActivity implements O
 
 	private HostBean host;
 	protected TerminalBridge hostBridge;
+	private TerminalManager bound;
 
 	@Override
 	public void onCreate(Bundle icicle) {
@@ -238,12 +242,18 @@ public class HostEditorActivity extends AppCompatPreferenceActivity implements O
 
 		connection = new ServiceConnection() {
 			public void onServiceConnected(ComponentName className, IBinder service) {
-				TerminalManager bound = ((TerminalManager.TerminalBinder) service).getService();
+				bound = ((TerminalManager.TerminalBinder) service).getService();
 
 				hostBridge = bound.getConnectedBridge(host);
+
+				// show any updates the service was still holding back
+				bound.flushHostWrites();
+				pref.cacheValues();
+				updateSummaries();
 			}
 
 			public void onServiceDisconnected(ComponentName name) {
+				bound = null;
 				hostBridge = null;
 			}
 		};
@@ -302,6 +312,7 @@ public class HostEditorActivity extends AppCompatPreferenceActivity implements O
 		super.onStop();
 
 		unbindService(connection);
+		bound = null;
 
 		hostdb = null;
 		pubkeydb = null;
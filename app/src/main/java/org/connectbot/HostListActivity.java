@@ -17,15 +17,23 @@
 
 package org.connectbot;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.List;
 
 import org.connectbot.bean.HostBean;
-import org.connectbot.data.HostStorage;
+import org.connectbot.data.HostCatalogue;
+import org.connectbot.service.BackupWrapper;
 import org.connectbot.service.OnHostStatusChangedListener;
 import org.connectbot.service.TerminalBridge;
 import org.connectbot.service.TerminalManager;
 import org.connectbot.transport.TransportFactory;
 import org.connectbot.util.HostDatabase;
+import org.connectbot.util.HostImporter;
+import org.connectbot.util.ListDiff;
 import org.connectbot.util.PreferenceConstants;
 
 import android.app.AlertDialog;
@@ -38,6 +46,7 @@ import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -45,8 +54,10 @@ import android.preference.PreferenceManager;
 import android.support.annotation.StyleRes;
 import android.support.annotation.VisibleForTesting;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.ContextMenu;
@@ -59,17 +70,22 @@ import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 public class HostListActivity extends AppCompatListActivity implements OnHostStatusChangedListener {
 	public final static String TAG = "CB.HostListActivity";
 	public static final String DISCONNECT_ACTION = "org.connectbot.action.DISCONNECT";
 
 	public final static int REQUEST_EDIT = 1;
+	public final static int REQUEST_IMPORT_HOSTS = 2;
+	public final static int REQUEST_IMPORT_KNOWN_HOSTS = 3;
 
 	protected TerminalManager bound = null;
 
-	private HostStorage hostdb;
+	/** Built on the service's host storage once we are bound to it. */
+	private HostCatalogue hostdb;
 	private List<HostBean> hosts;
+	private String filter = "";
 	protected LayoutInflater inflater = null;
 
 	protected boolean sortedByColor = false;
@@ -90,13 +106,28 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 	 */
 	private boolean closeOnDisconnectAll = true;
 
+	/** A file picked for import before the service was bound. */
+	private Uri pendingImport = null;
+	private boolean pendingImportKnownHosts = false;
+
 	private ServiceConnection connection = new ServiceConnection() {
 		public void onServiceConnected(ComponentName className, IBinder service) {
 			bound = ((TerminalManager.TerminalBinder) service).getService();
 
+			// Go through the service's storage so the list includes updates it
+			// is still holding back, and a delayed write of an older copy of a
+			// host cannot undo a change made here.
+			hostdb = new HostCatalogue(bound.hostdb != null ? bound.hostdb
+					: HostDatabase.get(HostListActivity.this));
+
 			// update our listview binder to find the service
 			HostListActivity.this.updateList();
 
+			if (pendingImport != null) {
+				importFile(pendingImport, pendingImportKnownHosts);
+				pendingImport = null;
+			}
+
 			bound.registerOnHostStatusChangedListener(HostListActivity.this);
 
 			if (waitingForDisconnectAll) {
@@ -118,8 +149,6 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 
 		// start the terminal manager service
 		this.bindService(new Intent(this, TerminalManager.class), connection, Context.BIND_AUTO_CREATE);
-
-		hostdb = HostDatabase.get(this);
 	}
 
 	@Override
@@ -127,8 +156,6 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 		super.onStop();
 		this.unbindService(connection);
 
-		hostdb = null;
-
 		closeOnDisconnectAll = true;
 	}
 
@@ -157,10 +184,82 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 	@Override
 	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
 		if (requestCode == REQUEST_EDIT) {
-			this.updateList();
+			// hosts were edited outside of our catalogue
+			if (hostdb != null) {
+				hostdb.reload();
+				this.updateList();
+			}
+		} else if ((requestCode == REQUEST_IMPORT_HOSTS || requestCode == REQUEST_IMPORT_KNOWN_HOSTS)
+				&& resultCode == RESULT_OK && data != null && data.getData() != null) {
+			if (hostdb != null) {
+				importFile(data.getData(), requestCode == REQUEST_IMPORT_KNOWN_HOSTS);
+			} else {
+				pendingImport = data.getData();
+				pendingImportKnownHosts = requestCode == REQUEST_IMPORT_KNOWN_HOSTS;
+			}
 		}
 	}
 
+	/**
+	 * Read hosts from an {@code ssh_config} or CSV file, or host keys from a
+	 * {@code known_hosts} file, away from the UI thread.
+	 */
+	private void importFile(final Uri uri, final boolean knownHosts) {
+		final HostCatalogue catalogue = hostdb;
+		new AsyncTask<Void, Void, String>() {
+			@Override
+			protected String doInBackground(Void... unused) {
+				HostImporter.Source source = new HostImporter.Source() {
+					public Reader open() throws IOException {
+						InputStream is = getContentResolver().openInputStream(uri);
+						if (is == null)
+							throw new FileNotFoundException(uri.toString());
+						return new InputStreamReader(is, "UTF-8");
+					}
+				};
+
+				try {
+					if (knownHosts) {
+						Reader reader = source.open();
+						try {
+							int imported = catalogue.importKnownHosts(reader);
+							return getString(R.string.list_import_known_hosts_done, imported);
+						} finally {
+							reader.close();
+						}
+					}
+
+					HostImporter importer = HostImporter.open(source);
+					try {
+						HostImporter.Result result = catalogue.importHosts(importer);
+						return getString(R.string.list_import_hosts_done, result.hosts,
+								result.skipped, result.getRowsPerSecond());
+					} finally {
+						importer.close();
+					}
+				} catch (IOException | RuntimeException e) {
+					Log.e(TAG, "Could not import " + uri, e);
+					return getString(R.string.list_import_failed);
+				}
+			}
+
+			@Override
+			protected void onPostExecute(String message) {
+				BackupWrapper.getInstance().onDataChanged(HostListActivity.this);
+				Toast.makeText(HostListActivity.this, message, Toast.LENGTH_LONG).show();
+				updateList();
+			}
+		}.execute();
+	}
+
+	private void pickImportFile(int requestCode) {
+		Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+		intent.setType("*/*");
+		intent.addCategory(Intent.CATEGORY_OPENABLE);
+		startActivityForResult(Intent.createChooser(intent, getString(R.string.list_import_pick)),
+				requestCode);
+	}
+
 	@Override
 	public void onCreate(Bundle icicle) {
 		super.onCreate(icicle);
@@ -202,9 +301,6 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 		this.makingShortcut = Intent.ACTION_CREATE_SHORTCUT.equals(getIntent().getAction())
 								|| Intent.ACTION_PICK.equals(getIntent().getAction());
 
-		// connect with hosts database and populate list
-		this.hostdb = HostDatabase.get(this);
-
 		this.sortedByColor = prefs.getBoolean(PreferenceConstants.SORT_BY_COLOR, false);
 
 		this.registerForContextMenu(mListView);
@@ -242,6 +338,26 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 	public boolean onCreateOptionsMenu(Menu menu) {
 		super.onCreateOptionsMenu(menu);
 
+		MenuItem search = menu.add(R.string.list_menu_search);
+		search.setIcon(android.R.drawable.ic_menu_search);
+		MenuItemCompat.setShowAsAction(search, MenuItemCompat.SHOW_AS_ACTION_IF_ROOM
+				| MenuItemCompat.SHOW_AS_ACTION_COLLAPSE_ACTION_VIEW);
+
+		SearchView searchView = new SearchView(getSupportActionBar().getThemedContext());
+		searchView.setQueryHint(getString(R.string.list_host_search_hint));
+		searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+			public boolean onQueryTextSubmit(String query) {
+				return true;
+			}
+
+			public boolean onQueryTextChange(String query) {
+				filter = query;
+				updateList();
+				return true;
+			}
+		});
+		MenuItemCompat.setActionView(search, searchView);
+
 		// don't offer menus when creating shortcut
 		if (makingShortcut) return true;
 
@@ -274,6 +390,24 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 		colors.setIcon(android.R.drawable.ic_menu_slideshow);
 		colors.setIntent(new Intent(HostListActivity.this, ColorsActivity.class));
 
+		MenuItem importHosts = menu.add(R.string.list_menu_import_hosts);
+		importHosts.setIcon(android.R.drawable.ic_menu_upload);
+		importHosts.setOnMenuItemClickListener(new OnMenuItemClickListener() {
+			public boolean onMenuItemClick(MenuItem item) {
+				pickImportFile(REQUEST_IMPORT_HOSTS);
+				return true;
+			}
+		});
+
+		MenuItem importKnownHosts = menu.add(R.string.list_menu_import_known_hosts);
+		importKnownHosts.setIcon(android.R.drawable.ic_menu_upload);
+		importKnownHosts.setOnMenuItemClickListener(new OnMenuItemClickListener() {
+			public boolean onMenuItemClick(MenuItem item) {
+				pickImportFile(REQUEST_IMPORT_KNOWN_HOSTS);
+				return true;
+			}
+		});
+
 		MenuItem settings = menu.add(R.string.list_menu_settings);
 		settings.setIcon(android.R.drawable.ic_menu_preferences);
 		settings.setIntent(new Intent(HostListActivity.this, SettingsActivity.class));
@@ -341,33 +475,53 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 	}
 
 	protected void updateList() {
+		updateList(false);
+	}
+
+	/**
+	 * @param statusChanged whether hosts may have connected or disconnected, so
+	 *                      every row needs to be drawn again
+	 */
+	private void updateList(boolean statusChanged) {
 		if (prefs.getBoolean(PreferenceConstants.SORT_BY_COLOR, false) != sortedByColor) {
 			Editor edit = prefs.edit();
 			edit.putBoolean(PreferenceConstants.SORT_BY_COLOR, sortedByColor);
 			edit.commit();
 		}
 
+		// the list is filled in once we are bound to the service
 		if (hostdb == null)
-			hostdb = HostDatabase.get(this);
+			return;
 
-		hosts = hostdb.getHosts(sortedByColor);
+		hosts = hostdb.filter(filter, sortedByColor);
 
 		// Don't lose hosts that are connected via shortcuts but not in the database.
 		if (bound != null) {
 			for (TerminalBridge bridge : bound.getBridges()) {
-				if (!hosts.contains(bridge.host))
+				if (!hostdb.contains(bridge.host) && !hosts.contains(bridge.host)
+						&& HostCatalogue.matches(bridge.host, filter))
 					hosts.add(0, bridge.host);
 			}
 		}
 
-		mAdapter = new HostAdapter(this, hosts, bound);
-		mListView.setAdapter(mAdapter);
+		if (mAdapter == null) {
+			mAdapter = new HostAdapter(this, hosts, bound);
+			mListView.setAdapter(mAdapter);
+		} else {
+			((HostAdapter) mAdapter).setHosts(hosts, bound, statusChanged);
+		}
 		adjustViewVisibility();
 	}
 
 	@Override
 	public void onHostStatusChanged() {
-		updateList();
+		// sessions hold their own copies of hosts with the latest connect time
+		if (bound != null && hostdb != null) {
+			for (TerminalBridge bridge : bound.getBridges())
+				hostdb.update(bridge.host);
+		}
+
+		updateList(true);
 	}
 
 	private class HostViewHolder extends ItemViewHolder {
@@ -476,8 +630,8 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 
 	@VisibleForTesting
 	private class HostAdapter extends ItemAdapter {
-		private final List<HostBean> hosts;
-		private final TerminalManager manager;
+		private List<HostBean> hosts;
+		private TerminalManager manager;
 
 		public final static int STATE_UNKNOWN = 1, STATE_CONNECTED = 2, STATE_DISCONNECTED = 3;
 
@@ -488,6 +642,36 @@ public class HostListActivity extends AppCompatListActivity implements OnHostSta
 			this.manager = manager;
 		}
 
+		/**
+		 * Show {@code hosts} instead, only redrawing the rows that changed.
+		 */
+		public void setHosts(List<HostBean> hosts, TerminalManager manager, boolean redrawAll) {
+			final List<HostBean> oldHosts = this.hosts;
+			this.hosts = hosts;
+			this.manager = manager;
+
+			ListDiff.dispatch(oldHosts, hosts, new ListDiff.Callback() {
+				public void onRemoved(int position, int count) {
+					notifyItemRangeRemoved(position, count);
+				}
+
+				public void onInserted(int position, int count) {
+					notifyItemRangeInserted(position, count);
+				}
+
+				public void onChanged(int position) {
+					notifyItemChanged(position);
+				}
+
+				public void onReordered() {
+					notifyDataSetChanged();
+				}
+			});
+
+			if (redrawAll)
+				notifyItemRangeChanged(0, hosts.size());
+		}
+
 		/**
 		 * Check if we're connected to a terminal with the given host.
 		 */
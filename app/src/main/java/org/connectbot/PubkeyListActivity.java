@@ -42,6 +42,7 @@ import com.trilead.ssh2.crypto.PEMDecoder;
 import com.trilead.ssh2.crypto.PEMStructure;
 
 import android.app.AlertDialog;
+import android.app.ProgressDialog;
 import android.content.ActivityNotFoundException;
 import android.content.ComponentName;
 import android.content.Context;
@@ -232,43 +233,113 @@ public class PubkeyListActivity extends AppCompatListActivity implements EventLi
 		}
 	}
 
-	protected void handleAddKey(PubkeyBean keybean, String password) {
-		KeyPair pair = null;
-		if (PubkeyDatabase.KEY_TYPE_IMPORTED.equals(keybean.getType())) {
-			// load specific key using pem format
-			try {
-				pair = PEMDecoder.decode(new String(keybean.getPrivateKey()).toCharArray(), password);
-			} catch (Exception e) {
-				String message = getResources().getString(R.string.pubkey_failed_add, keybean.getNickname());
-				Log.e(TAG, message, e);
-				Toast.makeText(PubkeyListActivity.this, message, Toast.LENGTH_LONG).show();
+	protected void handleAddKey(final PubkeyBean keybean, final String password) {
+		final ProgressDialog progress = ProgressDialog.show(this, null,
+				getString(R.string.pubkey_unlocking), true, false);
+
+		// Deriving the key from the password is deliberately slow, so unlock
+		// and save the key off the UI thread.
+		Thread unlockThread = new Thread(new Runnable() {
+			public void run() {
+				final KeyPair pair = unlockKey(keybean, password);
+
+				runOnUiThread(new Runnable() {
+					public void run() {
+						progress.dismiss();
+
+						if (pair == null) {
+							String message = getResources().getString(R.string.pubkey_failed_add, keybean.getNickname());
+							Toast.makeText(PubkeyListActivity.this, message, Toast.LENGTH_LONG).show();
+							return;
+						}
+
+						Log.d(TAG, String.format("Unlocked key '%s'", keybean.getNickname()));
+
+						// save this key in memory
+						if (bound != null)
+							bound.addKey(keybean, pair, true);
+
+						updateList();
+					}
+				});
 			}
-		} else {
+		});
+		unlockThread.setName("UnlockKey");
+		unlockThread.start();
+	}
+
+	/**
+	 * Decrypt a key, saving it again if its encryption was upgraded. Called
+	 * off the UI thread.
+	 *
+	 * @return the unlocked key pair, or <code>null</code> if it could not be
+	 *         unlocked
+	 */
+	private KeyPair unlockKey(PubkeyBean keybean, String password) {
+		try {
+			if (PubkeyDatabase.KEY_TYPE_IMPORTED.equals(keybean.getType())) {
+				// load specific key using pem format
+				return PEMDecoder.decode(new String(keybean.getPrivateKey()).toCharArray(), password);
+			}
+
 			// load using internal generated format
-			try {
-				PrivateKey privKey = PubkeyUtils.decodePrivate(keybean.getPrivateKey(), keybean.getType(), password);
-				PublicKey pubKey = PubkeyUtils.decodePublic(keybean.getPublicKey(), keybean.getType());
-				Log.d(TAG, "Unlocked key " + PubkeyUtils.formatKey(pubKey));
-
-				pair = new KeyPair(pubKey, privKey);
-			} catch (Exception e) {
-				String message = getResources().getString(R.string.pubkey_failed_add, keybean.getNickname());
-				Log.e(TAG, message, e);
-				Toast.makeText(PubkeyListActivity.this, message, Toast.LENGTH_LONG).show();
-				return;
+			PrivateKey privKey = PubkeyUtils.decodePrivate(keybean.getPrivateKey(), keybean.getType(), password);
+			PublicKey pubKey = PubkeyUtils.decodePublic(keybean.getPublicKey(), keybean.getType());
+			Log.d(TAG, "Unlocked key " + PubkeyUtils.formatKey(pubKey));
+
+			if (keybean.upgradeEncryption(privKey, password)) {
+				Log.d(TAG, String.format("Upgraded encryption of key '%s'", keybean.getNickname()));
+				PubkeyDatabase.get(PubkeyListActivity.this).savePubkey(keybean);
 			}
-		}
 
-		if (pair == null) {
-			return;
+			return new KeyPair(pubKey, privKey);
+		} catch (Exception e) {
+			Log.e(TAG, String.format("Could not unlock key '%s'", keybean.getNickname()), e);
+			return null;
 		}
+	}
 
-		Log.d(TAG, String.format("Unlocked key '%s'", keybean.getNickname()));
+	/**
+	 * Re-encrypt a key under a new password and save it. The old and new
+	 * passwords both go through the slow key derivation, so this runs off
+	 * the UI thread and reports back with a dialog.
+	 */
+	private void changePassword(final PubkeyBean pubkey, final String oldPassword, final String newPassword) {
+		final ProgressDialog progress = ProgressDialog.show(this, null,
+				getString(R.string.pubkey_changing_password), true, false);
 
-		// save this key in memory
-		bound.addKey(keybean, pair, true);
+		Thread changeThread = new Thread(new Runnable() {
+			public void run() {
+				int error = 0;
+				try {
+					if (pubkey.changePassword(oldPassword, newPassword))
+						PubkeyDatabase.get(PubkeyListActivity.this).savePubkey(pubkey);
+					else
+						error = R.string.alert_wrong_password_msg;
+				} catch (Exception e) {
+					Log.e(TAG, "Could not change private key password", e);
+					error = R.string.alert_key_corrupted_msg;
+				}
 
-		updateList();
+				final int message = error;
+				runOnUiThread(new Runnable() {
+					public void run() {
+						progress.dismiss();
+
+						if (message != 0) {
+							new AlertDialog.Builder(PubkeyListActivity.this)
+									.setMessage(message)
+									.setPositiveButton(android.R.string.ok, null)
+									.create().show();
+						} else {
+							updateList();
+						}
+					}
+				});
+			}
+		});
+		changeThread.setName("ChangeKeyPassword");
+		changeThread.start();
 	}
 
 	protected void updateList() {
@@ -543,24 +614,7 @@ public class PubkeyListActivity extends AppCompatListActivity implements EventLi
 										return;
 									}
 
-									try {
-										if (!pubkey.changePassword(oldPassword, password1))
-											new AlertDialog.Builder(PubkeyListActivity.this)
-													.setMessage(R.string.alert_wrong_password_msg)
-													.setPositiveButton(android.R.string.ok, null)
-													.create().show();
-										else {
-											PubkeyDatabase pubkeyDb = PubkeyDatabase.get(PubkeyListActivity.this);
-											pubkeyDb.savePubkey(pubkey);
-											updateList();
-										}
-									} catch (Exception e) {
-										Log.e(TAG, "Could not change private key password", e);
-										new AlertDialog.Builder(PubkeyListActivity.this)
-												.setMessage(R.string.alert_key_corrupted_msg)
-												.setPositiveButton(android.R.string.ok, null)
-												.create().show();
-									}
+									changePassword(pubkey, oldPassword, password1);
 								}
 							})
 							.setNegativeButton(android.R.string.cancel, null).create().show();
@@ -18,13 +18,12 @@
 package org.connectbot;
 
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.connectbot.bean.SelectionArea;
 import org.connectbot.service.FontSizeChangedListener;
 import org.connectbot.service.TerminalBridge;
 import org.connectbot.service.TerminalKeyListener;
+import org.connectbot.util.AccessibilityTextBuffer;
 import org.connectbot.util.PreferenceConstants;
 import org.connectbot.util.TerminalTextViewOverlay;
 import org.connectbot.util.TerminalViewPager;
@@ -102,15 +101,12 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 	private boolean mAccessibilityInitialized = false;
 	private boolean mAccessibilityActive = true;
 	private Object[] mAccessibilityLock = new Object[0];
-	private StringBuffer mAccessibilityBuffer;
-	private Pattern mControlCodes = null;
-	private Matcher mCodeMatcher = null;
+	private AccessibilityTextBuffer mAccessibilityBuffer;
+	private boolean mAccessibilityEventPending = false;
 	private AccessibilityEventSender mEventSender = null;
 
-	private static final String BACKSPACE_CODE = "\\x08\\x1b\\[K";
-	private static final String CONTROL_CODE_PATTERN = "\\x1b\\[K[^m]+[m|:]";
-
 	private static final int ACCESSIBILITY_EVENT_THRESHOLD = 1000;
+	private static final int ACCESSIBILITY_BUFFER_SIZE = 4096;
 	private static final String SCREENREADER_INTENT_ACTION = "android.accessibilityservice.AccessibilityService";
 	private static final String SCREENREADER_INTENT_CATEGORY = "android.accessibilityservice.category.FEEDBACK_SPOKEN";
 
@@ -187,7 +183,7 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 			terminalTextViewOverlay.setOnKeyListener(bridge.getKeyHandler());
 		}
 
-		mAccessibilityBuffer = new StringBuffer();
+		mAccessibilityBuffer = new AccessibilityTextBuffer(ACCESSIBILITY_BUFFER_SIZE);
 
 		// Enable accessibility features if a screen reader is active.
 		new AccessibilityStateTester().execute((Void) null);
@@ -400,13 +396,16 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 
 	@Override
 	public void onDraw(Canvas canvas) {
-		if (bridge.bitmap != null) {
-			// draw the bitmap
-			bridge.onDraw();
+		// draw the bitmap, which reallocates it if it was released while hidden
+		bridge.onDraw();
 
+		if (bridge.bitmap != null) {
 			// draw the bridge bitmap if it exists
 			canvas.drawBitmap(bridge.bitmap, 0, 0, paint);
 
+			// local echo guesses go over the bitmap, never into it
+			bridge.drawPredictions(canvas);
+
 			// also draw cursor if visible
 			if (bridge.buffer.isCursorVisible()) {
 				int cursorColumn = bridge.buffer.getCursorColumn();
@@ -549,17 +548,17 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 	public void propagateConsoleText(char[] rawText, int length) {
 		if (mAccessibilityActive) {
 			synchronized (mAccessibilityLock) {
-				mAccessibilityBuffer.append(rawText, 0, length);
-			}
+				if (mAccessibilityBuffer != null)
+					mAccessibilityBuffer.append(rawText, 0, length);
 
-			if (mAccessibilityInitialized) {
-				if (mEventSender != null) {
-					removeCallbacks(mEventSender);
-				} else {
-					mEventSender = new AccessibilityEventSender();
-				}
+				// Send at most one event per threshold however fast output arrives.
+				if (mAccessibilityInitialized && !mAccessibilityEventPending) {
+					if (mEventSender == null)
+						mEventSender = new AccessibilityEventSender();
 
-				postDelayed(mEventSender, ACCESSIBILITY_EVENT_THRESHOLD);
+					mAccessibilityEventPending = true;
+					postDelayed(mEventSender, ACCESSIBILITY_EVENT_THRESHOLD);
+				}
 			}
 		}
 
@@ -573,37 +572,40 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 		});
 	}
 
+	/**
+	 * Called by our {@link TerminalBridge} when it leaves headless mode. Lines
+	 * may have scrolled into the buffer while we were hidden, so let the text
+	 * overlay catch up once.
+	 */
+	public void onBridgeShown() {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				if (terminalTextViewOverlay != null) {
+					terminalTextViewOverlay.onBufferChanged();
+				}
+			}
+		});
+	}
+
 	private class AccessibilityEventSender implements Runnable {
 		public void run() {
+			String text;
 			synchronized (mAccessibilityLock) {
-				if (mCodeMatcher == null) {
-					mCodeMatcher = mControlCodes.matcher(mAccessibilityBuffer);
-				} else {
-					mCodeMatcher.reset(mAccessibilityBuffer);
-				}
-
-				// Strip all control codes out.
-				mAccessibilityBuffer = new StringBuffer(mCodeMatcher.replaceAll(" "));
+				mAccessibilityEventPending = false;
+				if (mAccessibilityBuffer == null || mAccessibilityBuffer.length() == 0)
+					return;
 
-				// Apply Backspaces using backspace character sequence
-				int i = mAccessibilityBuffer.indexOf(BACKSPACE_CODE);
-				while (i != -1) {
-					mAccessibilityBuffer = mAccessibilityBuffer.replace(i == 0 ? 0 : i - 1, i
-							+ BACKSPACE_CODE.length(), "");
-					i = mAccessibilityBuffer.indexOf(BACKSPACE_CODE);
-				}
+				text = mAccessibilityBuffer.drain();
+			}
 
-				if (mAccessibilityBuffer.length() > 0) {
-					AccessibilityEvent event = AccessibilityEvent.obtain(
-							AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED);
-					event.setFromIndex(0);
-					event.setAddedCount(mAccessibilityBuffer.length());
-					event.getText().add(mAccessibilityBuffer);
+			AccessibilityEvent event = AccessibilityEvent.obtain(
+					AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED);
+			event.setFromIndex(0);
+			event.setAddedCount(text.length());
+			event.getText().add(text);
 
-					sendAccessibilityEventUnchecked(event);
-					mAccessibilityBuffer.setLength(0);
-				}
-			}
+			sendAccessibilityEventUnchecked(event);
 		}
 	}
 
@@ -663,10 +665,6 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 				}
 			}
 
-			if (foundScreenReader) {
-				mControlCodes = Pattern.compile(CONTROL_CODE_PATTERN);
-			}
-
 			return foundScreenReader;
 		}
 
@@ -676,11 +674,18 @@ public class TerminalView extends FrameLayout implements FontSizeChangedListener
 
 			mAccessibilityInitialized = true;
 
-			if (result) {
-				mEventSender = new AccessibilityEventSender();
-				postDelayed(mEventSender, ACCESSIBILITY_EVENT_THRESHOLD);
-			} else {
-				mAccessibilityBuffer = null;
+			synchronized (mAccessibilityLock) {
+				if (result) {
+					if (mEventSender == null)
+						mEventSender = new AccessibilityEventSender();
+
+					if (!mAccessibilityEventPending) {
+						mAccessibilityEventPending = true;
+						postDelayed(mEventSender, ACCESSIBILITY_EVENT_THRESHOLD);
+					}
+				} else {
+					mAccessibilityBuffer = null;
+				}
 			}
 		}
 	}
@@ -231,4 +231,18 @@ public class PubkeyBean extends AbstractBean {
 
 		return true;
 	}
+
+	/**
+	 * Encrypt the private key again if it was stored in an older format. Call
+	 * this after the key has been unlocked with its password.
+	 *
+	 * @return whether the key changed and should be saved
+	 */
+	public boolean upgradeEncryption(PrivateKey priv, String password) throws Exception {
+		if (!encrypted || password == null || !PubkeyUtils.needsReencryption(privateKey))
+			return false;
+
+		setPrivateKey(PubkeyUtils.getEncodedPrivate(priv, password));
+		return true;
+	}
 }
@@ -0,0 +1,582 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.connectbot.util.HostImporter;
+
+/**
+ * In-memory copy of the host list that can be searched as the user types.
+ * Hosts are loaded once from the underlying storage and kept up to date by
+ * writes made through this class; anything written elsewhere needs a
+ * {@link #reload()}.
+ * <p>
+ * A query is split into words, and a host matches when every word is found
+ * in its nickname, hostname or username. Words of one or two characters must
+ * start a word of the host's names, as matching them anywhere would match
+ * nearly everything. Longer words may appear anywhere and are looked up by
+ * their trigrams; shorter ones through a sorted index of name prefixes.
+ * A query that only extends the previous one is answered by filtering the
+ * previous result.
+ */
+public class HostCatalogue implements HostStorage {
+	private static final int TRIGRAM = 3;
+
+	private static final int[] NONE = new int[0];
+
+	private static final Comparator<HostBean> BY_NICKNAME = new Comparator<HostBean>() {
+		public int compare(HostBean a, HostBean b) {
+			return compareStrings(a.getNickname(), b.getNickname());
+		}
+	};
+
+	private static final Comparator<HostBean> BY_COLOR = new Comparator<HostBean>() {
+		public int compare(HostBean a, HostBean b) {
+			int result = compareStrings(a.getColor(), b.getColor());
+			return result != 0 ? result : BY_NICKNAME.compare(a, b);
+		}
+	};
+
+	/**
+	 * Sorted set of host slots, kept small since most trigrams and name
+	 * prefixes belong to only a few hosts.
+	 */
+	private static class SlotList {
+		int[] slots = new int[2];
+		int size = 0;
+
+		void add(int slot) {
+			// slots are mostly handed out in increasing order
+			int i = size;
+			if (size > 0 && slots[size - 1] >= slot) {
+				i = Arrays.binarySearch(slots, 0, size, slot);
+				if (i >= 0)
+					return;
+				i = -(i + 1);
+			}
+
+			if (size == slots.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(slots, 0, grown, 0, size);
+				slots = grown;
+			}
+			System.arraycopy(slots, i, slots, i + 1, size - i);
+			slots[i] = slot;
+			size++;
+		}
+
+		boolean remove(int slot) {
+			int i = Arrays.binarySearch(slots, 0, size, slot);
+			if (i >= 0) {
+				System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+				size--;
+			}
+			return size == 0;
+		}
+	}
+
+	private final HostStorage storage;
+
+	/* Everything below is guarded by this */
+	private boolean loaded = false;
+	private boolean sortedByColor = false;
+
+	/** Hosts by slot; a slot is {@code null} once its host is deleted. */
+	private final List<HostBean> hosts = new ArrayList<>();
+	/** Lower case names of each host, separated by newlines. */
+	private final List<String> names = new ArrayList<>();
+	private final Map<Long, Integer> slotsById = new HashMap<>();
+
+	private final Map<String, SlotList> trigrams = new HashMap<>();
+	private final TreeMap<String, SlotList> prefixes = new TreeMap<>();
+
+	/** Live slots in display order, or {@code null} if it must be sorted again. */
+	private int[] order;
+	/** Display position of each slot. */
+	private int[] position;
+
+	/** Changes whenever the hosts or their order change. */
+	private int generation = 0;
+
+	private String[] lastWords;
+	private int[] lastResult;
+	private int lastGeneration;
+
+	private int searches = 0;
+	private int narrowedSearches = 0;
+
+	public HostCatalogue(HostStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * Read all hosts again from the underlying storage the next time they are
+	 * needed.
+	 */
+	public synchronized void reload() {
+		loaded = false;
+		clear();
+	}
+
+	/**
+	 * @return the hosts matching {@code query}, in the same order as
+	 *         {@link #getHosts(boolean)}
+	 */
+	public synchronized List<HostBean> filter(String query, boolean sortedByColor) {
+		prepare(sortedByColor);
+
+		String[] words = splitQuery(query);
+		int[] result;
+		if (words.length == 0) {
+			result = order;
+		} else if (lastWords != null && lastGeneration == generation && narrows(lastWords, words)) {
+			result = match(lastResult, words);
+			narrowedSearches++;
+		} else {
+			result = search(words);
+		}
+		searches++;
+
+		lastWords = words;
+		lastResult = result;
+		lastGeneration = generation;
+
+		List<HostBean> matches = new ArrayList<>(result.length);
+		for (int slot : result)
+			matches.add(hosts.get(slot));
+		return matches;
+	}
+
+	/**
+	 * @return whether {@code host} would be found by {@code query}, whether it
+	 *         is in the catalogue or not
+	 */
+	public static boolean matches(HostBean host, String query) {
+		return matches(getNames(host), splitQuery(query));
+	}
+
+	/**
+	 * @return whether a stored host with the same ID is in the catalogue
+	 */
+	public synchronized boolean contains(HostBean host) {
+		prepare(sortedByColor);
+		return slotsById.containsKey(host.getId());
+	}
+
+	/**
+	 * Use {@code host} in place of the catalogue's copy of the same stored
+	 * host, such as one held by a running session. The search indexes are only
+	 * updated if any of its names changed.
+	 */
+	public synchronized void update(HostBean host) {
+		if (!loaded)
+			return;
+
+		Integer slot = slotsById.get(host.getId());
+		if (slot == null)
+			return;
+
+		HostBean old = hosts.get(slot);
+		if (old == host)
+			return;
+
+		if (getNames(host).equals(names.get(slot))
+				&& compareStrings(host.getNickname(), old.getNickname()) == 0
+				&& compareStrings(host.getColor(), old.getColor()) == 0) {
+			hosts.set(slot, host);
+		} else {
+			put(host);
+		}
+	}
+
+	/**
+	 * @return the number of searches run
+	 */
+	public synchronized int getSearches() {
+		return searches;
+	}
+
+	/**
+	 * @return the number of searches answered by narrowing the previous result
+	 */
+	public synchronized int getNarrowedSearches() {
+		return narrowedSearches;
+	}
+
+	@Override
+	public void resetDatabase() {
+		storage.resetDatabase();
+		reload();
+	}
+
+	@Override
+	public HostBean findHost(Map<String, String> selection) {
+		return storage.findHost(selection);
+	}
+
+	@Override
+	public synchronized void deleteHost(HostBean host) {
+		storage.deleteHost(host);
+		if (loaded)
+			remove(host.getId());
+	}
+
+	@Override
+	public synchronized HostBean saveHost(HostBean host) {
+		HostBean saved = storage.saveHost(host);
+		if (loaded)
+			put(saved);
+		return saved;
+	}
+
+	@Override
+	public synchronized List<HostBean> getHosts(boolean sortedByColor) {
+		return filter(null, sortedByColor);
+	}
+
+	@Override
+	public void touchHost(HostBean host) {
+		storage.touchHost(host);
+	}
+
+	@Override
+	public synchronized HostBean findHostById(long hostId) {
+		prepare(sortedByColor);
+		Integer slot = slotsById.get(hostId);
+		return slot == null ? null : hosts.get(slot);
+	}
+
+	@Override
+	public int verifyKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey) {
+		return storage.verifyKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey);
+	}
+
+	@Override
+	public void saveKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey) {
+		storage.saveKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey);
+	}
+
+	@Override
+	public int importKnownHosts(Reader reader) throws IOException {
+		return storage.importKnownHosts(reader);
+	}
+
+	@Override
+	public HostImporter.Result importHosts(HostImporter importer) throws IOException {
+		try {
+			return storage.importHosts(importer);
+		} finally {
+			reload();
+		}
+	}
+
+	@Override
+	public List<PortForwardBean> getPortForwardsForHost(HostBean host) {
+		return storage.getPortForwardsForHost(host);
+	}
+
+	@Override
+	public void runInTransaction(Runnable writes) {
+		// the writes may go around us, so read everything back afterwards
+		try {
+			storage.runInTransaction(writes);
+		} finally {
+			reload();
+		}
+	}
+
+	private void prepare(boolean sortedByColor) {
+		if (!loaded) {
+			clear();
+			for (HostBean host : storage.getHosts(false))
+				put(host);
+			loaded = true;
+		}
+
+		if (this.sortedByColor != sortedByColor) {
+			this.sortedByColor = sortedByColor;
+			changed();
+		}
+
+		if (order == null)
+			sort();
+	}
+
+	private void clear() {
+		hosts.clear();
+		names.clear();
+		slotsById.clear();
+		trigrams.clear();
+		prefixes.clear();
+		changed();
+	}
+
+	private void changed() {
+		order = null;
+		generation++;
+		lastWords = null;
+		lastResult = null;
+	}
+
+	private void sort() {
+		List<HostBean> live = new ArrayList<>(slotsById.size());
+		for (HostBean host : hosts) {
+			if (host != null)
+				live.add(host);
+		}
+		Collections.sort(live, sortedByColor ? BY_COLOR : BY_NICKNAME);
+
+		order = new int[live.size()];
+		position = new int[hosts.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = slotsById.get(live.get(i).getId());
+			position[order[i]] = i;
+		}
+	}
+
+	private void put(HostBean host) {
+		Integer slot = slotsById.get(host.getId());
+		if (slot != null) {
+			unindex(slot);
+		} else {
+			slot = hosts.size();
+			hosts.add(null);
+			names.add(null);
+			slotsById.put(host.getId(), slot);
+		}
+
+		String hostNames = getNames(host);
+		hosts.set(slot, host);
+		names.set(slot, hostNames);
+
+		for (String name : hostNames.split("\n")) {
+			for (int i = 0; i + TRIGRAM <= name.length(); i++)
+				addSlot(trigrams, name.substring(i, i + TRIGRAM), slot);
+			for (String word : getWords(name))
+				addSlot(prefixes, word, slot);
+		}
+
+		changed();
+	}
+
+	private void remove(long id) {
+		Integer slot = slotsById.remove(id);
+		if (slot == null)
+			return;
+
+		unindex(slot);
+		hosts.set(slot, null);
+		names.set(slot, null);
+		changed();
+	}
+
+	private void unindex(int slot) {
+		for (String name : names.get(slot).split("\n")) {
+			for (int i = 0; i + TRIGRAM <= name.length(); i++)
+				removeSlot(trigrams, name.substring(i, i + TRIGRAM), slot);
+			for (String word : getWords(name))
+				removeSlot(prefixes, word, slot);
+		}
+	}
+
+	private static void addSlot(Map<String, SlotList> index, String key, int slot) {
+		SlotList slots = index.get(key);
+		if (slots == null) {
+			slots = new SlotList();
+			index.put(key, slots);
+		}
+		slots.add(slot);
+	}
+
+	private static void removeSlot(Map<String, SlotList> index, String key, int slot) {
+		SlotList slots = index.get(key);
+		if (slots != null && slots.remove(slot))
+			index.remove(key);
+	}
+
+	/**
+	 * Find the hosts matching {@code words} starting from the smallest set of
+	 * hosts the indexes can narrow it down to.
+	 */
+	private int[] search(String[] words) {
+		SlotList fewest = null;
+		String prefix = null;
+		for (String word : words) {
+			if (word.length() < TRIGRAM) {
+				if (prefix == null && isWord(word))
+					prefix = word;
+				continue;
+			}
+
+			for (int i = 0; i + TRIGRAM <= word.length(); i++) {
+				SlotList slots = trigrams.get(word.substring(i, i + TRIGRAM));
+				if (slots == null)
+					return NONE;
+				if (fewest == null || slots.size < fewest.size)
+					fewest = slots;
+			}
+		}
+
+		int[] candidates;
+		if (fewest != null) {
+			candidates = copyOf(fewest.slots, fewest.size);
+		} else if (prefix != null) {
+			BitSet found = new BitSet(hosts.size());
+			for (SlotList slots : prefixes.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+				for (int i = 0; i < slots.size; i++)
+					found.set(slots.slots[i]);
+			}
+
+			candidates = new int[found.cardinality()];
+			for (int i = 0, slot = found.nextSetBit(0); slot >= 0; slot = found.nextSetBit(slot + 1))
+				candidates[i++] = slot;
+		} else {
+			return match(order, words);
+		}
+
+		// put the matches back in display order
+		int[] matched = match(candidates, words);
+		for (int i = 0; i < matched.length; i++)
+			matched[i] = position[matched[i]];
+		Arrays.sort(matched);
+		for (int i = 0; i < matched.length; i++)
+			matched[i] = order[matched[i]];
+		return matched;
+	}
+
+	private int[] match(int[] candidates, String[] words) {
+		int[] matched = new int[candidates.length];
+		int count = 0;
+		for (int slot : candidates) {
+			if (matches(names.get(slot), words))
+				matched[count++] = slot;
+		}
+		return count == matched.length ? matched : copyOf(matched, count);
+	}
+
+	private static boolean matches(String hostNames, String[] words) {
+		for (String word : words) {
+			if (word.length() < TRIGRAM ? !startsWord(hostNames, word) : hostNames.indexOf(word) < 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean startsWord(String hostNames, String word) {
+		for (int i = hostNames.indexOf(word); i >= 0; i = hostNames.indexOf(word, i + 1)) {
+			if (i == 0 || !Character.isLetterOrDigit(hostNames.charAt(i - 1)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the runs of letters and digits in {@code name}
+	 */
+	private static List<String> getWords(String name) {
+		List<String> words = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= name.length(); i++) {
+			boolean inWord = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				words.add(name.substring(start, i));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	private static boolean isWord(String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (!Character.isLetterOrDigit(word.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether every host matching {@code words} also matched
+	 *         {@code previous}, so the previous result can simply be filtered
+	 */
+	private static boolean narrows(String[] previous, String[] words) {
+		if (previous.length == 0 || words.length < previous.length)
+			return false;
+
+		int last = previous.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (!previous[i].equals(words[i]))
+				return false;
+		}
+
+		// a short word only matches the start of names, a longer one anywhere
+		return words[last].startsWith(previous[last])
+				&& (previous[last].length() >= TRIGRAM || words[last].length() < TRIGRAM);
+	}
+
+	private static String[] splitQuery(String query) {
+		if (query == null)
+			return new String[0];
+
+		query = query.trim().toLowerCase(Locale.US);
+		if (query.length() == 0)
+			return new String[0];
+
+		return query.split("\\s+");
+	}
+
+	private static String getNames(HostBean host) {
+		StringBuilder sb = new StringBuilder();
+		if (host.getNickname() != null)
+			sb.append(host.getNickname());
+		sb.append('\n');
+		if (host.getHostname() != null)
+			sb.append(host.getHostname());
+		sb.append('\n');
+		if (host.getUsername() != null)
+			sb.append(host.getUsername());
+		return sb.toString().toLowerCase(Locale.US);
+	}
+
+	private static int compareStrings(String a, String b) {
+		if (a == null)
+			return b == null ? 0 : -1;
+		return b == null ? 1 : a.compareTo(b);
+	}
+}
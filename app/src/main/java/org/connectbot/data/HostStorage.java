@@ -17,11 +17,14 @@
 
 package org.connectbot.data;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 
 import org.connectbot.bean.HostBean;
 import org.connectbot.bean.PortForwardBean;
+import org.connectbot.util.HostImporter;
 
 import com.trilead.ssh2.KnownHosts;
 
@@ -71,19 +74,40 @@ public interface HostStorage {
 	HostBean findHostById(long hostId);
 
 	/**
-	 * Returns the list of known hosts.
+	 * Checks a server's host key against the known hosts.
 	 *
+	 * @return one of {@link KnownHosts#HOSTKEY_IS_OK}, {@link KnownHosts#HOSTKEY_IS_NEW}
+	 *         or {@link KnownHosts#HOSTKEY_HAS_CHANGED}
 	 * @see #saveKnownHost(String, int, String, byte[])
 	 */
-	KnownHosts getKnownHosts();
+	int verifyKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey);
 
 	/**
-	 * Adds a known host to the database for later retrieval using {@link #getKnownHosts()}.
+	 * Adds a known host to the database for later checks using {@link #verifyKnownHost}.
 	 */
 	void saveKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey);
 
+	/**
+	 * Adds the host keys from an OpenSSH {@code known_hosts} file in one transaction.
+	 *
+	 * @return the number of host keys imported
+	 */
+	int importKnownHosts(Reader reader) throws IOException;
+
+	/**
+	 * Adds the hosts and their port forwards read by {@code importer}, in
+	 * batches of several hosts per transaction.
+	 */
+	HostImporter.Result importHosts(HostImporter importer) throws IOException;
+
 	/**
 	 * Return all port forwards for the given {@code host}.
 	 */
 	List<PortForwardBean> getPortForwardsForHost(HostBean host);
+
+	/**
+	 * Runs {@code writes} in a single transaction, so several updates are
+	 * committed together.
+	 */
+	void runInTransaction(Runnable writes);
 }
@@ -0,0 +1,277 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.connectbot.util.HostImporter;
+
+import android.util.Log;
+
+/**
+ * {@link HostStorage} that holds back frequent updates, such as the font size
+ * changing on every zoom step or the last connect time, and writes them to
+ * the underlying storage shortly afterwards in a single transaction. Repeated
+ * updates to the same host are collapsed into one write.
+ * <p>
+ * Reads and anything that cannot wait first write out what is pending, so
+ * callers always see their own updates. {@link #shutdown()} must be called
+ * before the storage is abandoned.
+ */
+public class WriteBehindHostStorage implements HostStorage {
+	private static final String TAG = "CB.WriteBehindStorage";
+
+	private static final long DEFAULT_FLUSH_DELAY_MILLIS = 1000;
+
+	private static class PendingKnownHost {
+		final String hostname;
+		final int port;
+		final String algorithm;
+		final byte[] key;
+
+		PendingKnownHost(String hostname, int port, String algorithm, byte[] key) {
+			this.hostname = hostname;
+			this.port = port;
+			this.algorithm = algorithm;
+			this.key = key;
+		}
+	}
+
+	private final HostStorage storage;
+	private final long flushDelayMillis;
+	private final ScheduledExecutorService executor;
+
+	/* Pending writes, guarded by this */
+	private final Map<Long, HostBean> pendingSaves = new LinkedHashMap<>();
+	private final Map<Long, HostBean> pendingTouches = new LinkedHashMap<>();
+	private final Map<String, PendingKnownHost> pendingKnownHosts = new LinkedHashMap<>();
+	private boolean flushScheduled = false;
+	private boolean shutdown = false;
+
+	private long writesRequested = 0;
+	private long writesAvoided = 0;
+
+	/** Held while writing, so a flush on demand waits for one in progress. */
+	private final Object flushLock = new Object();
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	public WriteBehindHostStorage(HostStorage storage) {
+		this(storage, DEFAULT_FLUSH_DELAY_MILLIS);
+	}
+
+	public WriteBehindHostStorage(HostStorage storage, long flushDelayMillis) {
+		this.storage = storage;
+		this.flushDelayMillis = flushDelayMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HostStorageWriter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Write out everything pending and stop the background writer. Later
+	 * writes go straight to the underlying storage.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+		}
+		executor.shutdownNow();
+		flush();
+
+		Log.d(TAG, String.format(Locale.US, "Avoided %d of %d host writes",
+				getWritesAvoided(), getWritesRequested()));
+	}
+
+	/**
+	 * Write all pending updates in a single transaction.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			final List<HostBean> saves;
+			final List<HostBean> touches;
+			final List<PendingKnownHost> knownHosts;
+			synchronized (this) {
+				flushScheduled = false;
+				if (pendingSaves.isEmpty() && pendingTouches.isEmpty() && pendingKnownHosts.isEmpty())
+					return;
+
+				saves = new ArrayList<>(pendingSaves.values());
+				touches = new ArrayList<>(pendingTouches.values());
+				knownHosts = new ArrayList<>(pendingKnownHosts.values());
+				pendingSaves.clear();
+				pendingTouches.clear();
+				pendingKnownHosts.clear();
+			}
+
+			storage.runInTransaction(new Runnable() {
+				public void run() {
+					for (HostBean host : saves)
+						storage.saveHost(host);
+					for (HostBean host : touches)
+						storage.touchHost(host);
+					for (PendingKnownHost k : knownHosts)
+						storage.saveKnownHost(k.hostname, k.port, k.algorithm, k.key);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the number of updates callers asked for that could be delayed
+	 */
+	public synchronized long getWritesRequested() {
+		return writesRequested;
+	}
+
+	/**
+	 * @return the number of updates that were collapsed into a later one
+	 *         instead of being written
+	 */
+	public synchronized long getWritesAvoided() {
+		return writesAvoided;
+	}
+
+	/**
+	 * @return whether the write was queued, or false if it must be done now
+	 */
+	private synchronized <K, V> boolean enqueue(Map<K, V> pending, K key, V value) {
+		if (shutdown)
+			return false;
+
+		writesRequested++;
+		if (pending.put(key, value) != null)
+			writesAvoided++;
+
+		if (!flushScheduled) {
+			flushScheduled = true;
+			executor.schedule(flushTask, flushDelayMillis, TimeUnit.MILLISECONDS);
+		}
+		return true;
+	}
+
+	private synchronized void forget(HostBean host) {
+		pendingSaves.remove(host.getId());
+		pendingTouches.remove(host.getId());
+	}
+
+	@Override
+	public HostBean saveHost(HostBean host) {
+		// new hosts need their ID right away
+		if (host.getId() < 0 || !enqueue(pendingSaves, host.getId(), host))
+			return storage.saveHost(host);
+		return host;
+	}
+
+	@Override
+	public void touchHost(HostBean host) {
+		if (host.getId() < 0 || !enqueue(pendingTouches, host.getId(), host))
+			storage.touchHost(host);
+	}
+
+	@Override
+	public void saveKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey) {
+		String key = String.format(Locale.US, "%s:%d:%s", hostname, port, serverHostKeyAlgorithm);
+		PendingKnownHost value = new PendingKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey);
+		if (!enqueue(pendingKnownHosts, key, value))
+			storage.saveKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey);
+	}
+
+	@Override
+	public void deleteHost(HostBean host) {
+		forget(host);
+		storage.deleteHost(host);
+	}
+
+	@Override
+	public void resetDatabase() {
+		synchronized (this) {
+			pendingSaves.clear();
+			pendingTouches.clear();
+			pendingKnownHosts.clear();
+		}
+		storage.resetDatabase();
+	}
+
+	@Override
+	public HostBean findHost(Map<String, String> selection) {
+		flush();
+		return storage.findHost(selection);
+	}
+
+	@Override
+	public List<HostBean> getHosts(boolean sortedByColor) {
+		flush();
+		return storage.getHosts(sortedByColor);
+	}
+
+	@Override
+	public HostBean findHostById(long hostId) {
+		flush();
+		return storage.findHostById(hostId);
+	}
+
+	@Override
+	public int verifyKnownHost(String hostname, int port, String serverHostKeyAlgorithm, byte[] serverHostKey) {
+		flush();
+		return storage.verifyKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey);
+	}
+
+	@Override
+	public int importKnownHosts(Reader reader) throws IOException {
+		flush();
+		return storage.importKnownHosts(reader);
+	}
+
+	@Override
+	public HostImporter.Result importHosts(HostImporter importer) throws IOException {
+		flush();
+		return storage.importHosts(importer);
+	}
+
+	@Override
+	public List<PortForwardBean> getPortForwardsForHost(HostBean host) {
+		return storage.getPortForwardsForHost(host);
+	}
+
+	@Override
+	public void runInTransaction(Runnable writes) {
+		flush();
+		storage.runInTransaction(writes);
+	}
+}
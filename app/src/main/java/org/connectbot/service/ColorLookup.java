@@ -0,0 +1,79 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import de.mud.terminal.VDUBuffer;
+
+/**
+ * Resolves the attributes of a terminal cell to the colours it is drawn in.
+ * The colour each attribute value can name is worked out once per palette,
+ * including the rule that bold brightens the first eight colours, so drawing
+ * a run of cells only needs two table reads.
+ */
+public class ColorLookup {
+	/** Number of values each of the foreground and background fields can hold. */
+	private static final int FIELD_VALUES = (VDUBuffer.COLOR_FG >> VDUBuffer.COLOR_FG_SHIFT) + 1;
+
+	/** Indexed by the foreground field shifted left once, plus one when bold. */
+	private final int[] foreground = new int[FIELD_VALUES * 2];
+
+	/** Indexed by the background field. */
+	private final int[] background = new int[FIELD_VALUES];
+
+	/**
+	 * Rebuild the tables for a new palette. A field of zero stands for the
+	 * default colour, and any other value for the palette entry one below it.
+	 */
+	public void update(int[] color, int defaultFg, int defaultBg) {
+		for (int field = 0; field < FIELD_VALUES; field++) {
+			int fgcolor = field == 0 || field > color.length ? defaultFg : field - 1;
+			foreground[field << 1] = color[fgcolor];
+			foreground[(field << 1) | 1] = color[fgcolor < 8 ? fgcolor + 8 : fgcolor];
+
+			int bgcolor = field == 0 || field > color.length ? defaultBg : field - 1;
+			background[field] = color[bgcolor];
+		}
+	}
+
+	/**
+	 * @return the colour the text of a cell with these attributes is drawn in
+	 */
+	public int getForeground(int attr) {
+		if ((attr & VDUBuffer.INVERT) != 0)
+			return lookupBackground(attr);
+		return lookupForeground(attr);
+	}
+
+	/**
+	 * @return the colour behind the text of a cell with these attributes
+	 */
+	public int getBackground(int attr) {
+		if ((attr & VDUBuffer.INVERT) != 0)
+			return lookupForeground(attr);
+		return lookupBackground(attr);
+	}
+
+	private int lookupForeground(int attr) {
+		int bold = (attr & VDUBuffer.BOLD) != 0 ? 1 : 0;
+		return foreground[((attr & VDUBuffer.COLOR_FG) >> (VDUBuffer.COLOR_FG_SHIFT - 1)) | bold];
+	}
+
+	private int lookupBackground(int attr) {
+		return background[(attr & VDUBuffer.COLOR_BG) >> VDUBuffer.COLOR_BG_SHIFT];
+	}
+}
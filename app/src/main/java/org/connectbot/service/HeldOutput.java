@@ -0,0 +1,163 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.connectbot.transport.AbsTransport;
+
+/**
+ * Sits between a bridge and its transport. While the network is down the
+ * bytes written to the session are held back instead of going into a socket
+ * that may be dead, and they are sent in order once the session is known to
+ * have survived.
+ */
+public class HeldOutput {
+	/** Most bytes held for one session; anything past this is dropped. */
+	public static final int DEFAULT_LIMIT = 64 * 1024;
+
+	private final int limit;
+
+	/* Guarded by this, which is never held while writing to the transport. */
+	private final ByteArrayOutputStream held = new ByteArrayOutputStream();
+	private boolean holding = false;
+	/**
+	 * Bytes written since holding began that didn't fit. Once one is dropped
+	 * so is everything after it, so what is held never has a gap.
+	 */
+	private int dropped = 0;
+
+	/** Keeps writes to the transport, including a release, in order. */
+	private final Object sendLock = new Object();
+
+	public HeldOutput() {
+		this(DEFAULT_LIMIT);
+	}
+
+	public HeldOutput(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Start holding back writes.
+	 */
+	public synchronized void hold() {
+		holding = true;
+	}
+
+	public synchronized boolean isHolding() {
+		return holding;
+	}
+
+	public void write(AbsTransport transport, byte[] buffer) throws IOException {
+		synchronized (sendLock) {
+			if (!keep(buffer))
+				transport.write(buffer);
+		}
+	}
+
+	public void write(AbsTransport transport, int c) throws IOException {
+		synchronized (sendLock) {
+			if (!keep(c))
+				transport.write(c);
+		}
+	}
+
+	/**
+	 * @return false if the bytes should be sent now
+	 */
+	private synchronized boolean keep(byte[] buffer) {
+		if (!holding)
+			return false;
+
+		if (dropped == 0 && held.size() + buffer.length <= limit)
+			held.write(buffer, 0, buffer.length);
+		else
+			dropped += buffer.length;
+		return true;
+	}
+
+	private synchronized boolean keep(int c) {
+		if (!holding)
+			return false;
+
+		if (dropped == 0 && held.size() < limit)
+			held.write(c);
+		else
+			dropped++;
+		return true;
+	}
+
+	/**
+	 * Stop holding and send everything held back to {@code transport}. If
+	 * any bytes had to be dropped nothing is sent, since the rest is no
+	 * longer what the user typed.
+	 *
+	 * @return the number of bytes sent
+	 * @throws IOException if bytes were dropped or could not be sent
+	 */
+	public int release(AbsTransport transport) throws IOException {
+		synchronized (sendLock) {
+			byte[] buffer;
+			int lost;
+			synchronized (this) {
+				holding = false;
+				buffer = held.toByteArray();
+				held.reset();
+				lost = dropped;
+				dropped = 0;
+			}
+
+			if (lost > 0)
+				throw new IOException(String.format("Dropped %d bytes past the limit, discarded %d held before them",
+						lost, buffer.length));
+
+			if (buffer.length == 0)
+				return 0;
+
+			transport.write(buffer);
+			transport.flush();
+			return buffer.length;
+		}
+	}
+
+	/**
+	 * Throw away everything held back and stop holding.
+	 */
+	public synchronized void discard() {
+		holding = false;
+		held.reset();
+		dropped = 0;
+	}
+
+	/**
+	 * @return the number of bytes waiting to be sent
+	 */
+	public synchronized int size() {
+		return held.size();
+	}
+
+	/**
+	 * @return the number of bytes dropped since holding began because the
+	 *         limit was reached
+	 */
+	public synchronized int getDropped() {
+		return dropped;
+	}
+}
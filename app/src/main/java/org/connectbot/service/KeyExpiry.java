@@ -0,0 +1,206 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Unloads keys from memory once their lifetime is up. All deadlines live in
+ * one {@link DelayQueue} served by a single thread, and a key that is loaded
+ * again or removed early has its deadline replaced or dropped right away.
+ */
+public class KeyExpiry {
+	private static final String TAG = "CB.KeyExpiry";
+
+	public interface Clock {
+		long elapsedRealtime();
+	}
+
+	public interface Listener {
+		void onKeyExpired(String nickname);
+	}
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long elapsedRealtime() {
+			return SystemClock.elapsedRealtime();
+		}
+	};
+
+	private final class Expiration implements Delayed {
+		final String nickname;
+		final long deadline;
+
+		Expiration(String nickname, long deadline) {
+			this.nickname = nickname;
+			this.deadline = deadline;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - clock.elapsedRealtime(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			long otherDeadline = ((Expiration) other).deadline;
+			return deadline < otherDeadline ? -1 : (deadline == otherDeadline ? 0 : 1);
+		}
+	}
+
+	private final Clock clock;
+	private final Listener listener;
+
+	private final DelayQueue<Expiration> queue = new DelayQueue<>();
+
+	/** The live deadline for each key; anything else in the queue is stale. */
+	private final Map<String, Expiration> pending = new HashMap<>();
+
+	private Thread thread;
+
+	private long maxLateness = 0;
+
+	public KeyExpiry(Listener listener) {
+		this(SYSTEM_CLOCK, listener);
+	}
+
+	public KeyExpiry(Clock clock, Listener listener) {
+		this.clock = clock;
+		this.listener = listener;
+	}
+
+	/**
+	 * Start the thread that unloads keys as their deadlines pass.
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			return;
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted())
+						expire(queue.take());
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		}, "KeyExpiry");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the expiry thread and forget every deadline.
+	 */
+	public synchronized void stop() {
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+		cancelAll();
+	}
+
+	/**
+	 * Unload the key {@code lifetimeMillis} from now, replacing any deadline
+	 * it already had.
+	 */
+	public void schedule(String nickname, long lifetimeMillis) {
+		Expiration expiration = new Expiration(nickname, clock.elapsedRealtime() + lifetimeMillis);
+		synchronized (pending) {
+			Expiration old = pending.put(nickname, expiration);
+			if (old != null)
+				queue.remove(old);
+			queue.add(expiration);
+		}
+	}
+
+	/**
+	 * @return whether the key had a deadline
+	 */
+	public boolean cancel(String nickname) {
+		synchronized (pending) {
+			Expiration old = pending.remove(nickname);
+			if (old == null)
+				return false;
+
+			queue.remove(old);
+			return true;
+		}
+	}
+
+	public void cancelAll() {
+		synchronized (pending) {
+			pending.clear();
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Unload every key whose deadline has passed without waiting for the
+	 * expiry thread.
+	 *
+	 * @return the number of keys unloaded
+	 */
+	public int expireDue() {
+		int expired = 0;
+		Expiration expiration;
+		while ((expiration = queue.poll()) != null) {
+			if (expire(expiration))
+				expired++;
+		}
+		return expired;
+	}
+
+	private boolean expire(Expiration expiration) {
+		synchronized (pending) {
+			if (pending.get(expiration.nickname) != expiration)
+				return false;
+
+			pending.remove(expiration.nickname);
+			maxLateness = Math.max(maxLateness, clock.elapsedRealtime() - expiration.deadline);
+		}
+
+		try {
+			listener.onKeyExpired(expiration.nickname);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Could not unload key " + expiration.nickname, e);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of deadlines waiting in the queue
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the longest a key has stayed loaded past its deadline
+	 */
+	public long getMaxLatenessMillis() {
+		synchronized (pending) {
+			return maxLateness;
+		}
+	}
+}
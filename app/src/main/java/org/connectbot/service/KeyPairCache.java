@@ -0,0 +1,166 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.connectbot.bean.PubkeyBean;
+
+import android.os.SystemClock;
+
+/**
+ * Small cache of private keys decoded for public key authentication, so that
+ * reconnecting or connecting to several hosts does not decode the same key
+ * every time.
+ * <p>
+ * Only keys stored without a passphrase are kept here. Encrypted keys stay
+ * in memory only through {@link TerminalManager#addKey} when the user allows
+ * it. An entry expires with the key's lifetime setting just like a loaded
+ * key, and is dropped if the stored key no longer matches.
+ */
+public class KeyPairCache {
+	private static final int DEFAULT_MAX_ENTRIES = 8;
+
+	public interface Clock {
+		long elapsedRealtime();
+	}
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long elapsedRealtime() {
+			return SystemClock.elapsedRealtime();
+		}
+	};
+
+	private static class Entry {
+		byte[] encoded;
+		KeyPair pair;
+		long expires;
+	}
+
+	private final Clock clock;
+	private final int maxEntries;
+
+	private final LinkedHashMap<Long, Entry> entries;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	public KeyPairCache() {
+		this(SYSTEM_CLOCK, DEFAULT_MAX_ENTRIES);
+	}
+
+	public KeyPairCache(Clock clock, int maxEntries) {
+		this.clock = clock;
+		this.maxEntries = maxEntries;
+
+		// access order so the least recently used key is evicted first
+		entries = new LinkedHashMap<Long, Entry>(maxEntries + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				if (size() <= KeyPairCache.this.maxEntries)
+					return false;
+
+				wipe(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return the decoded key for {@code pubkey}, or {@code null} if it has to
+	 *         be decoded again
+	 */
+	public synchronized KeyPair get(PubkeyBean pubkey) {
+		Entry entry = entries.get(pubkey.getId());
+		if (entry != null
+				&& (entry.expires <= clock.elapsedRealtime()
+						|| !Arrays.equals(entry.encoded, pubkey.getPrivateKey()))) {
+			entries.remove(pubkey.getId());
+			wipe(entry);
+			entry = null;
+		}
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return entry.pair;
+	}
+
+	/**
+	 * Remember a freshly decoded key, unless it is protected by a passphrase.
+	 */
+	public synchronized void put(PubkeyBean pubkey, KeyPair pair) {
+		byte[] encoded = pubkey.getPrivateKey();
+		if (pubkey.isEncrypted() || encoded == null || maxEntries <= 0)
+			return;
+
+		Entry entry = new Entry();
+		entry.encoded = encoded;
+		entry.pair = pair;
+		if (pubkey.getLifetime() > 0)
+			entry.expires = clock.elapsedRealtime() + pubkey.getLifetime() * 1000L;
+		else
+			entry.expires = Long.MAX_VALUE;
+
+		Entry old = entries.put(pubkey.getId(), entry);
+		if (old != null)
+			wipe(old);
+	}
+
+	/**
+	 * Forget every cached key.
+	 */
+	public synchronized void clear() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			wipe(it.next());
+			it.remove();
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Overwrite our copy of the stored key and drop our reference to the
+	 * decoded one. Key objects themselves cannot be reliably cleared, but
+	 * this keeps us from holding them any longer than needed.
+	 */
+	private static void wipe(Entry entry) {
+		if (entry.encoded != null)
+			Arrays.fill(entry.encoded, (byte) 0);
+		entry.encoded = null;
+		entry.pair = null;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Round-trip times measured for one session. Samples are recorded with atomic
+ * updates only, so probes never wait on readers. Times under 16 ms get a
+ * bucket each; above that each doubling is split into eight buckets, so a
+ * percentile is never more than an eighth above the true value.
+ */
+public class LatencyHistogram {
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Doublings above the linear buckets, reaching about 17 minutes. */
+	private static final int OCTAVES = 16;
+	private static final int BUCKETS = LINEAR_BUCKETS + OCTAVES * SUB_BUCKETS;
+
+	/** The smoothed value moves an eighth of the way to each sample, as TCP does. */
+	private static final int SMOOTHING_SHIFT = 3;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLong lost = new AtomicLong();
+	private final AtomicLong smoothed = new AtomicLong(-1);
+
+	/**
+	 * Record a probe that was answered after {@code millis}.
+	 */
+	public void record(long millis) {
+		if (millis < 0)
+			millis = 0;
+
+		buckets.incrementAndGet(getBucket(millis));
+		total.addAndGet(millis);
+		count.incrementAndGet();
+
+		long current;
+		while ((current = max.get()) < millis && !max.compareAndSet(current, millis)) {
+			// another sample raced us; try again
+		}
+
+		long previous, next;
+		do {
+			previous = smoothed.get();
+			next = previous < 0 ? millis : previous + ((millis - previous) >> SMOOTHING_SHIFT);
+		} while (!smoothed.compareAndSet(previous, next));
+	}
+
+	/**
+	 * Record a probe that was not answered in time.
+	 */
+	public void recordLost() {
+		lost.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of answered probes
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the number of probes that were not answered in time
+	 */
+	public long getLost() {
+		return lost.get();
+	}
+
+	public long getMaxMillis() {
+		return max.get();
+	}
+
+	public long getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+
+	/**
+	 * @return the round-trip time weighted towards recent samples, or -1
+	 *         before the first sample
+	 */
+	public long getSmoothedMillis() {
+		return smoothed.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the time that {@code percentile} percent of the answered probes
+	 *         came in under, or 0 before the first sample
+	 */
+	public long getPercentileMillis(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(getBucketHighest(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Forget every sample.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+		lost.set(0);
+		smoothed.set(-1);
+	}
+
+	private static int getBucket(long millis) {
+		if (millis < LINEAR_BUCKETS)
+			return (int) millis;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(millis);
+		int subBucket = (int) (millis >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		int bucket = LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	/**
+	 * @return the largest time that falls into {@code bucket}
+	 */
+	private static long getBucketHighest(int bucket) {
+		if (bucket < LINEAR_BUCKETS)
+			return bucket;
+
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+		int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (SUB_BUCKETS + subBucket) * width + width - 1;
+	}
+}
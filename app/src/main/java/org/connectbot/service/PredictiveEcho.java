@@ -0,0 +1,286 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import android.os.SystemClock;
+import de.mud.terminal.VDUBuffer;
+
+/**
+ * Guesses where typed characters will appear before the remote host echoes
+ * them, so typing over a slow link does not lag a round trip behind. The
+ * guesses are kept beside the terminal buffer rather than in it and are
+ * checked against what the host actually sends.
+ *
+ * <p>Guesses are only shown when the link is slow, once a guess made since
+ * the last non-printing key has turned out right, and while most recent
+ * guesses have been right. Nothing is guessed on a line that looks like a
+ * password prompt.
+ *
+ * <p>Only output from the host confirms or refutes a guess. Replies the
+ * emulator sends on its own, such as answers to cursor position queries,
+ * leave the guesses alone.
+ */
+public class PredictiveEcho {
+	public interface Clock {
+		long uptimeMillis();
+	}
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long uptimeMillis() {
+			return SystemClock.uptimeMillis();
+		}
+	};
+
+	/** Round-trip time above which guesses are shown. */
+	public static final long SHOW_ROUND_TRIP = 60;
+
+	/** Shortest time a guess waits for the echo before it counts as wrong. */
+	private static final long MIN_TIMEOUT = 1000;
+
+	/** How many recent outcomes decide whether guesses are shown. */
+	private static final int WINDOW = 16;
+	private static final int MAX_WINDOW_MISSES = 4;
+
+	private static final String[] SECRET_PROMPTS = { "password", "passphrase", "passcode", "pin:" };
+
+	/**
+	 * A character expected to appear at a cell of the screen.
+	 */
+	public static final class Prediction {
+		public final int row;
+		public final int column;
+		public final char character;
+		final long madeAt;
+
+		Prediction(int row, int column, char character, long madeAt) {
+			this.row = row;
+			this.column = column;
+			this.character = character;
+			this.madeAt = madeAt;
+		}
+	}
+
+	private final VDUBuffer buffer;
+	private final LatencyHistogram latency;
+	private final Clock clock;
+
+	private final List<Prediction> pending = new ArrayList<>();
+	private boolean enabled = true;
+
+	/** Whether a guess has been right since the last non-printing input. */
+	private boolean confirmed = false;
+
+	/** Outcomes of the most recent guesses, newest in the lowest bit; 1 is a miss. */
+	private int window = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	public PredictiveEcho(VDUBuffer buffer, LatencyHistogram latency) {
+		this(buffer, latency, SYSTEM_CLOCK);
+	}
+
+	public PredictiveEcho(VDUBuffer buffer, LatencyHistogram latency, Clock clock) {
+		this.buffer = buffer;
+		this.latency = latency;
+		this.clock = clock;
+	}
+
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled)
+			discard();
+	}
+
+	/**
+	 * The user typed {@code c}, which is about to be sent to the host.
+	 *
+	 * @return whether the screen should be redrawn to show a new guess
+	 */
+	public synchronized boolean onTyped(char c) {
+		if (!enabled)
+			return false;
+
+		long now = clock.uptimeMillis();
+		expire(now);
+
+		if (c < ' ' || c == 0x7f || c >= 0x1100) {
+			// control characters move the cursor and wide characters take
+			// two cells, so neither can be placed with any confidence
+			onOtherInput();
+			return false;
+		}
+
+		int row, column;
+		if (pending.isEmpty()) {
+			row = buffer.getCursorRow();
+			column = buffer.getCursorColumn();
+			if (isSecretPrompt(row, column))
+				return false;
+		} else {
+			Prediction last = pending.get(pending.size() - 1);
+			row = last.row;
+			column = last.column + 1;
+		}
+
+		if (column >= buffer.width - 1)
+			return false;
+
+		pending.add(new Prediction(row, column, c, now));
+		return isShowing();
+	}
+
+	/**
+	 * Input that is not a single printing character, such as Enter, an
+	 * arrow key or a paste, went to the host. Outstanding guesses are dropped
+	 * without counting against the hit rate, and new ones are not shown until
+	 * one has been right.
+	 *
+	 * @return whether the screen should be redrawn to clear dropped guesses
+	 */
+	public synchronized boolean onOtherInput() {
+		confirmed = false;
+		return discard();
+	}
+
+	/**
+	 * The host's output has been written to the buffer; check the guesses
+	 * against it.
+	 */
+	public synchronized void onRemoteOutput() {
+		if (pending.isEmpty())
+			return;
+
+		int cursorRow = buffer.getCursorRow();
+		int cursorColumn = buffer.getCursorColumn();
+		long now = clock.uptimeMillis();
+
+		while (!pending.isEmpty()) {
+			Prediction prediction = pending.get(0);
+			if (cursorRow != prediction.row) {
+				// the host went somewhere else entirely; no telling what happened
+				onOtherInput();
+				return;
+			}
+
+			if (cursorColumn <= prediction.column) {
+				// not echoed yet
+				expire(now);
+				return;
+			}
+
+			char actual = buffer.charArray[buffer.screenBase + prediction.row][prediction.column];
+			pending.remove(0);
+			if (actual == prediction.character) {
+				record(true);
+				confirmed = true;
+			} else {
+				record(false);
+				onOtherInput();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the guesses to draw over the screen, or {@code null} if none
+	 *         should be shown
+	 */
+	public synchronized Prediction[] getVisible() {
+		if (pending.isEmpty())
+			return null;
+
+		expire(clock.uptimeMillis());
+		if (pending.isEmpty() || !isShowing())
+			return null;
+
+		return pending.toArray(new Prediction[pending.size()]);
+	}
+
+	/**
+	 * @return whether new guesses would be shown right now
+	 */
+	public synchronized boolean isShowing() {
+		if (!enabled || !confirmed || Integer.bitCount(window) > MAX_WINDOW_MISSES)
+			return false;
+
+		long roundTrip = latency.getSmoothedMillis();
+		return roundTrip >= SHOW_ROUND_TRIP;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the share of checked guesses that were right, or -1 before any
+	 *         were checked
+	 */
+	public synchronized double getHitRate() {
+		long checked = hits + misses;
+		return checked == 0 ? -1 : (double) hits / checked;
+	}
+
+	/** Count guesses that have waited too long for their echo as wrong. */
+	private void expire(long now) {
+		if (pending.isEmpty())
+			return;
+
+		long timeout = Math.max(MIN_TIMEOUT, 3 * latency.getSmoothedMillis());
+		if (now - pending.get(0).madeAt >= timeout) {
+			record(false);
+			onOtherInput();
+		}
+	}
+
+	/** @return whether there were any guesses to drop */
+	private boolean discard() {
+		if (pending.isEmpty())
+			return false;
+
+		pending.clear();
+		return true;
+	}
+
+	private void record(boolean hit) {
+		if (hit)
+			hits++;
+		else
+			misses++;
+
+		window = ((window << 1) | (hit ? 0 : 1)) & ((1 << WINDOW) - 1);
+	}
+
+	private boolean isSecretPrompt(int row, int column) {
+		char[] line = buffer.charArray[buffer.screenBase + row];
+		String before = new String(line, 0, Math.min(column, line.length)).toLowerCase(Locale.US);
+		for (String prompt : SECRET_PROMPTS) {
+			if (before.contains(prompt))
+				return true;
+		}
+		return false;
+	}
+}
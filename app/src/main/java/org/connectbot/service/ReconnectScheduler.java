@@ -0,0 +1,416 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Reconnects dropped hosts a few at a time. Each host waits a random delay
+ * that doubles with every attempt that fails in a row, so sessions that drop
+ * together do not all come back at the same instant, and a host that keeps
+ * failing is retried less and less often.
+ *
+ * <p>An attempt counts as failed when the same host asks to be reconnected
+ * again before {@link #connected(String)} is called for it. An attempt that
+ * takes longer than the attempt timeout, for example because it is waiting on
+ * a password prompt, stops counting against the concurrency limit.
+ */
+public class ReconnectScheduler {
+	private static final String TAG = "CB.ReconnectScheduler";
+
+	public static final long DEFAULT_BASE_DELAY = 1000;
+	public static final long DEFAULT_MAX_DELAY = 300000; // 5 minutes
+	public static final int DEFAULT_MAX_CONCURRENT = 4;
+	public static final long DEFAULT_ATTEMPT_TIMEOUT = 30000;
+
+	public interface Clock {
+		long elapsedRealtime();
+	}
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long elapsedRealtime() {
+			return SystemClock.elapsedRealtime();
+		}
+	};
+
+	/**
+	 * Reconnection history for one host.
+	 */
+	public static final class Stats {
+		public final int attempts;
+		public final int successes;
+		/** Attempts that have failed since the last success. */
+		public final int failures;
+		public final long lastLatencyMillis;
+		public final long totalLatencyMillis;
+
+		Stats(HostState state) {
+			attempts = state.attempts;
+			successes = state.successes;
+			failures = state.failures;
+			lastLatencyMillis = state.lastLatency;
+			totalLatencyMillis = state.totalLatency;
+		}
+
+		/**
+		 * @return mean time from starting an attempt to being connected
+		 */
+		public long getAverageLatencyMillis() {
+			return successes == 0 ? 0 : totalLatencyMillis / successes;
+		}
+	}
+
+	private static final class HostState {
+		final String key;
+		Runnable attempt;
+		boolean needsNetwork;
+
+		/** When the next attempt may start, or -1 when none is waiting. */
+		long dueAt = -1;
+		/** When the current attempt started, or -1 when none is running. */
+		long startedAt = -1;
+		boolean holdsSlot;
+
+		int attempts;
+		int successes;
+		int failures;
+		long lastLatency;
+		long totalLatency;
+
+		HostState(String key) {
+			this.key = key;
+		}
+	}
+
+	private final Clock clock;
+	private final Random random;
+	private final long baseDelay;
+	private final long maxDelay;
+	private final int maxConcurrent;
+	private final long attemptTimeout;
+
+	private final Object lock = new Object();
+	private final Map<String, HostState> hosts = new HashMap<>();
+	private int running = 0;
+	private boolean online = true;
+
+	private Thread thread;
+
+	public ReconnectScheduler() {
+		this(SYSTEM_CLOCK, new Random(), DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_CONCURRENT,
+				DEFAULT_ATTEMPT_TIMEOUT);
+	}
+
+	public ReconnectScheduler(Clock clock, Random random, long baseDelay, long maxDelay, int maxConcurrent,
+			long attemptTimeout) {
+		this.clock = clock;
+		this.random = random;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.maxConcurrent = maxConcurrent;
+		this.attemptTimeout = attemptTimeout;
+	}
+
+	/**
+	 * Start the thread that runs attempts as they fall due.
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			return;
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						synchronized (lock) {
+							long wait;
+							while ((wait = getWaitMillis(clock.elapsedRealtime())) != 0)
+								lock.wait(wait < 0 ? 0 : wait);
+						}
+						runDue();
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		}, "Reconnector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the scheduler thread and drop every waiting attempt.
+	 */
+	public synchronized void stop() {
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+		cancelAll();
+	}
+
+	/**
+	 * Queue {@code attempt} to reconnect the host after its backoff delay. If
+	 * the host already had an attempt running, that attempt has failed.
+	 *
+	 * @param needsNetwork whether the attempt must wait while the device is
+	 *            offline
+	 */
+	public void request(String key, Runnable attempt, boolean needsNetwork) {
+		synchronized (lock) {
+			HostState state = hosts.get(key);
+			if (state == null) {
+				state = new HostState(key);
+				hosts.put(key, state);
+			}
+
+			if (state.startedAt >= 0) {
+				finish(state);
+				state.failures++;
+			}
+
+			state.attempt = attempt;
+			state.needsNetwork = needsNetwork;
+			state.dueAt = clock.elapsedRealtime() + getBackoffMillis(state.failures);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Record that the host's attempt succeeded and reset its backoff.
+	 */
+	public void connected(String key) {
+		synchronized (lock) {
+			HostState state = hosts.get(key);
+			if (state == null || state.startedAt < 0)
+				return;
+
+			long latency = clock.elapsedRealtime() - state.startedAt;
+			finish(state);
+			state.successes++;
+			state.failures = 0;
+			state.lastLatency = latency;
+			state.totalLatency += latency;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stop trying to reconnect the host.
+	 *
+	 * @return whether an attempt was waiting or running
+	 */
+	public boolean cancel(String key) {
+		synchronized (lock) {
+			HostState state = hosts.get(key);
+			if (state == null || (state.dueAt < 0 && state.startedAt < 0))
+				return false;
+
+			state.dueAt = -1;
+			finish(state);
+			lock.notifyAll();
+			return true;
+		}
+	}
+
+	public void cancelAll() {
+		synchronized (lock) {
+			for (HostState state : hosts.values()) {
+				state.dueAt = -1;
+				finish(state);
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Hold back attempts that need the network while the device is offline.
+	 * Coming back online forgets failures that happened while offline and
+	 * spreads the waiting attempts over the base delay.
+	 */
+	public void setOnline(boolean online) {
+		synchronized (lock) {
+			if (this.online == online)
+				return;
+
+			this.online = online;
+			if (online) {
+				long now = clock.elapsedRealtime();
+				for (HostState state : hosts.values()) {
+					if (state.dueAt >= 0 && state.needsNetwork) {
+						state.failures = 0;
+						state.dueAt = now + getBackoffMillis(0);
+					}
+				}
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Start every attempt that is due, up to the concurrency limit, without
+	 * waiting for the scheduler thread.
+	 *
+	 * @return the number of attempts started
+	 */
+	public int runDue() {
+		List<HostState> started = new ArrayList<>();
+		synchronized (lock) {
+			long now = clock.elapsedRealtime();
+			releaseExpiredSlots(now);
+
+			HostState next;
+			while (running < maxConcurrent && (next = getNextDue(now)) != null) {
+				next.dueAt = -1;
+				next.startedAt = now;
+				next.holdsSlot = true;
+				next.attempts++;
+				running++;
+				started.add(next);
+			}
+		}
+
+		for (HostState state : started) {
+			try {
+				state.attempt.run();
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Could not start reconnecting " + state.key, e);
+				request(state.key, state.attempt, state.needsNetwork);
+			}
+		}
+		return started.size();
+	}
+
+	/**
+	 * @return the host's reconnection history, or {@code null} if it has never
+	 *         asked to be reconnected
+	 */
+	public Stats getStats(String key) {
+		synchronized (lock) {
+			HostState state = hosts.get(key);
+			return state == null ? null : new Stats(state);
+		}
+	}
+
+	/**
+	 * @return the number of hosts with an attempt waiting or running
+	 */
+	public int size() {
+		synchronized (lock) {
+			int size = 0;
+			for (HostState state : hosts.values()) {
+				if (state.dueAt >= 0 || state.startedAt >= 0)
+					size++;
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * @return the number of attempts counting against the concurrency limit
+	 */
+	public int getRunning() {
+		synchronized (lock) {
+			return running;
+		}
+	}
+
+	/**
+	 * A random delay of up to the base delay for a host that has not failed
+	 * yet, and otherwise between half and all of the base delay doubled for
+	 * each failure, capped at the maximum delay.
+	 */
+	private long getBackoffMillis(int failures) {
+		if (failures == 0)
+			return (long) (random.nextDouble() * baseDelay);
+
+		long cap = Math.min(maxDelay, baseDelay << Math.min(failures, 30));
+		if (cap < 0)
+			cap = maxDelay;
+		return cap / 2 + (long) (random.nextDouble() * (cap - cap / 2));
+	}
+
+	/** Must be called while holding {@link #lock}. */
+	private void finish(HostState state) {
+		if (state.holdsSlot) {
+			state.holdsSlot = false;
+			running--;
+		}
+		state.startedAt = -1;
+	}
+
+	/** Must be called while holding {@link #lock}. */
+	private void releaseExpiredSlots(long now) {
+		for (HostState state : hosts.values()) {
+			if (state.holdsSlot && now - state.startedAt >= attemptTimeout) {
+				Log.d(TAG, "Reconnecting " + state.key + " is taking a while; starting others");
+				state.holdsSlot = false;
+				running--;
+			}
+		}
+	}
+
+	/** Must be called while holding {@link #lock}. */
+	private HostState getNextDue(long now) {
+		HostState next = null;
+		for (HostState state : hosts.values()) {
+			if (state.dueAt < 0 || state.dueAt > now || (state.needsNetwork && !online))
+				continue;
+			if (next == null || state.dueAt < next.dueAt)
+				next = state;
+		}
+		return next;
+	}
+
+	/**
+	 * Must be called while holding {@link #lock}.
+	 *
+	 * @return how long until an attempt can start, 0 if one can start now, or
+	 *         -1 if none is waiting
+	 */
+	private long getWaitMillis(long now) {
+		long due = -1;
+		for (HostState state : hosts.values()) {
+			if (state.dueAt >= 0 && (online || !state.needsNetwork) && (due < 0 || state.dueAt < due))
+				due = state.dueAt;
+		}
+		if (due < 0)
+			return -1;
+
+		if (running < maxConcurrent)
+			return Math.max(0, due - now);
+
+		// wait for the oldest running attempt to time out
+		long wait = -1;
+		for (HostState state : hosts.values()) {
+			if (state.holdsSlot) {
+				long timeout = Math.max(0, state.startedAt + attemptTimeout - now);
+				if (wait < 0 || timeout < wait)
+					wait = timeout;
+			}
+		}
+		return wait < 0 ? 0 : Math.max(wait, due - now);
+	}
+}
@@ -29,6 +29,7 @@ import org.apache.harmony.niochar.charset.additional.IBM437;
 import org.connectbot.transport.AbsTransport;
 import org.connectbot.util.EastAsianWidth;
 
+import android.os.SystemClock;
 import android.util.Log;
 import de.mud.terminal.vt320;
 
@@ -55,6 +56,8 @@ public class Relay implements Runnable {
 	private byte[] byteArray;
 	private char[] charArray;
 
+	private volatile SessionRecorder recorder;
+
 	public Relay(TerminalBridge bridge, AbsTransport transport, vt320 buffer, String encoding) {
 		setCharset(encoding);
 		this.bridge = bridge;
@@ -88,6 +91,14 @@ public class Relay implements Runnable {
 		return currentCharset;
 	}
 
+	/**
+	 * Copy decoded output to {@code recorder}, or stop copying if it is
+	 * {@code null}.
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+
 	public void run() {
 		byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
 		charBuffer = CharBuffer.allocate(BUFFER_SIZE);
@@ -105,6 +116,9 @@ public class Relay implements Runnable {
 		int bytesToRead;
 		int offset;
 		int charWidth;
+		boolean headless;
+		long startTime = 0;
+		SessionRecorder recorder;
 
 		EastAsianWidth measurer = EastAsianWidth.getInstance();
 
@@ -116,6 +130,10 @@ public class Relay implements Runnable {
 				bytesRead = transport.read(byteArray, offset, bytesToRead);
 
 				if (bytesRead > 0) {
+					headless = bridge.isHeadless();
+					if (headless)
+						startTime = SystemClock.currentThreadTimeMillis();
+
 					byteBuffer.limit(byteBuffer.limit() + bytesRead);
 
 					synchronized (this) {
@@ -133,9 +151,16 @@ public class Relay implements Runnable {
 
 					measurer.measure(charArray, 0, offset, wideAttribute, bridge.defaultPaint, charWidth);
 					buffer.putString(charArray, wideAttribute, 0, charBuffer.position());
+					recorder = this.recorder;
+					if (recorder != null)
+						recorder.output(charArray, 0, charBuffer.position());
 					bridge.propagateConsoleText(charArray, charBuffer.position());
 					charBuffer.clear();
+					bridge.onRemoteOutput();
 					bridge.redraw();
+
+					if (headless)
+						bridge.addHeadlessCpuTime(SystemClock.currentThreadTimeMillis() - startTime);
 				}
 			}
 		} catch (IOException e) {
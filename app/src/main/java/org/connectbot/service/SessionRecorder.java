@@ -0,0 +1,352 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records a session to disk in the asciicast v2 format. The terminal threads
+ * only put events on a bounded queue and never wait; a writer thread of its
+ * own formats and writes them in batches. Events that arrive while the queue
+ * is full are dropped and counted rather than slowing the session down.
+ *
+ * <p>A recording is split into parts of about {@code partBytes} each, every
+ * one a complete asciicast file named {@code <name>-<n>.cast}. Only the newest
+ * {@code parts} are kept.
+ */
+public class SessionRecorder {
+	private static final String TAG = "CB.SessionRecorder";
+
+	public interface Clock {
+		long uptimeMillis();
+	}
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		public long uptimeMillis() {
+			return SystemClock.uptimeMillis();
+		}
+	};
+
+	public static final int DEFAULT_QUEUE_LENGTH = 1024;
+	public static final long DEFAULT_PART_BYTES = 4 * 1024 * 1024;
+	public static final int DEFAULT_PARTS = 8;
+
+	/** Most events written between two flushes. */
+	private static final int BATCH = 64;
+	private static final int WRITE_BUFFER = 16 * 1024;
+
+	/** How often the writer looks for a close while the session is quiet. */
+	private static final long POLL_MILLIS = 250;
+
+	private static final char OUTPUT = 'o';
+	private static final char INPUT = 'i';
+	private static final char RESIZE = 'r';
+
+	private static final class Event {
+		final long at;
+		final char type;
+		final String data;
+
+		Event(long at, char type, String data) {
+			this.at = at;
+			this.type = type;
+			this.data = data;
+		}
+	}
+
+	/** Counts the bytes that reach the file so parts can be cut by size. */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private final File directory;
+	private final String name;
+	private final String title;
+	private final boolean recordInput;
+	private final long partBytes;
+	private final int parts;
+	private final Clock clock;
+
+	private final BlockingQueue<Event> queue;
+	private final AtomicInteger dropped = new AtomicInteger();
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	// only touched by the writer thread
+	private int columns;
+	private int rows;
+	private int part = 0;
+	private long partStart;
+	private CountingOutputStream counter;
+	private Writer out;
+	private final StringBuilder line = new StringBuilder();
+
+	public SessionRecorder(File directory, String name, String title, int columns, int rows,
+			boolean recordInput) {
+		this(directory, name, title, columns, rows, recordInput,
+				DEFAULT_QUEUE_LENGTH, DEFAULT_PART_BYTES, DEFAULT_PARTS, SYSTEM_CLOCK);
+	}
+
+	public SessionRecorder(File directory, String name, String title, int columns, int rows,
+			boolean recordInput, int queueLength, long partBytes, int parts, Clock clock) {
+		this.directory = directory;
+		this.name = name;
+		this.title = title;
+		this.columns = columns;
+		this.rows = rows;
+		this.recordInput = recordInput;
+		this.partBytes = partBytes;
+		this.parts = parts;
+		this.clock = clock;
+
+		queue = new ArrayBlockingQueue<>(queueLength);
+		writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		});
+		writer.setName("Recorder");
+		writer.setDaemon(true);
+	}
+
+	public void start() {
+		writer.start();
+	}
+
+	/**
+	 * Record text the host sent, after it has been decoded.
+	 */
+	public void output(char[] chars, int offset, int length) {
+		if (length > 0)
+			add(OUTPUT, new String(chars, offset, length));
+	}
+
+	/**
+	 * Record text sent to the host, if input is being recorded.
+	 */
+	public void input(String text) {
+		if (recordInput && text.length() > 0)
+			add(INPUT, text);
+	}
+
+	public boolean isRecordingInput() {
+		return recordInput;
+	}
+
+	public void resize(int columns, int rows) {
+		add(RESIZE, columns + "x" + rows);
+	}
+
+	private void add(char type, String data) {
+		if (closed)
+			return;
+
+		if (!queue.offer(new Event(clock.uptimeMillis(), type, data)))
+			dropped.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of events lost because the writer fell behind
+	 */
+	public int getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Stop taking events. Events already queued are still written; this
+	 * does not wait for that to happen.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Wait for everything queued before {@link #close()} to reach the disk.
+	 *
+	 * @return whether the writer finished within {@code millis}
+	 */
+	public boolean awaitClose(long millis) throws InterruptedException {
+		writer.join(millis);
+		return !writer.isAlive();
+	}
+
+	private void drain() {
+		List<Event> batch = new ArrayList<>(BATCH);
+		try {
+			while (true) {
+				Event first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					if (closed && queue.isEmpty())
+						break;
+					continue;
+				}
+
+				batch.add(first);
+				queue.drainTo(batch, BATCH - 1);
+				if (out == null || counter.count >= partBytes)
+					openPart(batch.get(0).at);
+
+				for (Event event : batch)
+					writeEvent(event);
+				batch.clear();
+				out.flush();
+			}
+		} catch (InterruptedException e) {
+			Log.d(TAG, "Recorder interrupted; stopping");
+		} catch (IOException e) {
+			Log.e(TAG, "Problem writing session recording " + name, e);
+		} finally {
+			closed = true;
+			queue.clear();
+			closePart();
+		}
+	}
+
+	private void openPart(long at) throws IOException {
+		closePart();
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+
+		part++;
+		if (part > parts) {
+			File old = getPartFile(part - parts);
+			if (old.exists() && !old.delete())
+				Log.w(TAG, "Could not delete old recording " + old);
+		}
+
+		counter = new CountingOutputStream(new FileOutputStream(getPartFile(part)));
+		out = new BufferedWriter(new OutputStreamWriter(counter, "UTF-8"), WRITE_BUFFER);
+		partStart = at;
+
+		line.setLength(0);
+		line.append("{\"version\": 2, \"width\": ").append(columns)
+				.append(", \"height\": ").append(rows)
+				.append(", \"timestamp\": ").append(System.currentTimeMillis() / 1000)
+				.append(", \"title\": ");
+		appendString(line, title);
+		line.append("}\n");
+		out.write(line.toString());
+	}
+
+	private void closePart() {
+		if (out == null)
+			return;
+
+		try {
+			out.close();
+		} catch (IOException e) {
+			Log.e(TAG, "Problem closing session recording " + name, e);
+		}
+		out = null;
+		counter = null;
+	}
+
+	private void writeEvent(Event event) throws IOException {
+		if (event.type == RESIZE) {
+			int split = event.data.indexOf('x');
+			columns = Integer.parseInt(event.data.substring(0, split));
+			rows = Integer.parseInt(event.data.substring(split + 1));
+		}
+
+		long millis = Math.max(0, event.at - partStart);
+		line.setLength(0);
+		line.append('[').append(millis / 1000).append('.');
+		long fraction = millis % 1000;
+		if (fraction < 100)
+			line.append('0');
+		if (fraction < 10)
+			line.append('0');
+		line.append(fraction).append(", \"").append(event.type).append("\", ");
+		appendString(line, event.data);
+		line.append("]\n");
+		out.write(line.toString());
+	}
+
+	/* package */ File getPartFile(int n) {
+		return new File(directory, name + "-" + n + ".cast");
+	}
+
+	/**
+	 * Append {@code value} as a quoted JSON string.
+	 */
+	private static void appendString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == 0x7f) {
+					sb.append("\\u00");
+					sb.append(Character.forDigit(c >> 4, 16));
+					sb.append(Character.forDigit(c & 0xf, 16));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -19,10 +19,11 @@ package org.connectbot.service;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
 import org.connectbot.R;
 import org.connectbot.TerminalView;
@@ -32,6 +33,7 @@ import org.connectbot.bean.SelectionArea;
 import org.connectbot.transport.AbsTransport;
 import org.connectbot.transport.TransportFactory;
 import org.connectbot.util.HostDatabase;
+import org.connectbot.util.URLIndex;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -70,6 +72,16 @@ public class TerminalBridge implements VDUDisplay {
 	public int defaultFg = HostDatabase.DEFAULT_FG_COLOR;
 	public int defaultBg = HostDatabase.DEFAULT_BG_COLOR;
 
+	private final ColorLookup colorLookup = new ColorLookup();
+
+	private final HeldOutput output = new HeldOutput();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final PredictiveEcho echo;
+
+	private volatile SessionRecorder recorder;
+
 	protected final TerminalManager manager;
 
 	public HostBean host;
@@ -91,6 +103,8 @@ public class TerminalBridge implements VDUDisplay {
 
 	private boolean disconnected = false;
 	private boolean awaitingClose = false;
+	/** Whether a scheduled reconnect may still start us again; guarded by this. */
+	private boolean reconnectPending = false;
 
 	private boolean forcedSize = false;
 	private int columns;
@@ -114,12 +128,28 @@ public class TerminalBridge implements VDUDisplay {
 
 	private final List<String> localOutput;
 
+	private final URLIndex urlIndex = new URLIndex();
+
 	/**
 	 * Flag indicating if we should perform a full-screen redraw during our next
 	 * rendering pass.
 	 */
 	private boolean fullRedraw = false;
 
+	/**
+	 * Whether the {@link TerminalView} we are attached to is the one currently
+	 * shown to the user. When it is not, or we have no parent at all, the bridge
+	 * runs headless: output is still parsed into the buffer and scrollback, but
+	 * no invalidations or accessibility events are generated.
+	 */
+	private volatile boolean visible = true;
+
+	/**
+	 * Thread CPU time in milliseconds spent handling output while headless.
+	 * Only written by the {@link Relay} thread.
+	 */
+	private volatile long headlessCpuTime = 0;
+
 	public PromptHelper promptHelper;
 
 	protected BridgeDisconnectedListener disconnectListener = null;
@@ -140,6 +170,7 @@ public class TerminalBridge implements VDUDisplay {
 			@Override
 			public void debug(String s) {}
 		};
+		echo = new PredictiveEcho(buffer, latency);
 
 		emulation = null;
 		manager = null;
@@ -204,8 +235,10 @@ public class TerminalBridge implements VDUDisplay {
 			@Override
 			public void write(byte[] b) {
 				try {
-					if (b != null && transport != null)
-						transport.write(b);
+					if (b != null && transport != null) {
+						recordInput(b);
+						output.write(transport, b);
+					}
 				} catch (IOException e) {
 					Log.e(TAG, "Problem writing outgoing data in vt320() thread", e);
 				}
@@ -214,13 +247,32 @@ public class TerminalBridge implements VDUDisplay {
 			@Override
 			public void write(int b) {
 				try {
-					if (transport != null)
-						transport.write(b);
+					if (transport != null) {
+						recordInput(b);
+						output.write(transport, b);
+					}
 				} catch (IOException e) {
 					Log.e(TAG, "Problem writing outgoing data in vt320() thread", e);
 				}
 			}
 
+			@Override
+			public void keyPressed(int keyCode, char keyChar, int modifiers) {
+				// keys such as arrows and backspace move the cursor where no
+				// guess can follow; replies the emulator sends by itself
+				// through write() leave the guesses alone
+				if (echo.onOtherInput())
+					TerminalBridge.this.redraw();
+				super.keyPressed(keyCode, keyChar, modifiers);
+			}
+
+			@Override
+			public void keyTyped(int keyCode, char keyChar, int modifiers) {
+				if (echo.onOtherInput())
+					TerminalBridge.this.redraw();
+				super.keyTyped(keyCode, keyChar, modifiers);
+			}
+
 			// We don't use telnet sequences.
 			@Override
 			public void sendTelnetCommand(byte cmd) {
@@ -240,6 +292,9 @@ public class TerminalBridge implements VDUDisplay {
 			}
 		};
 
+		echo = new PredictiveEcho(buffer, latency);
+		echo.setEnabled(manager.isPredictiveEchoEnabled());
+
 		// Don't keep any scrollback if a session is not being opened.
 		if (host.getWantSession())
 			buffer.setBufferSize(scrollback);
@@ -289,6 +344,149 @@ public class TerminalBridge implements VDUDisplay {
 		connectionThread.start();
 	}
 
+	/**
+	 * Write to the remote host, or hold the bytes back while the session is
+	 * suspended.
+	 */
+	/* package */ void write(byte[] buffer) throws IOException {
+		String typed = new String(buffer, host.getEncoding());
+		if (typed.length() == 1) {
+			if (echo.onTyped(typed.charAt(0)))
+				redraw();
+		} else if (echo.onOtherInput()) {
+			redraw();
+		}
+		recordInput(buffer);
+		output.write(transport, buffer);
+	}
+
+	/* package */ void write(int c) throws IOException {
+		if (echo.onTyped((char) c))
+			redraw();
+		recordInput(c);
+		output.write(transport, c);
+	}
+
+	private void recordInput(byte[] buffer) throws IOException {
+		SessionRecorder recorder = this.recorder;
+		if (recorder != null && recorder.isRecordingInput())
+			recorder.input(new String(buffer, host.getEncoding()));
+	}
+
+	private void recordInput(int c) {
+		SessionRecorder recorder = this.recorder;
+		if (recorder != null && recorder.isRecordingInput())
+			recorder.input(String.valueOf((char) c));
+	}
+
+	/**
+	 * Start recording this session to a new file, if it is not being
+	 * recorded already.
+	 */
+	public synchronized void startRecording() {
+		if (recorder != null || relay == null)
+			return;
+
+		String name = host.getNickname().replaceAll("[^A-Za-z0-9._-]", "_") + "-"
+				+ new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+		recorder = new SessionRecorder(manager.getRecordingDirectory(), name,
+				host.getNickname(), buffer.getColumns(), buffer.getRows(),
+				manager.isInputRecordingEnabled());
+		recorder.start();
+		relay.setRecorder(recorder);
+	}
+
+	public synchronized void stopRecording() {
+		if (recorder == null)
+			return;
+
+		if (relay != null)
+			relay.setRecorder(null);
+		recorder.close();
+		recorder = null;
+	}
+
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	/**
+	 * Check the local echo guesses against output the {@link Relay} has just
+	 * written to the buffer.
+	 */
+	/* package */ void onRemoteOutput() {
+		echo.onRemoteOutput();
+	}
+
+	public PredictiveEcho getPredictiveEcho() {
+		return echo;
+	}
+
+	/**
+	 * Hold back everything written to the remote host until the session is
+	 * resumed, because the network has gone away and may not come back in
+	 * time for the session to survive.
+	 */
+	/* package */ void suspend() {
+		output.hold();
+	}
+
+	/**
+	 * Send whatever was held back while the session was suspended. If that
+	 * can't be done in full the session is disconnected, rather than carrying
+	 * on without some of what the user typed.
+	 */
+	/* package */ void resume() {
+		try {
+			int sent = output.release(transport);
+			if (sent > 0)
+				Log.d(TAG, String.format("Sent %d bytes held while suspended", sent));
+		} catch (IOException e) {
+			Log.e(TAG, "Couldn't send output held while suspended", e);
+			dispatchDisconnect(false);
+		}
+	}
+
+	/**
+	 * @return whether the network went away and this session is waiting to
+	 *         find out if it survived
+	 */
+	public boolean isSuspended() {
+		return output.isHolding();
+	}
+
+	/**
+	 * @return whether the remote host answered within {@code timeoutMillis}
+	 */
+	/* package */ boolean probe(long timeoutMillis) {
+		return transport != null && transport.probe(timeoutMillis);
+	}
+
+	/**
+	 * Time one round trip to the remote host and add it to
+	 * {@link #getLatency()}. Does nothing unless the session is open and the
+	 * transport can be asked for an answer.
+	 */
+	/* package */ void measureLatency(long timeoutMillis) {
+		AbsTransport transport = this.transport;
+		if (transport == null || !transport.canMeasureRoundTrip() || !transport.isSessionOpen()
+				|| isSuspended())
+			return;
+
+		long millis = transport.measureRoundTrip(timeoutMillis);
+		if (millis >= 0)
+			latency.record(millis);
+		else
+			latency.recordLost();
+	}
+
+	/**
+	 * @return round-trip times measured for this session so far
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
 	/**
 	 * Handle challenges from keyboard-interactive authentication mode.
 	 */
@@ -375,10 +573,13 @@ public class TerminalBridge implements VDUDisplay {
 		if (string == null || string.length() == 0)
 			return;
 
+		if (echo.onOtherInput())
+			redraw();
+
 		Thread injectStringThread = new Thread(new Runnable() {
 			public void run() {
 				try {
-					transport.write(string.getBytes(host.getEncoding()));
+					output.write(transport, string.getBytes(host.getEncoding()));
 				} catch (Exception e) {
 					Log.e(TAG, "Couldn't inject string to remote host: ", e);
 				}
@@ -388,6 +589,26 @@ public class TerminalBridge implements VDUDisplay {
 		injectStringThread.start();
 	}
 
+	/**
+	 * Start connecting again when a scheduled reconnect falls due, unless we
+	 * were closed or disconnected again in the meantime.
+	 *
+	 * @return whether the connection was started
+	 */
+	/* package */ boolean reconnect() {
+		synchronized (this) {
+			if (!reconnectPending || awaitingClose)
+				return false;
+
+			reconnectPending = false;
+			// an attempt that fails must be able to disconnect again
+			disconnected = false;
+		}
+
+		startConnection();
+		return true;
+	}
+
 	/**
 	 * Internal method to request actual PTY terminal once we've finished
 	 * authentication. If called before authenticated, it will just fail.
@@ -421,6 +642,11 @@ public class TerminalBridge implements VDUDisplay {
 
 		// finally send any post-login string, if requested
 		injectString(host.getPostLogin());
+
+		if (manager.isSessionRecordingEnabled())
+			startRecording();
+
+		manager.onBridgeConnected(this);
 	}
 
 	/**
@@ -446,11 +672,18 @@ public class TerminalBridge implements VDUDisplay {
 				return;
 
 			disconnected = true;
+			// a reconnect that is already due must not bring back a closed bridge
+			reconnectPending = false;
 		}
 
 		// Cancel any pending prompts.
 		promptHelper.cancelPrompt();
 
+		// Nothing held back while suspended can be sent now.
+		output.discard();
+
+		stopRecording();
+
 		// disconnection request hangs if we havent really connected to a host yet
 		// temporary fix is to just spawn disconnection into a thread
 		Thread disconnectThread = new Thread(new Runnable() {
@@ -463,7 +696,10 @@ public class TerminalBridge implements VDUDisplay {
 		disconnectThread.start();
 
 		if (immediate || (host.getQuickDisconnect() && !host.getStayConnected())) {
-			awaitingClose = true;
+			synchronized (this) {
+				awaitingClose = true;
+			}
+			manager.cancelReconnect(this);
 			triggerDisconnectListener();
 		} else {
 			{
@@ -471,15 +707,21 @@ public class TerminalBridge implements VDUDisplay {
 				((vt320) buffer).putString("\r\n" + line + "\r\n");
 			}
 			if (host.getStayConnected()) {
+				synchronized (this) {
+					reconnectPending = true;
+				}
 				manager.requestReconnect(this);
 				return;
 			}
+			manager.cancelReconnect(this);
 			Thread disconnectPromptThread = new Thread(new Runnable() {
 				public void run() {
 					Boolean result = promptHelper.requestBooleanPrompt(null,
 							manager.res.getString(R.string.prompt_host_disconnected));
 					if (result == null || result.booleanValue()) {
-						awaitingClose = true;
+						synchronized (TerminalBridge.this) {
+							awaitingClose = true;
+						}
 						triggerDisconnectListener();
 					}
 				}
@@ -616,33 +858,12 @@ public class TerminalBridge implements VDUDisplay {
 			rows = newRows;
 		}
 
-		// reallocate new bitmap if needed
-		boolean newBitmap = (bitmap == null);
-		if (bitmap != null)
-			newBitmap = (bitmap.getWidth() != width || bitmap.getHeight() != height);
-
-		if (newBitmap) {
+		// only hold on to a bitmap while we are shown; otherwise it is
+		// allocated again the next time we are drawn
+		if (visible)
+			prepareBitmap(width, height);
+		else
 			discardBitmap();
-			bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
-			canvas.setBitmap(bitmap);
-		}
-
-		// clear out any old buffer information
-		defaultPaint.setColor(Color.BLACK);
-		canvas.drawPaint(defaultPaint);
-
-		// Stroke the border of the terminal if the size is being forced;
-		if (forcedSize) {
-			int borderX = (columns * charWidth) + 1;
-			int borderY = (rows * charHeight) + 1;
-
-			defaultPaint.setColor(Color.GRAY);
-			defaultPaint.setStrokeWidth(0.0f);
-			if (width >= borderX)
-				canvas.drawLine(borderX, 0, borderX, borderY + 1, defaultPaint);
-			if (height >= borderY)
-				canvas.drawLine(0, borderY, borderX + 1, borderY, defaultPaint);
-		}
 
 		try {
 			// request a terminal pty resize
@@ -650,6 +871,10 @@ public class TerminalBridge implements VDUDisplay {
 				buffer.setScreenSize(columns, rows, true);
 			}
 
+			SessionRecorder recorder = this.recorder;
+			if (recorder != null)
+				recorder.resize(columns, rows);
+
 			if (transport != null)
 				transport.setDimensions(columns, rows, width, height);
 		} catch (Exception e) {
@@ -684,12 +909,69 @@ public class TerminalBridge implements VDUDisplay {
 		discardBitmap();
 	}
 
+	/**
+	 * Make sure our bitmap matches the given size, reallocating it if needed,
+	 * and clear it out ready for a full redraw.
+	 */
+	private void prepareBitmap(int width, int height) {
+		if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+			discardBitmap();
+			Config config = (manager != null) ? manager.getBitmapConfig() : Config.ARGB_8888;
+			bitmap = Bitmap.createBitmap(width, height, config);
+			canvas.setBitmap(bitmap);
+		}
+
+		// clear out any old buffer information
+		defaultPaint.setColor(Color.BLACK);
+		canvas.drawPaint(defaultPaint);
+
+		// Stroke the border of the terminal if the size is being forced;
+		if (forcedSize) {
+			int borderX = (columns * charWidth) + 1;
+			int borderY = (rows * charHeight) + 1;
+
+			defaultPaint.setColor(Color.GRAY);
+			defaultPaint.setStrokeWidth(0.0f);
+			if (width >= borderX)
+				canvas.drawLine(borderX, 0, borderX, borderY + 1, defaultPaint);
+			if (height >= borderY)
+				canvas.drawLine(0, borderY, borderX + 1, borderY, defaultPaint);
+		}
+	}
+
+	/**
+	 * Allocate our bitmap again after it was released while headless. The
+	 * whole screen is re-rendered from the {@link VDUBuffer} on the next pass.
+	 *
+	 * @return whether we now have a bitmap to draw into
+	 */
+	private synchronized boolean restoreBitmap() {
+		if (bitmap != null)
+			return true;
+
+		if (parent == null || parent.getWidth() <= 0 || parent.getHeight() <= 0)
+			return false;
+
+		prepareBitmap(parent.getWidth(), parent.getHeight());
+		fullRedraw = true;
+		return true;
+	}
+
 	private void discardBitmap() {
 		if (bitmap != null)
 			bitmap.recycle();
 		bitmap = null;
 	}
 
+	/**
+	 * @return the number of bytes held by our bitmap, or 0 if it is released
+	 */
+	public synchronized long getBitmapBytes() {
+		if (bitmap == null)
+			return 0;
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
 	public void setVDUBuffer(VDUBuffer buffer) {
 		this.buffer = buffer;
 	}
@@ -699,12 +981,69 @@ public class TerminalBridge implements VDUDisplay {
 	}
 
 	public void propagateConsoleText(char[] rawText, int length) {
+		if (isHeadless())
+			return;
+
 		if (parent != null) {
 			parent.propagateConsoleText(rawText, length);
 		}
 	}
 
+	/**
+	 * @return whether this bridge has no visible parent to render to
+	 */
+	public boolean isHeadless() {
+		return parent == null || !visible;
+	}
+
+	/**
+	 * Marks whether our {@link TerminalView} is currently shown to the user.
+	 * Our bitmap is released while hidden. Leaving headless mode forces one
+	 * full redraw so anything written to the buffer in the meantime appears at
+	 * once.
+	 */
+	public void setVisible(boolean visible) {
+		if (this.visible == visible)
+			return;
+
+		this.visible = visible;
+
+		if (!visible) {
+			synchronized (this) {
+				discardBitmap();
+			}
+		}
+
+		if (visible && parent != null) {
+			Log.d(TAG, String.format("Leaving headless mode after %d ms of CPU time", headlessCpuTime));
+
+			fullRedraw = true;
+			redraw();
+			parent.onBridgeShown();
+		}
+	}
+
+	/**
+	 * Account for time spent processing output while headless.
+	 *
+	 * @param millis thread CPU time in milliseconds
+	 */
+	/* package */ void addHeadlessCpuTime(long millis) {
+		headlessCpuTime += millis;
+	}
+
+	/**
+	 * @return thread CPU time in milliseconds this session has spent handling
+	 *         output while it was not visible
+	 */
+	public long getHeadlessCpuTime() {
+		return headlessCpuTime;
+	}
+
 	public void onDraw() {
+		if (bitmap == null && !restoreBitmap())
+			return;
+
 		int fg, bg;
 		synchronized (buffer) {
 			boolean entireDirty = buffer.update[0] || fullRedraw;
@@ -725,31 +1064,8 @@ public class TerminalBridge implements VDUDisplay {
 					int addr = 0;
 					int currAttr = buffer.charAttributes[buffer.windowBase + l][c];
 
-					{
-						int fgcolor = defaultFg;
-
-						// check if foreground color attribute is set
-						if ((currAttr & VDUBuffer.COLOR_FG) != 0)
-							fgcolor = ((currAttr & VDUBuffer.COLOR_FG) >> VDUBuffer.COLOR_FG_SHIFT) - 1;
-
-						if (fgcolor < 8 && (currAttr & VDUBuffer.BOLD) != 0)
-							fg = color[fgcolor + 8];
-						else
-							fg = color[fgcolor];
-					}
-
-					// check if background color attribute is set
-					if ((currAttr & VDUBuffer.COLOR_BG) != 0)
-						bg = color[((currAttr & VDUBuffer.COLOR_BG) >> VDUBuffer.COLOR_BG_SHIFT) - 1];
-					else
-						bg = color[defaultBg];
-
-					// support character inversion by swapping background and foreground color
-					if ((currAttr & VDUBuffer.INVERT) != 0) {
-						int swapc = bg;
-						bg = fg;
-						fg = swapc;
-					}
+					fg = colorLookup.getForeground(currAttr);
+					bg = colorLookup.getBackground(currAttr);
 
 					// set underlined attributes if requested
 					defaultPaint.setUnderlineText((currAttr & VDUBuffer.UNDERLINE) != 0);
@@ -807,7 +1123,43 @@ public class TerminalBridge implements VDUDisplay {
 		fullRedraw = false;
 	}
 
+	/**
+	 * Draw the local echo guesses over the screen, underlined so they can be
+	 * told apart from what the host has sent. They are drawn over the
+	 * bitmap rather than into it, so dropping a guess needs no more than
+	 * another pass of the view.
+	 */
+	public void drawPredictions(Canvas canvas) {
+		if (buffer.windowBase != buffer.screenBase)
+			return;
+
+		PredictiveEcho.Prediction[] predictions = echo.getVisible();
+		if (predictions == null)
+			return;
+
+		char[] text = new char[1];
+		defaultPaint.setUnderlineText(true);
+		for (PredictiveEcho.Prediction prediction : predictions) {
+			int x = prediction.column * charWidth;
+			int y = prediction.row * charHeight;
+
+			canvas.save(Canvas.CLIP_SAVE_FLAG);
+			canvas.clipRect(x, y, x + charWidth, y + charHeight);
+			defaultPaint.setColor(color[defaultBg]);
+			canvas.drawPaint(defaultPaint);
+
+			text[0] = prediction.character;
+			defaultPaint.setColor(color[defaultFg]);
+			canvas.drawText(text, 0, 1, x, y - charTop, defaultPaint);
+			canvas.restore();
+		}
+		defaultPaint.setUnderlineText(false);
+	}
+
 	public void redraw() {
+		if (isHeadless())
+			return;
+
 		if (parent != null)
 			parent.postInvalidate();
 	}
@@ -964,8 +1316,13 @@ public class TerminalBridge implements VDUDisplay {
 	 */
 	public void setColor(int index, int red, int green, int blue) {
 		// Don't allow the system colors to be overwritten for now. May violate specs.
-		if (index < color.length && index >= 16)
-			color[index] = 0xff000000 | red << 16 | green << 8 | blue;
+		if (index < color.length && index >= 16) {
+			int value = 0xff000000 | red << 16 | green << 8 | blue;
+			if (color[index] != value) {
+				color[index] = value;
+				colorLookup.update(color, defaultFg, defaultBg);
+			}
+		}
 	}
 
 	public final void resetColors() {
@@ -974,57 +1331,15 @@ public class TerminalBridge implements VDUDisplay {
 		defaultBg = defaults[1];
 
 		color = manager.colordb.getColorsForScheme(HostDatabase.DEFAULT_COLOR_SCHEME);
+		colorLookup.update(color, defaultFg, defaultBg);
 	}
 
-	private static Pattern urlPattern = null;
-
 	/**
-	 * @return
+	 * @return every distinct URL on the screen and in the scrollback, oldest
+	 *         first
 	 */
 	public List<String> scanForURLs() {
-		List<String> urls = new LinkedList<String>();
-
-		if (urlPattern == null) {
-			// based on http://www.ietf.org/rfc/rfc2396.txt
-			String scheme = "[A-Za-z][-+.0-9A-Za-z]*";
-			String unreserved = "[-._~0-9A-Za-z]";
-			String pctEncoded = "%[0-9A-Fa-f]{2}";
-			String subDelims = "[!$&'()*+,;:=]";
-			String userinfo = "(?:" + unreserved + "|" + pctEncoded + "|" + subDelims + "|:)*";
-			String h16 = "[0-9A-Fa-f]{1,4}";
-			String decOctet = "(?:[0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])";
-			String ipv4address = decOctet + "\\." + decOctet + "\\." + decOctet + "\\." + decOctet;
-			String ls32 = "(?:" + h16 + ":" + h16 + "|" + ipv4address + ")";
-			String ipv6address = "(?:(?:" + h16 + "){6}" + ls32 + ")";
-			String ipvfuture = "v[0-9A-Fa-f]+.(?:" + unreserved + "|" + subDelims + "|:)+";
-			String ipLiteral = "\\[(?:" + ipv6address + "|" + ipvfuture + ")\\]";
-			String regName = "(?:" + unreserved + "|" + pctEncoded + "|" + subDelims + ")*";
-			String host = "(?:" + ipLiteral + "|" + ipv4address + "|" + regName + ")";
-			String port = "[0-9]*";
-			String authority = "(?:" + userinfo + "@)?" + host + "(?::" + port + ")?";
-			String pchar = "(?:" + unreserved + "|" + pctEncoded + "|" + subDelims + "|@)";
-			String segment = pchar + "*";
-			String pathAbempty = "(?:/" + segment + ")*";
-			String segmentNz = pchar + "+";
-			String pathAbsolute = "/(?:" + segmentNz + "(?:/" + segment + ")*)?";
-			String pathRootless = segmentNz + "(?:/" + segment + ")*";
-			String hierPart = "(?://" + authority + pathAbempty + "|" + pathAbsolute + "|" + pathRootless + ")";
-			String query = "(?:" + pchar + "|/|\\?)*";
-			String fragment = "(?:" + pchar + "|/|\\?)*";
-			String uriRegex = scheme + ":" + hierPart + "(?:" + query + ")?(?:#" + fragment + ")?";
-			urlPattern = Pattern.compile(uriRegex);
-		}
-
-		char[] visibleBuffer = new char[buffer.height * buffer.width];
-		for (int l = 0; l < buffer.height; l++)
-			System.arraycopy(buffer.charArray[buffer.windowBase + l], 0,
-					visibleBuffer, l * buffer.width, buffer.width);
-
-		Matcher urlMatcher = urlPattern.matcher(new String(visibleBuffer));
-		while (urlMatcher.find())
-			urls.add(urlMatcher.group());
-
-		return urls;
+		return urlIndex.scan(buffer);
 	}
 
 	/**
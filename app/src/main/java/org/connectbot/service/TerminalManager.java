@@ -17,7 +17,10 @@
 
 package org.connectbot.service;
 
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.security.KeyPair;
 import java.security.PrivateKey;
@@ -31,12 +34,23 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
 
 import org.connectbot.R;
 import org.connectbot.bean.HostBean;
 import org.connectbot.bean.PubkeyBean;
 import org.connectbot.data.ColorStorage;
 import org.connectbot.data.HostStorage;
+import org.connectbot.data.WriteBehindHostStorage;
+import org.connectbot.transport.AbsTransport;
+import org.connectbot.transport.SSH;
 import org.connectbot.transport.TransportFactory;
 import org.connectbot.util.HostDatabase;
 import org.connectbot.util.PreferenceConstants;
@@ -51,11 +65,13 @@ import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.preference.PreferenceManager;
 import android.util.Log;
@@ -84,11 +100,27 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 	private final ArrayList<OnHostStatusChangedListener> hostStatusChangedListeners = new ArrayList<>();
 
-	public Map<String, KeyHolder> loadedKeypairs = new HashMap<String, KeyHolder>();
+	/**
+	 * Keys unlocked in memory by nickname. They are loaded from a pool of
+	 * threads at startup, so every access holds the map's lock; use
+	 * {@link #getLoadedKeypairs()} to look through them.
+	 */
+	private final Map<String, KeyHolder> loadedKeypairs = new HashMap<String, KeyHolder>();
+
+	/**
+	 * Nicknames of {@link #loadedKeypairs} indexed by public key, for agent
+	 * requests that only identify a key by its public half. Guarded by
+	 * {@code loadedKeypairs}.
+	 */
+	private final Map<PublicKeyBlob, String> loadedKeyNicknames = new HashMap<PublicKeyBlob, String>();
+	private volatile int keySetVersion = 0;
+
+	public final KeyPairCache decodedKeys = new KeyPairCache();
 
 	public Resources res;
 
 	public HostStorage hostdb;
+	private WriteBehindHostStorage hostWriter;
 	public ColorStorage colordb;
 	public PubkeyDatabase pubkeydb;
 
@@ -100,11 +132,23 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 	private MediaPlayer mediaPlayer;
 
-	private Timer pubkeyTimer;
+	private KeyExpiry keyExpiry;
+
+	private static final int MAX_KEY_LOADING_THREADS = 4;
+	private ExecutorService startupKeyLoader;
+	private final Map<String, FutureTask<Void>> pendingStartupKeys = new HashMap<String, FutureTask<Void>>();
 
 	private Timer idleTimer;
 	private final long IDLE_TIMEOUT = 300000; // 5 minutes
 
+	private Timer graceTimer;
+	private final long PROBE_TIMEOUT = 5000;
+
+	private Timer latencyTimer;
+	private final long LATENCY_INTERVAL = 30000;
+
+	private static final String RECORDING_DIRECTORY = "recordings";
+
 	private Vibrator vibrator;
 	private volatile boolean wantKeyVibration;
 	public static final long VIBRATE_DURATION = 30;
@@ -115,41 +159,38 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 	private boolean savingKeys;
 
-	protected List<WeakReference<TerminalBridge>> mPendingReconnect
-			= new LinkedList<WeakReference<TerminalBridge>>();
+	private ReconnectScheduler reconnects;
 
 	public boolean hardKeyboardHidden;
 
 	@Override
 	public void onCreate() {
 		Log.i(TAG, "Starting service");
+		long start = SystemClock.uptimeMillis();
 
 		prefs = PreferenceManager.getDefaultSharedPreferences(this);
 		prefs.registerOnSharedPreferenceChangeListener(this);
 
 		res = getResources();
 
-		pubkeyTimer = new Timer("pubkeyTimer", true);
+		keyExpiry = new KeyExpiry(new KeyExpiry.Listener() {
+			public void onKeyExpired(String nickname) {
+				Log.d(TAG, "Unloading from memory key: " + nickname);
+				KeyHolder keyHolder = unloadKey(nickname);
+				if (keyHolder != null)
+					keyHolder.wipe();
+			}
+		});
+		keyExpiry.start();
 
-		hostdb = HostDatabase.get(this);
+		hostWriter = new WriteBehindHostStorage(HostDatabase.get(this));
+		hostdb = hostWriter;
 		colordb = HostDatabase.get(this);
 		pubkeydb = PubkeyDatabase.get(this);
 
 		// load all marked pubkeys into memory
 		updateSavingKeys();
-		List<PubkeyBean> pubkeys = pubkeydb.getAllStartPubkeys();
-
-		for (PubkeyBean pubkey : pubkeys) {
-			try {
-				PrivateKey privKey = PubkeyUtils.decodePrivate(pubkey.getPrivateKey(), pubkey.getType());
-				PublicKey pubKey = PubkeyUtils.decodePublic(pubkey.getPublicKey(), pubkey.getType());
-				KeyPair pair = new KeyPair(pubKey, privKey);
-
-				addKey(pubkey, pair);
-			} catch (Exception e) {
-				Log.d(TAG, String.format("Problem adding key '%s' to in-memory cache", pubkey.getNickname()), e);
-			}
-		}
+		loadStartupKeys();
 
 		vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 		wantKeyVibration = prefs.getBoolean(PreferenceConstants.BUMPY_ARROWS, true);
@@ -164,6 +205,103 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 		connectivityManager = new ConnectivityReceiver(this, lockingWifi);
 
+		reconnects = new ReconnectScheduler();
+		reconnects.setOnline(connectivityManager.isConnected());
+		reconnects.start();
+
+		Log.i(TAG, String.format("Service started in %d ms", SystemClock.uptimeMillis() - start));
+	}
+
+	/**
+	 * Decode the keys marked to be loaded at startup on a small pool of
+	 * threads, so that the service is ready before they are. A connection that
+	 * needs one of them before then waits for it through
+	 * {@link #awaitStartupKey(String)} or {@link #awaitStartupKeys()}.
+	 */
+	private void loadStartupKeys() {
+		final List<PubkeyBean> pubkeys = pubkeydb.getAllStartPubkeys();
+		if (pubkeys.isEmpty())
+			return;
+
+		final long start = SystemClock.uptimeMillis();
+		final AtomicInteger remaining = new AtomicInteger(pubkeys.size());
+
+		int threads = Math.min(pubkeys.size(),
+				Math.min(Runtime.getRuntime().availableProcessors(), MAX_KEY_LOADING_THREADS));
+		startupKeyLoader = Executors.newFixedThreadPool(threads);
+
+		for (final PubkeyBean pubkey : pubkeys) {
+			FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+				public void run() {
+					try {
+						PrivateKey privKey = PubkeyUtils.decodePrivate(pubkey.getPrivateKey(), pubkey.getType());
+						PublicKey pubKey = PubkeyUtils.decodePublic(pubkey.getPublicKey(), pubkey.getType());
+						KeyPair pair = new KeyPair(pubKey, privKey);
+
+						addKey(pubkey, pair);
+					} catch (Exception e) {
+						Log.d(TAG, String.format("Problem adding key '%s' to in-memory cache", pubkey.getNickname()), e);
+					}
+
+					synchronized (pendingStartupKeys) {
+						pendingStartupKeys.remove(pubkey.getNickname());
+					}
+
+					if (remaining.decrementAndGet() == 0)
+						Log.i(TAG, String.format("Loaded %d startup keys in %d ms",
+								pubkeys.size(), SystemClock.uptimeMillis() - start));
+				}
+			}, null);
+
+			synchronized (pendingStartupKeys) {
+				pendingStartupKeys.put(pubkey.getNickname(), task);
+			}
+			startupKeyLoader.execute(task);
+		}
+
+		startupKeyLoader.shutdown();
+	}
+
+	/**
+	 * Make sure the startup key with this nickname, if there is one, is
+	 * loaded. It is decoded on the calling thread if the pool has not got to
+	 * it yet.
+	 */
+	public void awaitStartupKey(String nickname) {
+		FutureTask<Void> task;
+		synchronized (pendingStartupKeys) {
+			task = pendingStartupKeys.get(nickname);
+		}
+
+		if (task != null)
+			finishStartupKey(task);
+	}
+
+	/**
+	 * Make sure every startup key is loaded, helping the pool along on the
+	 * calling thread.
+	 */
+	public void awaitStartupKeys() {
+		List<FutureTask<Void>> tasks;
+		synchronized (pendingStartupKeys) {
+			tasks = new ArrayList<FutureTask<Void>>(pendingStartupKeys.values());
+		}
+
+		for (FutureTask<Void> task : tasks)
+			finishStartupKey(task);
+	}
+
+	private static void finishStartupKey(FutureTask<Void> task) {
+		// does nothing if the pool already started it
+		task.run();
+
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Log.e(TAG, "Problem loading startup key", e);
+		}
 	}
 
 	private void updateSavingKeys() {
@@ -176,16 +314,28 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 		disconnectAll(true, false);
 
+		if (startupKeyLoader != null)
+			startupKeyLoader.shutdownNow();
+
+		hostWriter.shutdown();
 		hostdb = null;
 		pubkeydb = null;
 
+		decodedKeys.clear();
+
 		synchronized (this) {
 			if (idleTimer != null)
 				idleTimer.cancel();
-			if (pubkeyTimer != null)
-				pubkeyTimer.cancel();
+			if (keyExpiry != null)
+				keyExpiry.stop();
+			if (graceTimer != null)
+				graceTimer.cancel();
 		}
 
+		stopLatencyTimer();
+
+		reconnects.stop();
+
 		connectivityManager.cleanup();
 
 		ConnectionNotifier.getInstance().hideRunningNotification(this);
@@ -268,6 +418,59 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 		return scrollback;
 	}
 
+	/**
+	 * @return how long sessions are kept suspended after the network goes
+	 *         away before they are disconnected
+	 */
+	public long getConnectivityGraceMillis() {
+		int seconds = 15;
+		try {
+			seconds = Integer.parseInt(prefs.getString(PreferenceConstants.CONNECTION_GRACE, "15"));
+		} catch (Exception e) {
+		}
+		return seconds * 1000L;
+	}
+
+	public boolean isPredictiveEchoEnabled() {
+		return prefs.getBoolean(PreferenceConstants.PREDICTIVE_ECHO, true);
+	}
+
+	public boolean isSessionRecordingEnabled() {
+		return prefs.getBoolean(PreferenceConstants.RECORD_SESSIONS, false);
+	}
+
+	public boolean isInputRecordingEnabled() {
+		return prefs.getBoolean(PreferenceConstants.RECORD_INPUT, false);
+	}
+
+	/**
+	 * @return where session recordings are written: private storage unless
+	 *         the user asked for them on external storage, which other apps
+	 *         can read on older releases
+	 */
+	public File getRecordingDirectory() {
+		if (prefs.getBoolean(PreferenceConstants.RECORD_EXTERNAL, false)) {
+			File directory = getExternalFilesDir(RECORDING_DIRECTORY);
+			if (directory != null)
+				return directory;
+		}
+		return new File(getFilesDir(), RECORDING_DIRECTORY);
+	}
+
+	public boolean isConnectionSharingEnabled() {
+		return prefs.getBoolean(PreferenceConstants.CONNECTION_SHARING, false);
+	}
+
+	/**
+	 * @return the pixel format terminal bitmaps should be allocated with;
+	 *         16-bit colour halves their memory use at the cost of some shades
+	 */
+	public Bitmap.Config getBitmapConfig() {
+		if (prefs.getBoolean(PreferenceConstants.LOW_MEMORY_BITMAPS, false))
+			return Bitmap.Config.RGB_565;
+		return Bitmap.Config.ARGB_8888;
+	}
+
 	/**
 	 * Open a new connection by reading parameters from the given URI. Follows
 	 * format specified by an individual transport.
@@ -283,12 +486,23 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 
 	/**
 	 * Update the last-connected value for the given nickname by passing through
-	 * to {@link HostDatabase}.
+	 * to {@link HostDatabase}. The bean is updated too, so lists showing it
+	 * do not have to read the host back.
 	 */
 	private void touchHost(HostBean host) {
+		host.setLastConnect(System.currentTimeMillis() / 1000);
 		hostdb.touchHost(host);
 	}
 
+	/**
+	 * Write out the host updates we are holding back, for callers about to
+	 * read or change hosts in the database directly.
+	 */
+	public void flushHostWrites() {
+		if (hostWriter != null)
+			hostWriter.flush();
+	}
+
 	/**
 	 * Find a connected {@link TerminalBridge} with the given HostBean.
 	 *
@@ -340,8 +554,10 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 				connectivityManager.decRef();
 			}
 
+			reconnects.cancel(bridge.host.getNickname());
+
 			if (bridges.size() == 0 &&
-					mPendingReconnect.size() == 0) {
+					reconnects.size() == 0) {
 				shouldHideRunningNotification = true;
 			}
 
@@ -362,7 +578,29 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 	}
 
 	public boolean isKeyLoaded(String nickname) {
-		return loadedKeypairs.containsKey(nickname);
+		synchronized (loadedKeypairs) {
+			return loadedKeypairs.containsKey(nickname);
+		}
+	}
+
+	/**
+	 * @return a copy of the keys loaded right now, by nickname, that is safe
+	 *         to iterate while keys are loaded and unloaded
+	 */
+	public Map<String, KeyHolder> getLoadedKeypairs() {
+		synchronized (loadedKeypairs) {
+			return new HashMap<String, KeyHolder>(loadedKeypairs);
+		}
+	}
+
+	/**
+	 * @return the loaded key with this nickname, or {@code null} if it is not
+	 *         loaded
+	 */
+	public KeyHolder getLoadedKeypair(String nickname) {
+		synchronized (loadedKeypairs) {
+			return loadedKeypairs.get(nickname);
+		}
 	}
 
 	public void addKey(PubkeyBean pubkey, KeyPair pair) {
@@ -382,72 +620,124 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 		keyHolder.pair = pair;
 		keyHolder.openSSHPubkey = sshPubKey;
 
-		loadedKeypairs.put(pubkey.getNickname(), keyHolder);
-
-		if (pubkey.getLifetime() > 0) {
-			final String nickname = pubkey.getNickname();
-			pubkeyTimer.schedule(new TimerTask() {
-				@Override
-				public void run() {
-					Log.d(TAG, "Unloading from memory key: " + nickname);
-					removeKey(nickname);
-				}
-			}, pubkey.getLifetime() * 1000);
+		synchronized (loadedKeypairs) {
+			loadedKeypairs.put(pubkey.getNickname(), keyHolder);
+			if (sshPubKey != null)
+				loadedKeyNicknames.put(new PublicKeyBlob(sshPubKey), pubkey.getNickname());
+			keySetVersion++;
 		}
 
+		if (pubkey.getLifetime() > 0)
+			keyExpiry.schedule(pubkey.getNickname(), pubkey.getLifetime() * 1000L);
+
 		Log.d(TAG, String.format("Added key '%s' to in-memory cache", pubkey.getNickname()));
 	}
 
 	public boolean removeKey(String nickname) {
 		Log.d(TAG, String.format("Removed key '%s' to in-memory cache", nickname));
-		return loadedKeypairs.remove(nickname) != null;
+		return unloadKey(nickname) != null;
 	}
 
-	public boolean removeKey(byte[] publicKey) {
-		String nickname = null;
+	private KeyHolder unloadKey(String nickname) {
+		keyExpiry.cancel(nickname);
+
+		synchronized (loadedKeypairs) {
+			KeyHolder keyHolder = loadedKeypairs.remove(nickname);
+			if (keyHolder == null)
+				return null;
+
+			if (keyHolder.openSSHPubkey != null)
+				unindexKey(nickname, keyHolder.openSSHPubkey);
+			keySetVersion++;
+			return keyHolder;
+		}
+	}
+
+	/**
+	 * Drop the index entry for a removed key. If another loaded key has the
+	 * same public key, point the entry at that one instead.
+	 */
+	private void unindexKey(String nickname, byte[] publicKey) {
+		PublicKeyBlob blob = new PublicKeyBlob(publicKey);
+		if (!nickname.equals(loadedKeyNicknames.get(blob)))
+			return;
+
+		loadedKeyNicknames.remove(blob);
 		for (Entry<String, KeyHolder> entry : loadedKeypairs.entrySet()) {
 			if (Arrays.equals(entry.getValue().openSSHPubkey, publicKey)) {
-				nickname = entry.getKey();
+				loadedKeyNicknames.put(blob, entry.getKey());
 				break;
 			}
 		}
+	}
 
-		if (nickname != null) {
-			Log.d(TAG, String.format("Removed key '%s' to in-memory cache", nickname));
-			return removeKey(nickname);
-		} else
+	public boolean removeKey(byte[] publicKey) {
+		String nickname = getKeyNickname(publicKey);
+		if (nickname == null)
 			return false;
+
+		return removeKey(nickname);
+	}
+
+	/**
+	 * Unload every key from memory.
+	 */
+	public void removeAllKeys() {
+		keyExpiry.cancelAll();
+
+		synchronized (loadedKeypairs) {
+			loadedKeypairs.clear();
+			loadedKeyNicknames.clear();
+			keySetVersion++;
+		}
 	}
 
 	public KeyPair getKey(String nickname) {
-		if (loadedKeypairs.containsKey(nickname)) {
+		synchronized (loadedKeypairs) {
 			KeyHolder keyHolder = loadedKeypairs.get(nickname);
-			return keyHolder.pair;
-		} else
-			return null;
+			return keyHolder != null ? keyHolder.pair : null;
+		}
 	}
 
 	public KeyPair getKey(byte[] publicKey) {
-		for (KeyHolder keyHolder : loadedKeypairs.values()) {
-			if (Arrays.equals(keyHolder.openSSHPubkey, publicKey))
-				return keyHolder.pair;
+		synchronized (loadedKeypairs) {
+			String nickname = loadedKeyNicknames.get(new PublicKeyBlob(publicKey));
+			return nickname != null ? getKey(nickname) : null;
 		}
-		return null;
 	}
 
 	public String getKeyNickname(byte[] publicKey) {
-		for (Entry<String, KeyHolder> entry : loadedKeypairs.entrySet()) {
-			if (Arrays.equals(entry.getValue().openSSHPubkey, publicKey))
-				return entry.getKey();
+		synchronized (loadedKeypairs) {
+			return loadedKeyNicknames.get(new PublicKeyBlob(publicKey));
 		}
-		return null;
+	}
+
+	/**
+	 * @return a number that changes whenever a key is loaded or unloaded, so
+	 *         anything derived from the set of loaded keys knows to rebuild
+	 */
+	public int getKeySetVersion() {
+		return keySetVersion;
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+
+		// these can always be decoded again from the database
+		decodedKeys.clear();
 	}
 
 	private void stopWithDelay() {
 		// TODO add in a way to check whether keys loaded are encrypted and only
 		// set timer when we have an encrypted key loaded
 
-		if (loadedKeypairs.size() > 0) {
+		boolean keysLoaded;
+		synchronized (loadedKeypairs) {
+			keysLoaded = !loadedKeypairs.isEmpty();
+		}
+
+		if (keysLoaded) {
 			synchronized (this) {
 				if (idleTimer == null)
 					idleTimer = new Timer("idleTimer", true);
@@ -477,6 +767,46 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 		return bridges;
 	}
 
+	/**
+	 * @return the number of bytes currently held by terminal bitmaps across
+	 *         all open sessions
+	 */
+	public long getBitmapBytes() {
+		long total = 0;
+		synchronized (bridges) {
+			for (TerminalBridge bridge : bridges)
+				total += bridge.getBitmapBytes();
+		}
+		return total;
+	}
+
+	/**
+	 * Report what each open session costs, for
+	 * {@code adb shell dumpsys activity service org.connectbot/.service.TerminalManager}.
+	 */
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+		List<TerminalBridge> snapshot;
+		synchronized (bridges) {
+			snapshot = new ArrayList<TerminalBridge>(bridges);
+		}
+
+		writer.println(String.format("%d open sessions, %d bytes of terminal bitmaps",
+				snapshot.size(), getBitmapBytes()));
+		for (TerminalBridge bridge : snapshot) {
+			writer.println(String.format("  %s: %s, %d ms CPU while headless, %d bitmap bytes",
+					bridge.host.getNickname(),
+					bridge.isHeadless() ? "headless" : "visible",
+					bridge.getHeadlessCpuTime(),
+					bridge.getBitmapBytes()));
+
+			AbsTransport transport = bridge.transport;
+			if (transport instanceof SSH)
+				writer.println(String.format("    %.1f read wake-ups per MB",
+						((SSH) transport).getReadWakeupsPerMegabyte()));
+		}
+	}
+
 	public class TerminalBinder extends Binder {
 		public TerminalManager getService() {
 			return TerminalManager.this;
@@ -496,9 +826,35 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 	 */
 	private void keepServiceAlive() {
 		stopIdleTimer();
+		startLatencyTimer();
 		startService(new Intent(this, TerminalManager.class));
 	}
 
+	/**
+	 * Measure the round-trip time of every open session now and then while
+	 * someone is looking, so it is not waking the radio in the background.
+	 */
+	private synchronized void startLatencyTimer() {
+		if (latencyTimer != null)
+			return;
+
+		latencyTimer = new Timer("latencyTimer", true);
+		latencyTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				for (TerminalBridge bridge : getNetworkBridges())
+					bridge.measureLatency(PROBE_TIMEOUT);
+			}
+		}, LATENCY_INTERVAL, LATENCY_INTERVAL);
+	}
+
+	private synchronized void stopLatencyTimer() {
+		if (latencyTimer != null) {
+			latencyTimer.cancel();
+			latencyTimer = null;
+		}
+	}
+
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
 		/*
@@ -521,6 +877,7 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 		Log.i(TAG, "Someone unbound from TerminalManager with " + bridges.size() + " bridges active");
 
 		setResizeAllowed(true);
+		stopLatencyTimer();
 
 		if (bridges.size() == 0) {
 			stopWithDelay();
@@ -653,6 +1010,52 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 		public PubkeyBean bean;
 		public KeyPair pair;
 		public byte[] openSSHPubkey;
+
+		/**
+		 * Destroy the private key if the platform allows it and drop our
+		 * references. Keys stored without a passphrase may still be in use
+		 * from {@link #decodedKeys}, so only unlocked keys are destroyed.
+		 */
+		void wipe() {
+			if (pair != null && bean != null && bean.isEncrypted()
+					&& pair.getPrivate() instanceof Destroyable) {
+				Destroyable key = (Destroyable) pair.getPrivate();
+				try {
+					if (!key.isDestroyed())
+						key.destroy();
+				} catch (DestroyFailedException e) {
+					// most providers cannot destroy their keys
+				}
+			}
+
+			bean = null;
+			pair = null;
+			openSSHPubkey = null;
+		}
+	}
+
+	/**
+	 * Public key in OpenSSH wire format, compared by content so it can be
+	 * used as a hash key.
+	 */
+	private static final class PublicKeyBlob {
+		private final byte[] blob;
+		private final int hash;
+
+		PublicKeyBlob(byte[] blob) {
+			this.blob = blob;
+			hash = Arrays.hashCode(blob);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof PublicKeyBlob && Arrays.equals(blob, ((PublicKeyBlob) o).blob);
+		}
 	}
 
 	/**
@@ -660,62 +1063,140 @@ public class TerminalManager extends Service implements BridgeDisconnectedListen
 	 * we'll be getting a different connection any time soon.
 	 */
 	public void onConnectivityLost() {
-		final Thread t = new Thread() {
-			@Override
-			public void run() {
-				disconnectAll(false, true);
-			}
-		};
-		t.setName("Disconnector");
-		t.start();
+		reconnects.setOnline(false);
+
+		long grace = getConnectivityGraceMillis();
+		if (grace <= 0) {
+			final Thread t = new Thread() {
+				@Override
+				public void run() {
+					disconnectAll(false, true);
+				}
+			};
+			t.setName("Disconnector");
+			t.start();
+			return;
+		}
+
+		// The network often comes back within moments, such as when moving
+		// from Wi-Fi to mobile data, so give sessions a chance to survive.
+		for (TerminalBridge bridge : getNetworkBridges()) {
+			if (bridge.isSessionOpen())
+				bridge.suspend();
+		}
+
+		synchronized (this) {
+			if (graceTimer != null)
+				graceTimer.cancel();
+			graceTimer = new Timer("graceTimer", true);
+			graceTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					endGracePeriod(false);
+				}
+			}, grace);
+		}
 	}
 
 	/**
 	 * Called when connectivity to the network is restored.
 	 */
 	public void onConnectivityRestored() {
-		final Thread t = new Thread() {
-			@Override
-			public void run() {
-				reconnectPending();
+		reconnects.setOnline(true);
+		endGracePeriod(true);
+	}
+
+	/**
+	 * Decide what happens to the sessions suspended when the network went
+	 * away. If it came back, each session is resumed when its remote host
+	 * still answers and disconnected otherwise; if the grace period ran out
+	 * first, they are all disconnected.
+	 */
+	private void endGracePeriod(boolean restored) {
+		synchronized (this) {
+			if (graceTimer != null) {
+				graceTimer.cancel();
+				graceTimer = null;
 			}
-		};
-		t.setName("Reconnector");
-		t.start();
+		}
+
+		for (final TerminalBridge bridge : getNetworkBridges()) {
+			if (!bridge.isSuspended())
+				continue;
+
+			if (!restored) {
+				Log.d(TAG, "Network did not come back in time for " + bridge.host.getNickname());
+				bridge.dispatchDisconnect(false);
+				continue;
+			}
+
+			Thread probeThread = new Thread(new Runnable() {
+				public void run() {
+					if (bridge.probe(PROBE_TIMEOUT)) {
+						bridge.resume();
+					} else {
+						Log.d(TAG, "Session did not survive losing the network: " + bridge.host.getNickname());
+						bridge.dispatchDisconnect(false);
+					}
+				}
+			});
+			probeThread.setName("Probe");
+			probeThread.setDaemon(true);
+			probeThread.start();
+		}
+	}
+
+	private List<TerminalBridge> getNetworkBridges() {
+		List<TerminalBridge> networkBridges = new LinkedList<TerminalBridge>();
+		synchronized (bridges) {
+			for (TerminalBridge bridge : bridges) {
+				if (bridge.isUsingNetwork())
+					networkBridges.add(bridge);
+			}
+		}
+		return networkBridges;
 	}
 
 	/**
-	 * Insert request into reconnect queue to be executed either immediately
-	 * or later when connectivity is restored depending on whether we're
-	 * currently connected.
+	 * Queue the bridge to be reconnected after a backoff delay. Bridges that
+	 * need the network wait until connectivity is restored.
 	 *
 	 * @param bridge the TerminalBridge to reconnect when possible
 	 */
 	public void requestReconnect(TerminalBridge bridge) {
-		synchronized (mPendingReconnect) {
-			mPendingReconnect.add(new WeakReference<TerminalBridge>(bridge));
-			if (!bridge.isUsingNetwork() ||
-					connectivityManager.isConnected()) {
-				reconnectPending();
+		final String nickname = bridge.host.getNickname();
+		final WeakReference<TerminalBridge> ref = new WeakReference<TerminalBridge>(bridge);
+		reconnects.request(nickname, new Runnable() {
+			public void run() {
+				TerminalBridge bridge = ref.get();
+				// the bridge may have been closed since this was queued
+				if (bridge == null || !bridge.reconnect())
+					reconnects.cancel(nickname);
 			}
-		}
+		}, bridge.isUsingNetwork());
 	}
 
 	/**
-	 * Reconnect all bridges that were pending a reconnect when connectivity
-	 * was lost.
+	 * Drop any reconnect waiting for the bridge, such as when it is closed.
 	 */
-	private void reconnectPending() {
-		synchronized (mPendingReconnect) {
-			for (WeakReference<TerminalBridge> ref : mPendingReconnect) {
-				TerminalBridge bridge = ref.get();
-				if (bridge == null) {
-					continue;
-				}
-				bridge.startConnection();
-			}
-			mPendingReconnect.clear();
-		}
+	/* package */ void cancelReconnect(TerminalBridge bridge) {
+		reconnects.cancel(bridge.host.getNickname());
+	}
+
+	/**
+	 * Called by a bridge once its session is open, so a pending reconnect
+	 * counts as having succeeded.
+	 */
+	/* package */ void onBridgeConnected(TerminalBridge bridge) {
+		reconnects.connected(bridge.host.getNickname());
+	}
+
+	/**
+	 * @return how reconnecting to {@code host} has gone so far, or
+	 *         {@code null} if it has never been reconnected
+	 */
+	public ReconnectScheduler.Stats getReconnectStats(HostBean host) {
+		return reconnects.getStats(host.getNickname());
 	}
 
 	/**
@@ -214,6 +214,38 @@ public abstract class AbsTransport {
 	public abstract boolean isConnected();
 	public abstract boolean isSessionOpen();
 
+	/**
+	 * Checks whether the remote end is still there, for example after the
+	 * network went away for a moment. Transports that cannot ask the remote
+	 * end only report whether they still think they are connected.
+	 * @param timeoutMillis how long to wait for an answer
+	 * @return true if the remote end answered in time
+	 */
+	public boolean probe(long timeoutMillis) {
+		if (canMeasureRoundTrip())
+			return measureRoundTrip(timeoutMillis) >= 0;
+		return isConnected();
+	}
+
+	/**
+	 * Whether or not this transport can ask the remote end for an answer.
+	 * @return true if {@link #measureRoundTrip(long)} is supported
+	 */
+	public boolean canMeasureRoundTrip() {
+		return false;
+	}
+
+	/**
+	 * Sends a request that the remote end answers without side effects and
+	 * times the answer.
+	 * @param timeoutMillis how long to wait for an answer
+	 * @return the round-trip time in milliseconds, or -1 if there was no
+	 *         answer in time
+	 */
+	public long measureRoundTrip(long timeoutMillis) {
+		return -1;
+	}
+
 	/**
 	 * @return int default port for protocol
 	 */
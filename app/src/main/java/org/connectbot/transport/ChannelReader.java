@@ -0,0 +1,119 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.trilead.ssh2.ChannelCondition;
+
+/**
+ * Reads what a session channel has ready each time the relay thread wakes
+ * up: everything available on stdout, then stderr to show along with it.
+ * <p>
+ * Stderr is only added after stdout data that ends a line. Anywhere else the
+ * stdout data may stop partway through a multi-byte character or an escape
+ * sequence, and splicing other bytes in would garble both; the stderr data
+ * then waits for a later read. Programs that draw progress bars, prompts or
+ * full-screen interfaces may never end a read with a newline, so once stderr
+ * has waited through {@link #MAX_HELD_READS} reads or
+ * {@link #MAX_HELD_BYTES} bytes of stdout it is added anyway rather than
+ * left to fill the channel window and stall the session.
+ */
+/* package */ class ChannelReader {
+	private final InputStream stdout;
+	private final InputStream stderr;
+
+	/* package */ static final int MAX_HELD_READS = 16;
+	/* package */ static final int MAX_HELD_BYTES = 64 * 1024;
+
+	// Reads and bytes of stdout since stderr started waiting.
+	private int heldReads = 0;
+	private int heldBytes = 0;
+
+	// Only updated by the relay thread.
+	private volatile long wakeups = 0;
+	private volatile long bytesReceived = 0;
+
+	ChannelReader(InputStream stdout, InputStream stderr) {
+		this.stdout = stdout;
+		this.stderr = stderr;
+	}
+
+	/**
+	 * @param conditions the {@link ChannelCondition} flags the channel woke
+	 *            us up with
+	 * @return the number of bytes placed in {@code buffer}
+	 */
+	public int read(int conditions, byte[] buffer, int start, int len) throws IOException {
+		int bytesRead = 0;
+		wakeups++;
+
+		// Take everything that has already arrived so the relay goes back to
+		// waiting once per burst of output rather than once per packet.
+		if ((conditions & ChannelCondition.STDOUT_DATA) != 0)
+			bytesRead += drain(stdout, buffer, start, len);
+
+		if ((conditions & ChannelCondition.STDERR_DATA) != 0) {
+			if (bytesRead == 0 || buffer[start + bytesRead - 1] == '\n'
+					|| heldReads >= MAX_HELD_READS || heldBytes >= MAX_HELD_BYTES) {
+				int n = drain(stderr, buffer, start + bytesRead, len - bytesRead);
+				if (n > 0) {
+					heldReads = 0;
+					heldBytes = 0;
+				}
+				bytesRead += n;
+			} else {
+				heldReads++;
+				heldBytes += bytesRead;
+			}
+		}
+
+		bytesReceived += bytesRead;
+		return bytesRead;
+	}
+
+	/**
+	 * Read from the stream into the buffer until either the buffer is full or
+	 * the stream would block.
+	 */
+	private static int drain(InputStream in, byte[] buffer, int start, int len) throws IOException {
+		int total = 0;
+		while (total < len) {
+			int n = in.read(buffer, start + total, len - total);
+			if (n <= 0)
+				break;
+
+			total += n;
+			if (in.available() <= 0)
+				break;
+		}
+		return total;
+	}
+
+	/**
+	 * @return how many times we were woken up to read per megabyte received,
+	 *         or 0 if nothing has been received yet
+	 */
+	public double getWakeupsPerMegabyte() {
+		long received = bytesReceived;
+		if (received == 0)
+			return 0;
+		return wakeups * (1024.0 * 1024.0) / received;
+	}
+}
@@ -18,7 +18,6 @@
 package org.connectbot.transport;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -32,12 +31,22 @@ import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +63,7 @@ import org.connectbot.util.PubkeyUtils;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.trilead.ssh2.AuthAgentCallback;
@@ -113,12 +123,16 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	private boolean interactiveCanContinue = true;
 
 	private Connection connection;
+	private SharedConnection sharedConnection;
+	private volatile boolean releasedConnection = false;
 	private Session session;
 	private ConnectionInfo connectionInfo;
 
 	private OutputStream stdin;
-	private InputStream stdout;
-	private InputStream stderr;
+	private volatile ChannelReader reader;
+
+	/** Set while a keepalive probe is still waiting for its answer. */
+	private final AtomicBoolean pingInFlight = new AtomicBoolean(false);
 
 	private static final int conditions = ChannelCondition.STDOUT_DATA
 		| ChannelCondition.STDERR_DATA
@@ -134,18 +148,16 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	private int height;
 
 	private String useAuthAgent = HostDatabase.AUTHAGENT_NO;
+	private Map<String, byte[]> cachedIdentities;
+	private int cachedIdentitiesVersion;
 	private String agentLockPassphrase;
 
 	public class HostKeyVerifier implements ServerHostKeyVerifier {
 		public boolean verifyServerHostKey(String hostname, int port,
 				String serverHostKeyAlgorithm, byte[] serverHostKey) throws IOException {
 
-			// read in all known hosts from hostdb
-			KnownHosts hosts = manager.hostdb.getKnownHosts();
 			Boolean result;
 
-			String matchName = String.format(Locale.US, "%s:%d", hostname, port);
-
 			String fingerprint = KnownHosts.createHexFingerprint(serverHostKeyAlgorithm, serverHostKey);
 
 			String algorithmName;
@@ -158,7 +170,7 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 			else
 				algorithmName = serverHostKeyAlgorithm;
 
-			switch (hosts.verifyHostkey(matchName, serverHostKeyAlgorithm, serverHostKey)) {
+			switch (manager.hostdb.verifyKnownHost(hostname, port, serverHostKeyAlgorithm, serverHostKey)) {
 			case KnownHosts.HOSTKEY_IS_OK:
 				bridge.outputLine(manager.res.getString(R.string.terminal_sucess, algorithmName, fingerprint));
 				return true;
@@ -235,13 +247,19 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 					// try each of the in-memory keys
 					bridge.outputLine(manager.res
 							.getString(R.string.terminal_auth_pubkey_any));
-					for (Entry<String, KeyHolder> entry : manager.loadedKeypairs.entrySet()) {
-						if (entry.getValue().bean.isConfirmUse()
+					manager.awaitStartupKeys();
+					for (Entry<String, KeyHolder> entry : manager.getLoadedKeypairs().entrySet()) {
+						PubkeyBean bean = entry.getValue().bean;
+						KeyPair pair = entry.getValue().pair;
+						// skip keys that expired since the copy was made
+						if (bean == null || pair == null)
+							continue;
+
+						if (bean.isConfirmUse()
 								&& !promptForPubkeyUse(entry.getKey()))
 							continue;
 
-						if (this.tryPublicKey(host.getUsername(), entry.getKey(),
-								entry.getValue().pair)) {
+						if (this.tryPublicKey(host.getUsername(), entry.getKey(), pair)) {
 							finishConnection();
 							break;
 						}
@@ -299,8 +317,10 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	 * @throws IOException
 	 */
 	private boolean tryPublicKey(PubkeyBean pubkey) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+		long start = SystemClock.uptimeMillis();
 		KeyPair pair = null;
 
+		manager.awaitStartupKey(pubkey.getNickname());
 		if (manager.isKeyLoaded(pubkey.getNickname())) {
 			// load this key from memory if its already there
 			Log.d(TAG, String.format("Found unlocked key '%s' already in-memory", pubkey.getNickname()));
@@ -311,6 +331,8 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 			}
 
 			pair = manager.getKey(pubkey.getNickname());
+		} else if ((pair = manager.decodedKeys.get(pubkey)) != null) {
+			Log.d(TAG, String.format("Found decoded key '%s' in cache", pubkey.getNickname()));
 		} else {
 			// otherwise load key from database and prompt for password as needed
 			String password = null;
@@ -344,15 +366,28 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 				// convert key to trilead format
 				pair = new KeyPair(pubKey, privKey);
 				Log.d(TAG, "Unlocked key " + PubkeyUtils.formatKey(pubKey));
+
+				try {
+					if (pubkey.upgradeEncryption(privKey, password)) {
+						Log.d(TAG, String.format("Upgraded encryption of key '%s'", pubkey.getNickname()));
+						PubkeyDatabase.get(manager).savePubkey(pubkey);
+					}
+				} catch (Exception e) {
+					Log.e(TAG, "Could not upgrade encryption of key " + pubkey.getNickname(), e);
+				}
 			}
 
 			Log.d(TAG, String.format("Unlocked key '%s'", pubkey.getNickname()));
 
 			// save this key in memory
 			manager.addKey(pubkey, pair);
+			manager.decodedKeys.put(pubkey, pair);
 		}
 
-		return tryPublicKey(host.getUsername(), pubkey.getNickname(), pair);
+		boolean success = tryPublicKey(host.getUsername(), pubkey.getNickname(), pair);
+		Log.d(TAG, String.format("Public key authentication with '%s' took %d ms",
+				pubkey.getNickname(), SystemClock.uptimeMillis() - start));
+		return success;
 	}
 
 	private boolean tryPublicKey(String username, String keyNickname, KeyPair pair) throws IOException {
@@ -370,6 +405,9 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	private void finishConnection() {
 		authenticated = true;
 
+		if (sharedConnection == null && manager.isConnectionSharingEnabled())
+			sharedConnection = SharedConnection.share(getSharingKey(), connection);
+
 		for (PortForwardBean portForward : portForwards) {
 			try {
 				enablePortForward(portForward);
@@ -395,8 +433,7 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 			session.startShell();
 
 			stdin = session.getStdin();
-			stdout = session.getStdout();
-			stderr = session.getStderr();
+			reader = new ChannelReader(session.getStdout(), session.getStderr());
 
 			sessionOpen = true;
 
@@ -407,8 +444,25 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 
 	}
 
+	private String getSharingKey() {
+		return SharedConnection.getKey(host.getUsername(), host.getHostname(), host.getPort());
+	}
+
 	@Override
 	public void connect() {
+		if (manager.isConnectionSharingEnabled()) {
+			// open another session on an existing connection if there is one
+			sharedConnection = SharedConnection.acquire(getSharingKey(), this);
+			if (sharedConnection != null) {
+				connection = sharedConnection.getConnection();
+				connected = true;
+
+				bridge.outputLine(manager.res.getString(R.string.terminal_sharing_connection));
+				finishConnection();
+				return;
+			}
+		}
+
 		connection = new Connection(host.getHostname(), host.getPort());
 		connection.addConnectionMonitor(this);
 
@@ -491,7 +545,19 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 			session = null;
 		}
 
-		if (connection != null) {
+		if (sharedConnection != null) {
+			// other sessions may still be using the connection, so only take
+			// down what belongs to us
+			for (PortForwardBean portForward : portForwards) {
+				if (portForward.isEnabled())
+					disablePortForward(portForward);
+			}
+
+			releasedConnection = true;
+			sharedConnection.release(this);
+			sharedConnection = null;
+			connection = null;
+		} else if (connection != null) {
 			connection.close();
 			connection = null;
 		}
@@ -509,23 +575,11 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 
 	@Override
 	public int read(byte[] buffer, int start, int len) throws IOException {
-		int bytesRead = 0;
-
 		if (session == null)
 			return 0;
 
 		int newConditions = session.waitForCondition(conditions, 0);
-
-		if ((newConditions & ChannelCondition.STDOUT_DATA) != 0) {
-			bytesRead = stdout.read(buffer, start, len);
-		}
-
-		if ((newConditions & ChannelCondition.STDERR_DATA) != 0) {
-			byte discard[] = new byte[256];
-			while (stderr.available() > 0) {
-				stderr.read(discard);
-			}
-		}
+		int bytesRead = reader.read(newConditions, buffer, start, len);
 
 		if ((newConditions & ChannelCondition.EOF) != 0) {
 			close();
@@ -536,6 +590,15 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 		return bytesRead;
 	}
 
+	/**
+	 * @return how many times the relay thread woke up to read per megabyte
+	 *         received, or 0 if nothing has been received yet
+	 */
+	public double getReadWakeupsPerMegabyte() {
+		ChannelReader reader = this.reader;
+		return reader == null ? 0 : reader.getWakeupsPerMegabyte();
+	}
+
 	@Override
 	public void write(byte[] buffer) throws IOException {
 		if (stdin != null)
@@ -577,7 +640,72 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 		return connected;
 	}
 
+	@Override
+	public boolean canMeasureRoundTrip() {
+		return true;
+	}
+
+	/**
+	 * Sends the keepalive probes of every session. A probe blocks until the
+	 * server answers, so a stalled host keeps its thread while the others
+	 * reuse idle ones; each transport has at most one probe here at a time.
+	 */
+	private static final ExecutorService probes = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Probe");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * Times a global request that the server must answer, the same kind of
+	 * request OpenSSH uses for its keepalives. Only one is sent at a time: on
+	 * a stalled connection an unanswered probe stays blocked, so until it
+	 * returns later probes count as lost without sending another.
+	 */
+	@Override
+	public long measureRoundTrip(long timeoutMillis) {
+		if (!connected)
+			return -1;
+
+		if (!pingInFlight.compareAndSet(false, true)) {
+			Log.d(TAG, "Previous keepalive probe is still unanswered");
+			return -1;
+		}
+
+		final Connection probed = connection;
+		final long start = SystemClock.elapsedRealtime();
+		Future<Long> answer = probes.submit(new Callable<Long>() {
+			public Long call() throws IOException {
+				try {
+					probed.ping();
+					return SystemClock.elapsedRealtime() - start;
+				} finally {
+					pingInFlight.set(false);
+				}
+			}
+		});
+
+		try {
+			return answer.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// the probe carries on until the server answers or the connection drops
+			return -1;
+		} catch (ExecutionException e) {
+			Log.d(TAG, "Keepalive probe failed", e.getCause());
+			return -1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
 	public void connectionLost(Throwable reason) {
+		// we stay registered on a shared connection after we let go of it
+		if (releasedConnection)
+			return;
+
 		onDisconnect();
 	}
 
@@ -868,9 +996,16 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	}
 
 	public Map<String, byte[]> retrieveIdentities() {
-		Map<String, byte[]> pubKeys = new HashMap<String, byte[]>(manager.loadedKeypairs.size());
+		// the list only changes when keys are loaded or unloaded
+		manager.awaitStartupKeys();
+		int keySetVersion = manager.getKeySetVersion();
+		if (cachedIdentities != null && cachedIdentitiesVersion == keySetVersion)
+			return cachedIdentities;
+
+		Map<String, KeyHolder> loadedKeypairs = manager.getLoadedKeypairs();
+		Map<String, byte[]> pubKeys = new HashMap<String, byte[]>(loadedKeypairs.size());
 
-		for (Entry<String, KeyHolder> entry : manager.loadedKeypairs.entrySet()) {
+		for (Entry<String, KeyHolder> entry : loadedKeypairs.entrySet()) {
 			KeyPair pair = entry.getValue().pair;
 
 			try {
@@ -888,20 +1023,24 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 			}
 		}
 
-		return pubKeys;
+		cachedIdentities = Collections.unmodifiableMap(pubKeys);
+		cachedIdentitiesVersion = keySetVersion;
+		return cachedIdentities;
 	}
 
 	public KeyPair getKeyPair(byte[] publicKey) {
 		String nickname = manager.getKeyNickname(publicKey);
 
-		if (nickname == null)
+		KeyHolder keyHolder = nickname == null ? null : manager.getLoadedKeypair(nickname);
+		PubkeyBean bean = keyHolder == null ? null : keyHolder.bean;
+		if (bean == null)
 			return null;
 
 		if (useAuthAgent.equals(HostDatabase.AUTHAGENT_NO)) {
 			Log.e(TAG, "");
 			return null;
 		} else if (useAuthAgent.equals(HostDatabase.AUTHAGENT_CONFIRM) ||
-				manager.loadedKeypairs.get(nickname).bean.isConfirmUse()) {
+				bean.isConfirmUse()) {
 			if (!promptForPubkeyUse(nickname))
 				return null;
 		}
@@ -926,7 +1065,7 @@ public class SSH extends AbsTransport implements ConnectionMonitor, InteractiveC
 	}
 
 	public boolean removeAllIdentities() {
-		manager.loadedKeypairs.clear();
+		manager.removeAllKeys();
 		return true;
 	}
 
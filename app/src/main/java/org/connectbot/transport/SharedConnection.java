@@ -0,0 +1,135 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.ConnectionMonitor;
+
+/**
+ * An authenticated SSH {@link Connection} that several {@link SSH} transports
+ * to the same user, host and port open their sessions on, much like an
+ * OpenSSH ControlMaster. The connection is closed once the last transport
+ * using it releases it.
+ */
+/* package */ class SharedConnection implements ConnectionMonitor {
+	private static final String TAG = "CB.SharedConnection";
+
+	private static final Map<String, SharedConnection> connections = new HashMap<String, SharedConnection>();
+
+	private final String key;
+	private final Connection connection;
+
+	/**
+	 * Transports that joined after the connection was made. The transport that
+	 * made it is already a monitor on the connection itself.
+	 */
+	private final List<ConnectionMonitor> joined = new LinkedList<ConnectionMonitor>();
+	private int refCount = 1;
+	private boolean closed = false;
+
+	private SharedConnection(String key, Connection connection) {
+		this.key = key;
+		this.connection = connection;
+	}
+
+	public static String getKey(String username, String hostname, int port) {
+		return String.format(Locale.US, "%s@%s:%d", username, hostname, port);
+	}
+
+	/**
+	 * Offer a newly authenticated connection for other transports to use. The
+	 * caller holds the first reference to it.
+	 */
+	public static SharedConnection share(String key, Connection connection) {
+		SharedConnection shared = new SharedConnection(key, connection);
+
+		synchronized (connections) {
+			if (!connections.containsKey(key))
+				connections.put(key, shared);
+		}
+
+		connection.addConnectionMonitor(shared);
+		return shared;
+	}
+
+	/**
+	 * Take a reference to an open connection for the given key.
+	 *
+	 * @param monitor told if the connection is lost while it holds a reference
+	 * @return the connection, or {@code null} if none is open
+	 */
+	public static SharedConnection acquire(String key, ConnectionMonitor monitor) {
+		synchronized (connections) {
+			SharedConnection shared = connections.get(key);
+			if (shared == null || shared.closed)
+				return null;
+
+			shared.refCount++;
+			shared.joined.add(monitor);
+			Log.d(TAG, String.format("Sharing connection %s with %d sessions", key, shared.refCount));
+			return shared;
+		}
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Drop a reference taken by {@link #share} or {@link #acquire}, closing the
+	 * connection if it was the last one.
+	 */
+	public void release(ConnectionMonitor monitor) {
+		synchronized (connections) {
+			joined.remove(monitor);
+			if (--refCount > 0)
+				return;
+
+			forget();
+		}
+
+		Log.d(TAG, String.format("Closing shared connection %s", key));
+		connection.close();
+	}
+
+	public void connectionLost(Throwable reason) {
+		List<ConnectionMonitor> monitors;
+		synchronized (connections) {
+			forget();
+			monitors = new ArrayList<ConnectionMonitor>(joined);
+		}
+
+		for (ConnectionMonitor monitor : monitors)
+			monitor.connectionLost(reason);
+	}
+
+	private void forget() {
+		closed = true;
+		if (connections.get(key) == this)
+			connections.remove(key);
+	}
+}
@@ -39,6 +39,7 @@ import org.connectbot.util.HostDatabase;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 import de.mud.telnet.TelnetProtocolHandler;
 
@@ -65,6 +66,11 @@ public class Telnet extends AbsTransport {
 
 	private boolean connected = false;
 
+	/** Timing marks requested and answered so far, guarded by {@code timingMarkLock}. */
+	private final Object timingMarkLock = new Object();
+	private long timingMarksSent = 0;
+	private long timingMarksAnswered = 0;
+
 	static final Pattern hostmask;
 	static {
 		hostmask = Pattern.compile("^([0-9a-z.-]+)(:(\\d+))?$", Pattern.CASE_INSENSITIVE);
@@ -102,6 +108,14 @@ public class Telnet extends AbsTransport {
 			public void notifyEndOfRecord() {
 			}
 
+			@Override
+			protected void notifyTimingMark() {
+				synchronized (timingMarkLock) {
+					timingMarksAnswered++;
+					timingMarkLock.notifyAll();
+				}
+			}
+
 			@Override
 			protected String getCharsetName() {
 				Charset charset = bridge.getCharset();
@@ -190,6 +204,49 @@ public class Telnet extends AbsTransport {
 		return connected;
 	}
 
+	@Override
+	public boolean canMeasureRoundTrip() {
+		return true;
+	}
+
+	/**
+	 * Times a telnet timing mark. Answers arrive in the order the requests
+	 * were sent, so an answer that comes in after an earlier request timed
+	 * out is not mistaken for the answer to this one.
+	 */
+	@Override
+	public long measureRoundTrip(long timeoutMillis) {
+		if (!connected)
+			return -1;
+
+		synchronized (timingMarkLock) {
+			long start = SystemClock.elapsedRealtime();
+			long deadline = start + timeoutMillis;
+			long expected = ++timingMarksSent;
+			try {
+				handler.sendTimingMark();
+			} catch (IOException e) {
+				Log.d(TAG, "Couldn't send timing mark", e);
+				timingMarksSent--;
+				return -1;
+			}
+
+			long now = start;
+			while (timingMarksAnswered < expected) {
+				if (now >= deadline)
+					return -1;
+				try {
+					timingMarkLock.wait(deadline - now);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+				now = SystemClock.elapsedRealtime();
+			}
+			return now - start;
+		}
+	}
+
 	@Override
 	public int read(byte[] buffer, int start, int len) throws IOException {
 		/* process all already read bytes */
@@ -0,0 +1,144 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+/**
+ * Collects terminal output to be read out by a screen reader. Escape
+ * sequences and control characters are filtered out in a single pass as text
+ * arrives, and backspaces are applied to what has been collected so far.
+ * <p>
+ * The text is kept in a fixed-size ring, so when output arrives faster than
+ * it is drained only the most recent characters are kept.
+ */
+public class AccessibilityTextBuffer {
+	private static final char BACKSPACE = 0x08;
+	private static final char BELL = 0x07;
+	private static final char ESCAPE = 0x1b;
+
+	private static final int STATE_TEXT = 0;
+	private static final int STATE_ESCAPE = 1;
+	private static final int STATE_CSI = 2;
+	private static final int STATE_OSC = 3;
+	private static final int STATE_OSC_ESCAPE = 4;
+
+	private final char[] ring;
+	private int start = 0;
+	private int count = 0;
+	private long dropped = 0;
+
+	private int state = STATE_TEXT;
+
+	public AccessibilityTextBuffer(int capacity) {
+		ring = new char[capacity];
+	}
+
+	/**
+	 * Filter the given terminal output and add what is left to the buffer.
+	 */
+	public synchronized void append(char[] text, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			char c = text[i];
+
+			switch (state) {
+			case STATE_TEXT:
+				if (c == ESCAPE)
+					state = STATE_ESCAPE;
+				else if (c == BACKSPACE)
+					removeLast();
+				else if (c == '\n' || c == '\t' || (c >= ' ' && c != 0x7f))
+					add(c);
+				break;
+			case STATE_ESCAPE:
+				if (c == '[')
+					state = STATE_CSI;
+				else if (c == ']')
+					state = STATE_OSC;
+				else
+					state = STATE_TEXT;
+				break;
+			case STATE_CSI:
+				// parameters and intermediates run until a final byte
+				if (c >= 0x40 && c <= 0x7e) {
+					state = STATE_TEXT;
+					// cursor movement separates words; colours and erasing do not
+					if (c != 'm' && c != 'K')
+						addSeparator();
+				} else if (c < 0x20 || c > 0x3f) {
+					state = STATE_TEXT;
+				}
+				break;
+			case STATE_OSC:
+				// window titles and the like end with BEL or ESC \
+				if (c == BELL)
+					state = STATE_TEXT;
+				else if (c == ESCAPE)
+					state = STATE_OSC_ESCAPE;
+				break;
+			case STATE_OSC_ESCAPE:
+				state = (c == '\\') ? STATE_TEXT : STATE_OSC;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return everything collected since the last drain, oldest first
+	 */
+	public synchronized String drain() {
+		int firstPart = Math.min(count, ring.length - start);
+		StringBuilder sb = new StringBuilder(count);
+		sb.append(ring, start, firstPart);
+		sb.append(ring, 0, count - firstPart);
+
+		start = 0;
+		count = 0;
+		return sb.toString();
+	}
+
+	public synchronized int length() {
+		return count;
+	}
+
+	/**
+	 * @return the number of characters that were pushed out of the buffer
+	 *         before they could be drained
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	private void add(char c) {
+		if (count == ring.length) {
+			start = (start + 1) % ring.length;
+			count--;
+			dropped++;
+		}
+		ring[(start + count) % ring.length] = c;
+		count++;
+	}
+
+	private void addSeparator() {
+		if (count > 0 && !Character.isWhitespace(ring[(start + count - 1) % ring.length]))
+			add(' ');
+	}
+
+	private void removeLast() {
+		if (count > 0)
+			count--;
+	}
+}
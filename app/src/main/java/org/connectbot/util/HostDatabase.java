@@ -17,12 +17,19 @@
 
 package org.connectbot.util;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.connectbot.bean.HostBean;
 import org.connectbot.bean.PortForwardBean;
@@ -34,6 +41,8 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
@@ -50,7 +59,7 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	public final static String TAG = "CB.HostDatabase";
 
 	public final static String DB_NAME = "hosts";
-	public final static int DB_VERSION = 24;
+	public final static int DB_VERSION = 26;
 
 	public final static String TABLE_HOSTS = "hosts";
 	public final static String FIELD_HOST_NICKNAME = "nickname";
@@ -58,8 +67,6 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	public final static String FIELD_HOST_USERNAME = "username";
 	public final static String FIELD_HOST_HOSTNAME = "hostname";
 	public final static String FIELD_HOST_PORT = "port";
-	public final static String FIELD_HOST_HOSTKEYALGO = "hostkeyalgo";
-	public final static String FIELD_HOST_HOSTKEY = "hostkey";
 	public final static String FIELD_HOST_LASTCONNECT = "lastconnect";
 	public final static String FIELD_HOST_COLOR = "color";
 	public final static String FIELD_HOST_USEKEYS = "usekeys";
@@ -74,6 +81,16 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	public final static String FIELD_HOST_STAYCONNECTED = "stayconnected";
 	public final static String FIELD_HOST_QUICKDISCONNECT = "quickdisconnect";
 
+	/* Host keys were kept with each host until DB version 25. */
+	private final static String FIELD_HOST_HOSTKEYALGO = "hostkeyalgo";
+	private final static String FIELD_HOST_HOSTKEY = "hostkey";
+
+	public final static String TABLE_KNOWNHOSTS = "knownhosts";
+	public final static String FIELD_KNOWNHOST_HOSTNAME = "hostname";
+	public final static String FIELD_KNOWNHOST_PORT = "port";
+	public final static String FIELD_KNOWNHOST_HOSTKEYALGO = "hostkeyalgo";
+	public final static String FIELD_KNOWNHOST_HOSTKEY = "hostkey";
+
 	public final static String TABLE_PORTFORWARDS = "portforwards";
 	public final static String FIELD_PORTFORWARD_HOSTID = "hostid";
 	public final static String FIELD_PORTFORWARD_NICKNAME = "nickname";
@@ -128,11 +145,67 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 		"CREATE INDEX " + TABLE_COLOR_DEFAULTS + FIELD_COLOR_SCHEME + "index ON "
 		+ TABLE_COLOR_DEFAULTS + " (" + FIELD_COLOR_SCHEME + ");";
 
+	public static final String CREATE_TABLE_HOSTS =
+		"CREATE TABLE " + TABLE_HOSTS
+		+ " (_id INTEGER PRIMARY KEY, "
+		+ FIELD_HOST_NICKNAME + " TEXT, "
+		+ FIELD_HOST_PROTOCOL + " TEXT DEFAULT 'ssh', "
+		+ FIELD_HOST_USERNAME + " TEXT, "
+		+ FIELD_HOST_HOSTNAME + " TEXT, "
+		+ FIELD_HOST_PORT + " INTEGER, "
+		+ FIELD_HOST_LASTCONNECT + " INTEGER, "
+		+ FIELD_HOST_COLOR + " TEXT, "
+		+ FIELD_HOST_USEKEYS + " TEXT, "
+		+ FIELD_HOST_USEAUTHAGENT + " TEXT, "
+		+ FIELD_HOST_POSTLOGIN + " TEXT, "
+		+ FIELD_HOST_PUBKEYID + " INTEGER DEFAULT " + PUBKEYID_ANY + ", "
+		+ FIELD_HOST_DELKEY + " TEXT DEFAULT '" + DELKEY_DEL + "', "
+		+ FIELD_HOST_FONTSIZE + " INTEGER, "
+		+ FIELD_HOST_WANTSESSION + " TEXT DEFAULT '" + Boolean.toString(true) + "', "
+		+ FIELD_HOST_COMPRESSION + " TEXT DEFAULT '" + Boolean.toString(false) + "', "
+		+ FIELD_HOST_ENCODING + " TEXT DEFAULT '" + ENCODING_DEFAULT + "', "
+		+ FIELD_HOST_STAYCONNECTED + " TEXT DEFAULT '" + Boolean.toString(false) + "', "
+		+ FIELD_HOST_QUICKDISCONNECT + " TEXT DEFAULT '" + Boolean.toString(false) + "')";
+
+	private static final String HOST_COLUMNS = "_id, "
+		+ FIELD_HOST_NICKNAME + ", " + FIELD_HOST_PROTOCOL + ", " + FIELD_HOST_USERNAME + ", "
+		+ FIELD_HOST_HOSTNAME + ", " + FIELD_HOST_PORT + ", " + FIELD_HOST_LASTCONNECT + ", "
+		+ FIELD_HOST_COLOR + ", " + FIELD_HOST_USEKEYS + ", " + FIELD_HOST_USEAUTHAGENT + ", "
+		+ FIELD_HOST_POSTLOGIN + ", " + FIELD_HOST_PUBKEYID + ", " + FIELD_HOST_DELKEY + ", "
+		+ FIELD_HOST_FONTSIZE + ", " + FIELD_HOST_WANTSESSION + ", " + FIELD_HOST_COMPRESSION + ", "
+		+ FIELD_HOST_ENCODING + ", " + FIELD_HOST_STAYCONNECTED + ", " + FIELD_HOST_QUICKDISCONNECT;
+
+	public static final String CREATE_TABLE_KNOWNHOSTS =
+		"CREATE TABLE " + TABLE_KNOWNHOSTS
+		+ " (_id INTEGER PRIMARY KEY, "
+		+ FIELD_KNOWNHOST_HOSTNAME + " TEXT NOT NULL, "
+		+ FIELD_KNOWNHOST_PORT + " INTEGER NOT NULL, "
+		+ FIELD_KNOWNHOST_HOSTKEYALGO + " TEXT NOT NULL, "
+		+ FIELD_KNOWNHOST_HOSTKEY + " BLOB NOT NULL)";
+
+	private static final String INSERT_HOST = "INSERT INTO " + TABLE_HOSTS + " ("
+		+ FIELD_HOST_NICKNAME + ", " + FIELD_HOST_PROTOCOL + ", " + FIELD_HOST_USERNAME + ", "
+		+ FIELD_HOST_HOSTNAME + ", " + FIELD_HOST_PORT + ", " + FIELD_HOST_LASTCONNECT + ", "
+		+ FIELD_HOST_COLOR + ", " + FIELD_HOST_USEKEYS + ", " + FIELD_HOST_USEAUTHAGENT + ", "
+		+ FIELD_HOST_POSTLOGIN + ", " + FIELD_HOST_PUBKEYID + ", " + FIELD_HOST_WANTSESSION + ", "
+		+ FIELD_HOST_DELKEY + ", " + FIELD_HOST_FONTSIZE + ", " + FIELD_HOST_COMPRESSION + ", "
+		+ FIELD_HOST_ENCODING + ", " + FIELD_HOST_STAYCONNECTED + ", " + FIELD_HOST_QUICKDISCONNECT
+		+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_PORTFORWARD = "INSERT INTO " + TABLE_PORTFORWARDS + " ("
+		+ FIELD_PORTFORWARD_HOSTID + ", " + FIELD_PORTFORWARD_NICKNAME + ", " + FIELD_PORTFORWARD_TYPE + ", "
+		+ FIELD_PORTFORWARD_SOURCEPORT + ", " + FIELD_PORTFORWARD_DESTADDR + ", " + FIELD_PORTFORWARD_DESTPORT
+		+ ") VALUES (?, ?, ?, ?, ?, ?)";
+
+	/** Hosts added in each transaction by {@link #importHosts}. */
+	public static final int IMPORT_BATCH_SIZE = 500;
+
 	private static final String WHERE_SCHEME_AND_COLOR = FIELD_COLOR_SCHEME + " = ? AND "
 			+ FIELD_COLOR_NUMBER + " = ?";
 
 	static {
 		addTableName(TABLE_HOSTS);
+		addTableName(TABLE_KNOWNHOSTS);
 		addTableName(TABLE_PORTFORWARDS);
 		addIndexName(TABLE_PORTFORWARDS + FIELD_PORTFORWARD_HOSTID + "index");
 		addTableName(TABLE_COLORS);
@@ -150,6 +223,23 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 
 	private final SQLiteDatabase mDb;
 
+	/**
+	 * Loaded on first use and then kept in step with {@link #TABLE_KNOWNHOSTS}.
+	 * Anything that holds {@link #mKnownHostsLock} during a transaction takes
+	 * it before beginning the transaction, never inside one.
+	 */
+	private KnownHostsCache mKnownHosts;
+	private final Object mKnownHostsLock = new Object();
+
+	/**
+	 * Colour schemes and their default colours as last read from
+	 * {@link #TABLE_COLORS} and {@link #TABLE_COLOR_DEFAULTS}, keyed by scheme.
+	 * Callers are always handed copies.
+	 */
+	private final Map<Integer, int[]> mColorSchemes = new HashMap<>();
+	private final Map<Integer, int[]> mDefaultColors = new HashMap<>();
+	private final Object mColorsLock = new Object();
+
 	public static HostDatabase get(Context context) {
 		synchronized (sInstanceLock) {
 			if (sInstance != null) {
@@ -180,28 +270,9 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	}
 
 	private void createTables(SQLiteDatabase db) {
-		db.execSQL("CREATE TABLE " + TABLE_HOSTS
-				+ " (_id INTEGER PRIMARY KEY, "
-				+ FIELD_HOST_NICKNAME + " TEXT, "
-				+ FIELD_HOST_PROTOCOL + " TEXT DEFAULT 'ssh', "
-				+ FIELD_HOST_USERNAME + " TEXT, "
-				+ FIELD_HOST_HOSTNAME + " TEXT, "
-				+ FIELD_HOST_PORT + " INTEGER, "
-				+ FIELD_HOST_HOSTKEYALGO + " TEXT, "
-				+ FIELD_HOST_HOSTKEY + " BLOB, "
-				+ FIELD_HOST_LASTCONNECT + " INTEGER, "
-				+ FIELD_HOST_COLOR + " TEXT, "
-				+ FIELD_HOST_USEKEYS + " TEXT, "
-				+ FIELD_HOST_USEAUTHAGENT + " TEXT, "
-				+ FIELD_HOST_POSTLOGIN + " TEXT, "
-				+ FIELD_HOST_PUBKEYID + " INTEGER DEFAULT " + PUBKEYID_ANY + ", "
-				+ FIELD_HOST_DELKEY + " TEXT DEFAULT '" + DELKEY_DEL + "', "
-				+ FIELD_HOST_FONTSIZE + " INTEGER, "
-				+ FIELD_HOST_WANTSESSION + " TEXT DEFAULT '" + Boolean.toString(true) + "', "
-				+ FIELD_HOST_COMPRESSION + " TEXT DEFAULT '" + Boolean.toString(false) + "', "
-				+ FIELD_HOST_ENCODING + " TEXT DEFAULT '" + ENCODING_DEFAULT + "', "
-				+ FIELD_HOST_STAYCONNECTED + " TEXT DEFAULT '" + Boolean.toString(false) + "', "
-				+ FIELD_HOST_QUICKDISCONNECT + " TEXT DEFAULT '" + Boolean.toString(false) + "')");
+		db.execSQL(CREATE_TABLE_HOSTS);
+
+		db.execSQL(CREATE_TABLE_KNOWNHOSTS);
 
 		db.execSQL("CREATE TABLE " + TABLE_PORTFORWARDS
 				+ " (_id INTEGER PRIMARY KEY, "
@@ -234,6 +305,7 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 			mDb.beginTransaction();
 
 			mDb.execSQL("DROP TABLE IF EXISTS " + TABLE_HOSTS);
+			mDb.execSQL("DROP TABLE IF EXISTS " + TABLE_KNOWNHOSTS);
 			mDb.execSQL("DROP TABLE IF EXISTS " + TABLE_PORTFORWARDS);
 			mDb.execSQL("DROP TABLE IF EXISTS " + TABLE_COLORS);
 			mDb.execSQL("DROP TABLE IF EXISTS " + TABLE_COLOR_DEFAULTS);
@@ -244,6 +316,15 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 		} finally {
 			mDb.endTransaction();
 		}
+
+		synchronized (mKnownHostsLock) {
+			mKnownHosts = null;
+		}
+
+		synchronized (mColorsLock) {
+			mColorSchemes.clear();
+			mDefaultColors.clear();
+		}
 	}
 
 	@VisibleForTesting
@@ -320,6 +401,49 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 		case 23:
 			db.execSQL("UPDATE " + TABLE_HOSTS
 					+ " SET " + FIELD_HOST_FONTSIZE + " = " + FIELD_HOST_FONTSIZE + " / " + displayDensity);
+		case 24:
+			db.execSQL(CREATE_TABLE_KNOWNHOSTS);
+			db.execSQL("INSERT INTO " + TABLE_KNOWNHOSTS + " ("
+					+ FIELD_KNOWNHOST_HOSTNAME + ", " + FIELD_KNOWNHOST_PORT + ", "
+					+ FIELD_KNOWNHOST_HOSTKEYALGO + ", " + FIELD_KNOWNHOST_HOSTKEY + ")"
+					+ " SELECT DISTINCT " + FIELD_HOST_HOSTNAME + ", " + FIELD_HOST_PORT + ", "
+					+ FIELD_HOST_HOSTKEYALGO + ", " + FIELD_HOST_HOSTKEY + " FROM " + TABLE_HOSTS
+					+ " WHERE " + FIELD_HOST_HOSTNAME + " IS NOT NULL"
+					+ " AND " + FIELD_HOST_PORT + " IS NOT NULL"
+					+ " AND " + FIELD_HOST_HOSTKEYALGO + " IS NOT NULL"
+					+ " AND " + FIELD_HOST_HOSTKEYALGO + " != ''"
+					+ " AND " + FIELD_HOST_HOSTKEY + " IS NOT NULL");
+		case 25:
+			// SQLite can't drop the old host key columns, so copy the table.
+			db.execSQL("ALTER TABLE " + TABLE_HOSTS + " RENAME TO " + TABLE_HOSTS + "_old");
+			db.execSQL(CREATE_TABLE_HOSTS);
+			db.execSQL("INSERT INTO " + TABLE_HOSTS + " (" + HOST_COLUMNS + ")"
+					+ " SELECT " + HOST_COLUMNS + " FROM " + TABLE_HOSTS + "_old");
+			db.execSQL("DROP TABLE " + TABLE_HOSTS + "_old");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The known hosts lock is taken before the transaction starts, the same
+	 * order as {@link #saveKnownHost} and the other known host updates, so
+	 * {@code writes} may save host keys without deadlocking against them.
+	 */
+	@Override
+	public void runInTransaction(Runnable writes) {
+		synchronized (mKnownHostsLock) {
+			mDb.beginTransaction();
+			try {
+				writes.run();
+				mDb.setTransactionSuccessful();
+			} catch (RuntimeException e) {
+				// the known hosts cache may hold entries that are rolled back
+				mKnownHosts = null;
+				throw e;
+			} finally {
+				mDb.endTransaction();
+			}
 		}
 	}
 
@@ -342,6 +466,112 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 		}
 	}
 
+	/**
+	 * Add the hosts read by {@code importer}, committing every
+	 * {@link #IMPORT_BATCH_SIZE} hosts so a large import neither holds one huge
+	 * transaction nor pays for one per host. Hosts with a nickname that is
+	 * already stored are skipped. If reading fails part way, the batches
+	 * committed before stay in place.
+	 */
+	@Override
+	public HostImporter.Result importHosts(HostImporter importer) throws IOException {
+		HostImporter.Result result = new HostImporter.Result();
+		long start = SystemClock.elapsedRealtime();
+
+		// the nickname column has no index, so look them up in memory
+		Set<String> nicknames = new HashSet<>();
+		Cursor c = mDb.query(TABLE_HOSTS, new String[] { FIELD_HOST_NICKNAME }, null, null, null, null, null);
+		try {
+			while (c.moveToNext())
+				nicknames.add(c.getString(0));
+		} finally {
+			c.close();
+		}
+
+		SQLiteStatement insertHost = mDb.compileStatement(INSERT_HOST);
+		SQLiteStatement insertPortForward = mDb.compileStatement(INSERT_PORTFORWARD);
+		try {
+			HostImporter.Entry entry = importer.next();
+			while (entry != null) {
+				mDb.beginTransaction();
+				try {
+					for (int i = 0; entry != null && i < IMPORT_BATCH_SIZE; i++) {
+						if (!nicknames.add(entry.host.getNickname())) {
+							result.skipped++;
+						} else {
+							bindHost(insertHost, entry.host);
+							long hostId = insertHost.executeInsert();
+							result.hosts++;
+
+							for (PortForwardBean pfb : entry.portForwards) {
+								bindPortForward(insertPortForward, hostId, pfb);
+								insertPortForward.executeInsert();
+								result.portForwards++;
+							}
+						}
+
+						entry = importer.next();
+					}
+					mDb.setTransactionSuccessful();
+				} finally {
+					mDb.endTransaction();
+				}
+			}
+		} finally {
+			insertHost.close();
+			insertPortForward.close();
+		}
+
+		result.skipped += importer.getSkipped();
+		result.elapsedMillis = SystemClock.elapsedRealtime() - start;
+
+		Log.d(TAG, String.format(Locale.US, "Imported %d hosts and %d port forwards, skipped %d, at %d rows/s",
+				result.hosts, result.portForwards, result.skipped, result.getRowsPerSecond()));
+		return result;
+	}
+
+	/**
+	 * Bind the same columns as {@link HostBean#getValues()} to {@link #INSERT_HOST}.
+	 */
+	private static void bindHost(SQLiteStatement statement, HostBean host) {
+		statement.clearBindings();
+		bindString(statement, 1, host.getNickname());
+		bindString(statement, 2, host.getProtocol());
+		bindString(statement, 3, host.getUsername());
+		bindString(statement, 4, host.getHostname());
+		statement.bindLong(5, host.getPort());
+		statement.bindLong(6, host.getLastConnect());
+		bindString(statement, 7, host.getColor());
+		bindString(statement, 8, Boolean.toString(host.getUseKeys()));
+		bindString(statement, 9, host.getUseAuthAgent());
+		bindString(statement, 10, host.getPostLogin());
+		statement.bindLong(11, host.getPubkeyId());
+		bindString(statement, 12, Boolean.toString(host.getWantSession()));
+		bindString(statement, 13, host.getDelKey());
+		statement.bindLong(14, host.getFontSize());
+		bindString(statement, 15, Boolean.toString(host.getCompression()));
+		bindString(statement, 16, host.getEncoding());
+		bindString(statement, 17, Boolean.toString(host.getStayConnected()));
+		bindString(statement, 18, Boolean.toString(host.getQuickDisconnect()));
+	}
+
+	private static void bindPortForward(SQLiteStatement statement, long hostId, PortForwardBean pfb) {
+		statement.clearBindings();
+		statement.bindLong(1, hostId);
+		bindString(statement, 2, pfb.getNickname());
+		bindString(statement, 3, pfb.getType());
+		statement.bindLong(4, pfb.getSourcePort());
+		bindString(statement, 5, pfb.getDestAddr());
+		statement.bindLong(6, pfb.getDestPort());
+	}
+
+	private static void bindString(SQLiteStatement statement, int index, String value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+
 	/**
 	 * Create a new or update an existing {@code host}.
 	 */
@@ -366,19 +596,56 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	}
 
 	/**
-	 * Delete a specific host by its <code>_id</code> value.
+	 * Delete a specific host by its <code>_id</code> value. Its known host
+	 * keys go with it unless another host connects to the same address, so
+	 * deleting and adding a host again accepts a server's new key.
 	 */
 	public void deleteHost(HostBean host) {
 		if (host.getId() < 0) {
 			return;
 		}
 
-		mDb.beginTransaction();
+		int numForgotten = 0;
+		synchronized (mKnownHostsLock) {
+			mDb.beginTransaction();
+			try {
+				mDb.delete(TABLE_HOSTS, "_id = ?", new String[] {String.valueOf(host.getId())});
+
+				if (host.getHostname() != null && !isHostAddressInUse(host.getHostname(), host.getPort())) {
+					KnownHostsCache knownHosts = getKnownHostsCache();
+					List<KnownHostsCache.Entry> entries =
+							knownHosts.findForHost(host.getHostname(), host.getPort());
+					for (KnownHostsCache.Entry entry : entries) {
+						mDb.delete(TABLE_KNOWNHOSTS, "_id = ?", new String[] {String.valueOf(entry.id)});
+					}
+					knownHosts.remove(entries);
+					numForgotten = entries.size();
+				}
+
+				mDb.setTransactionSuccessful();
+			} catch (RuntimeException e) {
+				mKnownHosts = null;
+				throw e;
+			} finally {
+				mDb.endTransaction();
+			}
+		}
+
+		if (numForgotten > 0)
+			Log.d(TAG, String.format("Forgot %d host keys for '%s'", numForgotten, host.getHostname()));
+	}
+
+	/**
+	 * @return whether any saved host connects to the given hostname and port
+	 */
+	private boolean isHostAddressInUse(String hostname, int port) {
+		Cursor c = mDb.query(TABLE_HOSTS, new String[] {"_id"},
+				FIELD_HOST_HOSTNAME + " = ? AND " + FIELD_HOST_PORT + " = ?",
+				new String[] {hostname, String.valueOf(port)}, null, null, null, "1");
 		try {
-			mDb.delete(TABLE_HOSTS, "_id = ?", new String[] {String.valueOf(host.getId())});
-			mDb.setTransactionSuccessful();
+			return c.moveToFirst();
 		} finally {
-			mDb.endTransaction();
+			c.close();
 		}
 	}
 
@@ -522,68 +789,143 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	}
 
 	/**
-	 * Record the given hostkey into database under this nickname.
+	 * Record the given hostkey, replacing any key of the same type that was
+	 * known for this host.
 	 * @param hostname hostname to match
 	 * @param port port to match
 	 * @param hostkeyalgo algorithm for host key
 	 * @param hostkey the bytes of the host key itself
 	 */
 	public void saveKnownHost(String hostname, int port, String hostkeyalgo, byte[] hostkey) {
-		ContentValues values = new ContentValues();
-		values.put(FIELD_HOST_HOSTKEYALGO, hostkeyalgo);
-		values.put(FIELD_HOST_HOSTKEY, hostkey);
+		int numReplaced;
+		synchronized (mKnownHostsLock) {
+			KnownHostsCache knownHosts = getKnownHostsCache();
 
-		int numUpdated;
-		mDb.beginTransaction();
-		try {
-			numUpdated = mDb.update(TABLE_HOSTS, values,
-					FIELD_HOST_HOSTNAME + " = ? AND " + FIELD_HOST_PORT + " = ?",
-					new String[]{hostname, String.valueOf(port)});
-			mDb.setTransactionSuccessful();
-		} finally {
-			mDb.endTransaction();
+			mDb.beginTransaction();
+			try {
+				numReplaced = replaceKnownHost(knownHosts,
+						new KnownHostsCache.Entry(-1, hostname, port, hostkeyalgo, hostkey));
+				mDb.setTransactionSuccessful();
+			} catch (RuntimeException e) {
+				mKnownHosts = null;
+				throw e;
+			} finally {
+				mDb.endTransaction();
+			}
+		}
+		Log.d(TAG, String.format("Finished saving hostkey information for '%s' (replaced %d entries)",
+				hostname, numReplaced));
+	}
+
+	/**
+	 * Check a server's host key against the known hosts.
+	 * @return one of {@link KnownHosts#HOSTKEY_IS_OK},
+	 *         {@link KnownHosts#HOSTKEY_IS_NEW} or
+	 *         {@link KnownHosts#HOSTKEY_HAS_CHANGED}
+	 */
+	public int verifyKnownHost(String hostname, int port, String hostkeyalgo, byte[] hostkey) {
+		KnownHostsCache knownHosts;
+		synchronized (mKnownHostsLock) {
+			knownHosts = getKnownHostsCache();
 		}
-		Log.d(TAG, String.format("Finished saving hostkey information for '%s' (affected %d entries)",
-				hostname, numUpdated));
+		return knownHosts.verify(hostname, port, hostkeyalgo, hostkey);
 	}
 
 	/**
-	 * Build list of known hosts for Trilead library.
-	 * @return
+	 * Add every host key in an OpenSSH {@code known_hosts} file. Nothing is
+	 * imported if reading the file fails part way.
+	 * @return the number of host keys imported
 	 */
-	public KnownHosts getKnownHosts() {
-		KnownHosts known = new KnownHosts();
+	public int importKnownHosts(Reader reader) throws IOException {
+		BufferedReader in = new BufferedReader(reader);
+		int imported = 0;
+
+		synchronized (mKnownHostsLock) {
+			KnownHostsCache knownHosts = getKnownHostsCache();
+			boolean success = false;
+
+			mDb.beginTransaction();
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					for (KnownHostsCache.Entry entry : KnownHostsCache.parseLine(line)) {
+						replaceKnownHost(knownHosts, entry);
+						imported++;
+					}
+				}
+				mDb.setTransactionSuccessful();
+				success = true;
+			} finally {
+				mDb.endTransaction();
+				// the cache has entries that were rolled back
+				if (!success)
+					mKnownHosts = null;
+			}
+		}
 
-		Cursor c = mDb.query(TABLE_HOSTS, new String[] {FIELD_HOST_HOSTNAME,
-						FIELD_HOST_PORT, FIELD_HOST_HOSTKEYALGO, FIELD_HOST_HOSTKEY},
+		Log.d(TAG, String.format("Imported %d known host keys", imported));
+		return imported;
+	}
+
+	/**
+	 * Store a host key in place of the ones it supersedes. Must be called in
+	 * a transaction while holding {@link #mKnownHostsLock}.
+	 * @return the number of keys replaced
+	 */
+	private int replaceKnownHost(KnownHostsCache knownHosts, KnownHostsCache.Entry entry) {
+		List<KnownHostsCache.Entry> superseded =
+				knownHosts.findSuperseded(entry.hostname, entry.port, entry.algorithm);
+		for (KnownHostsCache.Entry old : superseded) {
+			mDb.delete(TABLE_KNOWNHOSTS, "_id = ?", new String[] {String.valueOf(old.id)});
+		}
+		knownHosts.remove(superseded);
+
+		ContentValues values = new ContentValues();
+		values.put(FIELD_KNOWNHOST_HOSTNAME, entry.hostname);
+		values.put(FIELD_KNOWNHOST_PORT, entry.port);
+		values.put(FIELD_KNOWNHOST_HOSTKEYALGO, entry.algorithm);
+		values.put(FIELD_KNOWNHOST_HOSTKEY, entry.key);
+		long id = mDb.insert(TABLE_KNOWNHOSTS, null, values);
+
+		knownHosts.add(new KnownHostsCache.Entry(id, entry.hostname, entry.port,
+				entry.algorithm, entry.key));
+		return superseded.size();
+	}
+
+	/**
+	 * Must be called while holding {@link #mKnownHostsLock}.
+	 */
+	private KnownHostsCache getKnownHostsCache() {
+		if (mKnownHosts != null)
+			return mKnownHosts;
+
+		KnownHostsCache knownHosts = new KnownHostsCache();
+
+		Cursor c = mDb.query(TABLE_KNOWNHOSTS, new String[] {"_id", FIELD_KNOWNHOST_HOSTNAME,
+						FIELD_KNOWNHOST_PORT, FIELD_KNOWNHOST_HOSTKEYALGO, FIELD_KNOWNHOST_HOSTKEY},
 				null, null, null, null, null);
 
 		if (c != null) {
-			int COL_HOSTNAME = c.getColumnIndexOrThrow(FIELD_HOST_HOSTNAME),
-					COL_PORT = c.getColumnIndexOrThrow(FIELD_HOST_PORT),
-					COL_HOSTKEYALGO = c.getColumnIndexOrThrow(FIELD_HOST_HOSTKEYALGO),
-					COL_HOSTKEY = c.getColumnIndexOrThrow(FIELD_HOST_HOSTKEY);
+			int COL_ID = c.getColumnIndexOrThrow("_id"),
+					COL_HOSTNAME = c.getColumnIndexOrThrow(FIELD_KNOWNHOST_HOSTNAME),
+					COL_PORT = c.getColumnIndexOrThrow(FIELD_KNOWNHOST_PORT),
+					COL_HOSTKEYALGO = c.getColumnIndexOrThrow(FIELD_KNOWNHOST_HOSTKEYALGO),
+					COL_HOSTKEY = c.getColumnIndexOrThrow(FIELD_KNOWNHOST_HOSTKEY);
 
 			while (c.moveToNext()) {
-				String hostname = c.getString(COL_HOSTNAME);
-				String hostkeyalgo = c.getString(COL_HOSTKEYALGO);
-				int port = c.getInt(COL_PORT);
-				byte[] hostkey = c.getBlob(COL_HOSTKEY);
-
-				if (hostkeyalgo == null || hostkeyalgo.length() == 0) continue;
-				if (hostkey == null || hostkey.length == 0) continue;
-
-				try {
-					known.addHostkey(new String[] {String.format("%s:%d", hostname, port)}, hostkeyalgo, hostkey);
-				} catch (Exception e) {
-					Log.e(TAG, "Problem while adding a known host from database", e);
-				}
+				KnownHostsCache.Entry entry = new KnownHostsCache.Entry(c.getLong(COL_ID),
+						c.getString(COL_HOSTNAME), c.getInt(COL_PORT),
+						c.getString(COL_HOSTKEYALGO), c.getBlob(COL_HOSTKEY));
+				if (!knownHosts.add(entry))
+					Log.e(TAG, "Problem while adding a known host from database: " + entry.hostname);
 			}
 
 			c.close();
 		}
 
-		return known;
+		Log.d(TAG, String.format("Loaded %d known host keys", knownHosts.size()));
+		mKnownHosts = knownHosts;
+		return knownHosts;
 	}
 
 	/**
@@ -691,6 +1033,17 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	}
 
 	public int[] getColorsForScheme(int scheme) {
+		synchronized (mColorsLock) {
+			int[] colors = mColorSchemes.get(scheme);
+			if (colors == null) {
+				colors = readColorsForScheme(scheme);
+				mColorSchemes.put(scheme, colors);
+			}
+			return colors.clone();
+		}
+	}
+
+	private int[] readColorsForScheme(int scheme) {
 		int[] colors = Colors.defaults.clone();
 
 		Cursor c = mDb.query(TABLE_COLORS, new String[] {
@@ -713,33 +1066,39 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 
 		final String[] whereArgs = new String[] { String.valueOf(scheme), String.valueOf(number) };
 
-		if (value == Colors.defaults[number]) {
-			mDb.beginTransaction();
-			try {
-				mDb.delete(TABLE_COLORS,
-						WHERE_SCHEME_AND_COLOR, whereArgs);
-				mDb.setTransactionSuccessful();
-			} finally {
-				mDb.endTransaction();
-			}
-		} else {
-			final ContentValues values = new ContentValues();
-			values.put(FIELD_COLOR_VALUE, value);
-
-			mDb.beginTransaction();
-			try {
-				final int rowsAffected = mDb.update(TABLE_COLORS, values,
-						WHERE_SCHEME_AND_COLOR, whereArgs);
+		synchronized (mColorsLock) {
+			if (value == Colors.defaults[number]) {
+				mDb.beginTransaction();
+				try {
+					mDb.delete(TABLE_COLORS,
+							WHERE_SCHEME_AND_COLOR, whereArgs);
+					mDb.setTransactionSuccessful();
+				} finally {
+					mDb.endTransaction();
+				}
+			} else {
+				final ContentValues values = new ContentValues();
+				values.put(FIELD_COLOR_VALUE, value);
 
-				if (rowsAffected == 0) {
-					values.put(FIELD_COLOR_SCHEME, scheme);
-					values.put(FIELD_COLOR_NUMBER, number);
-					mDb.insert(TABLE_COLORS, null, values);
+				mDb.beginTransaction();
+				try {
+					final int rowsAffected = mDb.update(TABLE_COLORS, values,
+							WHERE_SCHEME_AND_COLOR, whereArgs);
+
+					if (rowsAffected == 0) {
+						values.put(FIELD_COLOR_SCHEME, scheme);
+						values.put(FIELD_COLOR_NUMBER, number);
+						mDb.insert(TABLE_COLORS, null, values);
+					}
+					mDb.setTransactionSuccessful();
+				} finally {
+					mDb.endTransaction();
 				}
-				mDb.setTransactionSuccessful();
-			} finally {
-				mDb.endTransaction();
 			}
+
+			int[] colors = mColorSchemes.get(scheme);
+			if (colors != null)
+				colors[number] = value;
 		}
 	}
 
@@ -748,6 +1107,17 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 	}
 
 	public int[] getDefaultColorsForScheme(int scheme) {
+		synchronized (mColorsLock) {
+			int[] colors = mDefaultColors.get(scheme);
+			if (colors == null) {
+				colors = readDefaultColorsForScheme(scheme);
+				mDefaultColors.put(scheme, colors);
+			}
+			return colors.clone();
+		}
+	}
+
+	private int[] readDefaultColorsForScheme(int scheme) {
 		int[] colors = new int[] { DEFAULT_FG_COLOR, DEFAULT_BG_COLOR };
 
 		Cursor c = mDb.query(TABLE_COLOR_DEFAULTS,
@@ -783,18 +1153,22 @@ public class HostDatabase extends RobustSQLiteOpenHelper implements HostStorage,
 		values.put(FIELD_COLOR_FG, fg);
 		values.put(FIELD_COLOR_BG, bg);
 
-		mDb.beginTransaction();
-		try {
-			int rowsAffected = mDb.update(TABLE_COLOR_DEFAULTS, values,
-					schemeWhere, whereArgs);
+		synchronized (mColorsLock) {
+			mDb.beginTransaction();
+			try {
+				int rowsAffected = mDb.update(TABLE_COLOR_DEFAULTS, values,
+						schemeWhere, whereArgs);
 
-			if (rowsAffected == 0) {
-				values.put(FIELD_COLOR_SCHEME, scheme);
-				mDb.insert(TABLE_COLOR_DEFAULTS, null, values);
+				if (rowsAffected == 0) {
+					values.put(FIELD_COLOR_SCHEME, scheme);
+					mDb.insert(TABLE_COLOR_DEFAULTS, null, values);
+				}
+				mDb.setTransactionSuccessful();
+			} finally {
+				mDb.endTransaction();
 			}
-			mDb.setTransactionSuccessful();
-		} finally {
-			mDb.endTransaction();
+
+			mDefaultColors.put(scheme, new int[] { fg, bg });
 		}
 	}
 }
@@ -0,0 +1,668 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.connectbot.transport.AbsTransport;
+import org.connectbot.transport.SSH;
+import org.connectbot.transport.TransportFactory;
+
+/**
+ * Reads hosts to import one at a time from an OpenSSH {@code ssh_config} file
+ * or a CSV file, so that even a large inventory is never held in memory all
+ * at once.
+ */
+public abstract class HostImporter implements Closeable {
+	/** CSV columns used when the file has no header row. */
+	private static final String[] DEFAULT_COLUMNS = { "nickname", "username", "hostname", "port" };
+
+	/** How far into the file {@link #open} looks for the first entry. */
+	private static final int MAX_SNIFF_LENGTH = 64 * 1024;
+
+	/**
+	 * The file to import. An {@code ssh_config} file is read twice, since
+	 * options for every host are often given at the end.
+	 */
+	public interface Source {
+		Reader open() throws IOException;
+	}
+
+	/**
+	 * One host read from the file, with the port forwards to add to it.
+	 */
+	public static class Entry {
+		public final HostBean host;
+		public final List<PortForwardBean> portForwards;
+
+		public Entry(HostBean host, List<PortForwardBean> portForwards) {
+			this.host = host;
+			this.portForwards = portForwards;
+		}
+	}
+
+	/**
+	 * What an import added to the database and how quickly.
+	 */
+	public static class Result {
+		public int hosts = 0;
+		public int portForwards = 0;
+		public int skipped = 0;
+		public long elapsedMillis = 0;
+
+		/**
+		 * @return the number of host and port forward rows written per second
+		 */
+		public long getRowsPerSecond() {
+			return (hosts + portForwards) * 1000L / Math.max(elapsedMillis, 1);
+		}
+	}
+
+	private int skipped = 0;
+
+	/**
+	 * @return the next host to import, or {@code null} at the end of the file
+	 */
+	public abstract Entry next() throws IOException;
+
+	/**
+	 * @return the number of hosts in the file that could not be imported
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	protected void skip() {
+		skipped++;
+	}
+
+	/**
+	 * Pick a parser by looking at the start of the file. An {@code ssh_config}
+	 * line starts with a keyword, while the first field of a CSV row is
+	 * followed by a comma or quoted.
+	 */
+	public static HostImporter open(Source source) throws IOException {
+		BufferedReader in = new BufferedReader(source.open());
+		boolean csv = false;
+		try {
+			csv = isCsv(in);
+			if (!csv)
+				return forSshConfig(in, source);
+		} finally {
+			if (!csv)
+				in.close();
+		}
+		return new CsvImporter(in);
+	}
+
+	/**
+	 * Look for the first entry and leave the reader back at the start.
+	 */
+	private static boolean isCsv(BufferedReader in) throws IOException {
+		boolean csv = false;
+		in.mark(MAX_SNIFF_LENGTH);
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#"))
+				continue;
+
+			String first = line.split("[\\s=]", 2)[0];
+			csv = first.indexOf(',') >= 0 || first.startsWith("\"");
+			break;
+		}
+		try {
+			in.reset();
+		} catch (IOException e) {
+			throw new IOException("Could not find the first host entry");
+		}
+		return csv;
+	}
+
+	public static HostImporter forSshConfig(Source source) throws IOException {
+		BufferedReader in = new BufferedReader(source.open());
+		try {
+			return forSshConfig(in, source);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param in the file, read through once for its wildcard blocks
+	 * @param source opened again to read the hosts
+	 */
+	private static HostImporter forSshConfig(BufferedReader in, Source source) throws IOException {
+		List<SshConfigImporter.Block> wildcards = SshConfigImporter.readWildcards(in);
+		return new SshConfigImporter(source.open(), wildcards);
+	}
+
+	public static HostImporter forCsv(Reader reader) {
+		return new CsvImporter(reader);
+	}
+
+	/**
+	 * Fill in the defaults for the host's protocol.
+	 *
+	 * @return false if the host cannot be connected to as given
+	 */
+	private static boolean complete(HostBean host) {
+		AbsTransport transport = TransportFactory.getTransport(host.getProtocol());
+		if (transport == null)
+			return false;
+
+		if (host.getPort() <= 0)
+			host.setPort(transport.getDefaultPort());
+
+		// there is no local user name to fall back to
+		if (SSH.getProtocolName().equals(host.getProtocol())
+				&& (host.getUsername() == null || host.getUsername().length() == 0))
+			return false;
+
+		if (host.getNickname() == null || host.getNickname().length() == 0)
+			host.setNickname(transport.getDefaultNickname(host.getUsername(), host.getHostname(),
+					host.getPort()));
+
+		return true;
+	}
+
+	/**
+	 * Reads {@code Host} blocks from an OpenSSH client configuration. Each
+	 * host name without wildcards in a {@code Host} line becomes a host, using
+	 * its {@code HostName}, {@code User}, {@code Port} and forwarding options.
+	 * <p>
+	 * As in OpenSSH, the first value found for an option wins, so options from
+	 * wildcard blocks earlier in the file take precedence over the host's own,
+	 * and those later in the file fill in what the host leaves out. Only the
+	 * wildcard blocks are kept in memory, read in a first pass over the file.
+	 * {@code Match} blocks are ignored.
+	 */
+	private static class SshConfigImporter extends HostImporter {
+		static class Block {
+			/** Position in the file. */
+			final int index;
+			final String[] patterns;
+			final List<String[]> options = new ArrayList<>();
+
+			Block(int index, String[] patterns) {
+				this.index = index;
+				this.patterns = patterns;
+			}
+
+			boolean hasWildcards() {
+				for (String pattern : patterns) {
+					if (isWildcard(pattern))
+						return true;
+				}
+				return false;
+			}
+
+			boolean matches(String alias) {
+				boolean matched = false;
+				for (String pattern : patterns) {
+					if (pattern.startsWith("!")) {
+						if (matchesPattern(pattern.substring(1), alias))
+							return false;
+					} else if (matchesPattern(pattern, alias)) {
+						matched = true;
+					}
+				}
+				return matched;
+			}
+
+			String get(String keyword) {
+				for (String[] option : options) {
+					if (option[0].equals(keyword))
+						return option[1];
+				}
+				return null;
+			}
+		}
+
+		/**
+		 * Splits a file into its blocks, leaving out {@code Match} blocks.
+		 */
+		private static class BlockReader {
+			private final BufferedReader in;
+
+			/** Options before the first {@code Host} line apply to every host. */
+			private Block current = new Block(0, new String[] { "*" });
+			private int count = 0;
+
+			BlockReader(BufferedReader in) {
+				this.in = in;
+			}
+
+			/**
+			 * @return the next block, or {@code null} at the end of the file
+			 */
+			Block next() throws IOException {
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.length() == 0 || line.startsWith("#"))
+						continue;
+
+					String[] parts = line.split("\\s*[\\s=]\\s*", 2);
+					String keyword = parts[0].toLowerCase(Locale.US);
+					String value = parts.length > 1 ? parts[1].trim() : "";
+
+					if ("host".equals(keyword) || "match".equals(keyword)) {
+						Block done = current;
+						count++;
+						current = "host".equals(keyword) ? new Block(count, splitArguments(value)) : null;
+						if (done != null)
+							return done;
+					} else if (current != null) {
+						current.options.add(new String[] { keyword, value });
+					}
+				}
+
+				Block done = current;
+				current = null;
+				return done;
+			}
+		}
+
+		private final BufferedReader in;
+		private final BlockReader blocks;
+
+		/** Every block in the file that may apply to more than one host. */
+		private final List<Block> wildcards;
+
+		private final LinkedList<Entry> ready = new LinkedList<>();
+
+		SshConfigImporter(Reader reader, List<Block> wildcards) {
+			in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+			blocks = new BlockReader(in);
+			this.wildcards = wildcards;
+		}
+
+		static List<Block> readWildcards(BufferedReader in) throws IOException {
+			List<Block> wildcards = new ArrayList<>();
+			BlockReader blocks = new BlockReader(in);
+			Block block;
+			while ((block = blocks.next()) != null) {
+				if (block.hasWildcards())
+					wildcards.add(block);
+			}
+			return wildcards;
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			while (ready.isEmpty()) {
+				Block block = blocks.next();
+				if (block == null)
+					break;
+
+				for (String pattern : block.patterns) {
+					if (isWildcard(pattern) || pattern.startsWith("!"))
+						continue;
+
+					Entry entry = createEntry(pattern, block);
+					if (entry != null)
+						ready.add(entry);
+					else
+						skip();
+				}
+			}
+
+			return ready.poll();
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private Entry createEntry(String alias, Block own) {
+			// the blocks that apply, in the order they appear in the file
+			List<Block> blocks = new ArrayList<>();
+			boolean ownAdded = false;
+			for (Block block : wildcards) {
+				if (!ownAdded && block.index >= own.index) {
+					blocks.add(own);
+					ownAdded = true;
+				}
+				if (block.index != own.index && block.matches(alias))
+					blocks.add(block);
+			}
+			if (!ownAdded)
+				blocks.add(own);
+
+			HostBean host = new HostBean();
+			host.setNickname(alias);
+			host.setProtocol(SSH.getProtocolName());
+			host.setPort(0);
+
+			String hostname = get(blocks, "hostname");
+			host.setHostname(hostname == null ? alias : hostname.replace("%h", alias));
+			host.setUsername(unquote(get(blocks, "user")));
+
+			String port = get(blocks, "port");
+			if (port != null) {
+				try {
+					host.setPort(Integer.parseInt(port));
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+
+			if (!complete(host))
+				return null;
+
+			List<PortForwardBean> portForwards = new ArrayList<>();
+			for (Block block : blocks) {
+				for (String[] option : block.options) {
+					PortForwardBean pfb = createPortForward(option[0], option[1]);
+					if (pfb != null)
+						portForwards.add(pfb);
+				}
+			}
+
+			return new Entry(host, portForwards);
+		}
+
+		private static String get(List<Block> blocks, String keyword) {
+			for (Block block : blocks) {
+				String value = block.get(keyword);
+				if (value != null)
+					return value;
+			}
+			return null;
+		}
+
+		/**
+		 * @return the forward described by an option, or {@code null} if it is
+		 *         not a TCP port forward
+		 */
+		private static PortForwardBean createPortForward(String keyword, String value) {
+			String type;
+			if ("localforward".equals(keyword))
+				type = HostDatabase.PORTFORWARD_LOCAL;
+			else if ("remoteforward".equals(keyword))
+				type = HostDatabase.PORTFORWARD_REMOTE;
+			else if ("dynamicforward".equals(keyword))
+				type = HostDatabase.PORTFORWARD_DYNAMIC5;
+			else
+				return null;
+
+			String[] args = splitArguments(value);
+			boolean dynamic = HostDatabase.PORTFORWARD_DYNAMIC5.equals(type);
+			if (args.length != (dynamic ? 1 : 2))
+				return null;
+
+			try {
+				int sourcePort = Integer.parseInt(afterLastColon(args[0]));
+				String destAddr = null;
+				int destPort = 0;
+				if (!dynamic) {
+					int colon = args[1].lastIndexOf(':');
+					if (colon <= 0)
+						return null;
+					destAddr = args[1].substring(0, colon);
+					if (destAddr.startsWith("[") && destAddr.endsWith("]"))
+						destAddr = destAddr.substring(1, destAddr.length() - 1);
+					destPort = Integer.parseInt(args[1].substring(colon + 1));
+				}
+
+				return new PortForwardBean(-1, -1, value, type, sourcePort, destAddr, destPort);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private static String afterLastColon(String address) {
+			return address.substring(address.lastIndexOf(':') + 1);
+		}
+
+		private static boolean isWildcard(String pattern) {
+			return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+		}
+
+		private static boolean matchesPattern(String pattern, String alias) {
+			return matchesPattern(pattern.toLowerCase(Locale.US), 0, alias.toLowerCase(Locale.US), 0);
+		}
+
+		private static boolean matchesPattern(String pattern, int p, String alias, int a) {
+			for (; p < pattern.length(); p++, a++) {
+				char c = pattern.charAt(p);
+				if (c == '*') {
+					for (int i = a; i <= alias.length(); i++) {
+						if (matchesPattern(pattern, p + 1, alias, i))
+							return true;
+					}
+					return false;
+				}
+				if (a >= alias.length() || (c != '?' && c != alias.charAt(a)))
+					return false;
+			}
+			return a == alias.length();
+		}
+
+		private static String[] splitArguments(String value) {
+			List<String> args = new ArrayList<>();
+			StringBuilder arg = null;
+			boolean quoted = false;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"') {
+					quoted = !quoted;
+					if (arg == null)
+						arg = new StringBuilder();
+				} else if (!quoted && Character.isWhitespace(c)) {
+					if (arg != null)
+						args.add(arg.toString());
+					arg = null;
+				} else {
+					if (arg == null)
+						arg = new StringBuilder();
+					arg.append(c);
+				}
+			}
+			if (arg != null)
+				args.add(arg.toString());
+			return args.toArray(new String[args.size()]);
+		}
+
+		private static String unquote(String value) {
+			if (value == null)
+				return null;
+			String[] args = splitArguments(value);
+			return args.length == 0 ? "" : args[0];
+		}
+	}
+
+	/**
+	 * Reads hosts from comma separated values as described in RFC 4180. The
+	 * first row may name the columns: {@code nickname}, {@code protocol},
+	 * {@code username}, {@code hostname}, {@code port} and {@code color}.
+	 * Without it the columns are nickname, username, hostname and port.
+	 * Lines starting with {@code #} are comments, as {@link #open} treats
+	 * them.
+	 */
+	private static class CsvImporter extends HostImporter {
+		private final Reader in;
+		private String[] columns;
+		private int pending = -2;
+
+		CsvImporter(Reader reader) {
+			in = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			List<String> row;
+			while ((row = readRow()) != null) {
+				if (row.size() == 1 && row.get(0).trim().length() == 0)
+					continue;
+
+				if (columns == null) {
+					columns = readHeader(row);
+					if (columns != null)
+						continue;
+					columns = DEFAULT_COLUMNS;
+				}
+
+				HostBean host = createHost(row);
+				if (host != null)
+					return new Entry(host, new ArrayList<PortForwardBean>());
+				skip();
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private static String[] readHeader(List<String> row) {
+			String[] header = new String[row.size()];
+			boolean named = false;
+			for (int i = 0; i < header.length; i++) {
+				String name = row.get(i).trim().toLowerCase(Locale.US);
+				if ("user".equals(name))
+					name = "username";
+				else if ("host".equals(name))
+					name = "hostname";
+				header[i] = name;
+				named |= "hostname".equals(name) || "nickname".equals(name);
+			}
+			return named ? header : null;
+		}
+
+		private HostBean createHost(List<String> row) {
+			HostBean host = new HostBean();
+			host.setPort(0);
+
+			for (int i = 0; i < columns.length && i < row.size(); i++) {
+				String value = row.get(i).trim();
+				if (value.length() == 0)
+					continue;
+
+				String column = columns[i];
+				if ("nickname".equals(column)) {
+					host.setNickname(value);
+				} else if ("protocol".equals(column)) {
+					host.setProtocol(value.toLowerCase(Locale.US));
+				} else if ("username".equals(column)) {
+					host.setUsername(value);
+				} else if ("hostname".equals(column)) {
+					host.setHostname(value);
+				} else if ("port".equals(column)) {
+					try {
+						host.setPort(Integer.parseInt(value));
+					} catch (NumberFormatException e) {
+						return null;
+					}
+				} else if ("color".equals(column)) {
+					host.setColor(value.toLowerCase(Locale.US));
+				}
+			}
+
+			if (host.getHostname() == null && !"local".equals(host.getProtocol()))
+				return null;
+
+			return complete(host) ? host : null;
+		}
+
+		private int read() throws IOException {
+			if (pending != -2) {
+				int c = pending;
+				pending = -2;
+				return c;
+			}
+			return in.read();
+		}
+
+		/**
+		 * @return the fields of the next row, or {@code null} at the end
+		 */
+		private List<String> readRow() throws IOException {
+			int c = read();
+			if (c == -1)
+				return null;
+
+			List<String> row = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			while (c == ' ' || c == '\t') {
+				field.append((char) c);
+				c = read();
+			}
+			if (c == '#') {
+				// read as a blank row
+				while (c != -1 && c != '\r' && c != '\n')
+					c = read();
+				if (c == '\r') {
+					int next = read();
+					if (next != '\n')
+						pending = next;
+				}
+				row.add("");
+				return row;
+			}
+
+			boolean quoted = false;
+			for (; c != -1; c = read()) {
+				if (quoted) {
+					if (c != '"') {
+						field.append((char) c);
+						continue;
+					}
+
+					// a doubled quote is a literal one
+					int next = read();
+					if (next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						pending = next;
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					row.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\r' || c == '\n') {
+					if (c == '\r') {
+						int next = read();
+						if (next != '\n')
+							pending = next;
+					}
+					break;
+				} else {
+					field.append((char) c);
+				}
+			}
+
+			row.add(field.toString());
+			return row;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.trilead.ssh2.KnownHosts;
+import com.trilead.ssh2.crypto.Base64;
+
+/**
+ * In-memory copy of the known host keys, so verifying a server does not need
+ * to read every stored key. Entries are either a plain hostname and port or
+ * an OpenSSH hashed hostname ({@code |1|salt|hash}), which hides the hostname
+ * and can only be matched by hashing the name being looked up.
+ */
+public class KnownHostsCache {
+	public static final int DEFAULT_PORT = 22;
+
+	private static final String HASH_MAGIC = "|1|";
+	private static final String HASH_ALGORITHM = "HmacSHA1";
+
+	/**
+	 * One known host key as stored in the database or read from a
+	 * {@code known_hosts} file. Hashed entries have a port of 0, as the port
+	 * is part of what was hashed.
+	 */
+	public static class Entry {
+		public final long id;
+		public final String hostname;
+		public final int port;
+		public final String algorithm;
+		public final byte[] key;
+
+		public Entry(long id, String hostname, int port, String algorithm, byte[] key) {
+			this.id = id;
+			this.hostname = hostname;
+			this.port = port;
+			this.algorithm = algorithm;
+			this.key = key;
+		}
+
+		public boolean isHashed() {
+			return hostname.startsWith(HASH_MAGIC);
+		}
+	}
+
+	private static class HashedEntry {
+		final Entry entry;
+		final byte[] salt;
+		final byte[] hash;
+
+		HashedEntry(Entry entry, byte[] salt, byte[] hash) {
+			this.entry = entry;
+			this.salt = salt;
+			this.hash = hash;
+		}
+	}
+
+	private final Map<String, List<Entry>> plain = new HashMap<>();
+	private final List<HashedEntry> hashed = new ArrayList<>();
+	private int size = 0;
+
+	private static String getAddress(String hostname, int port) {
+		return String.format(Locale.US, "%s:%d", hostname, port);
+	}
+
+	/**
+	 * Add a stored entry without checking for others it may supersede.
+	 *
+	 * @return false if the entry was a malformed hashed hostname
+	 */
+	public synchronized boolean add(Entry entry) {
+		if (entry.isHashed()) {
+			String[] parts = entry.hostname.substring(HASH_MAGIC.length()).split("\\|");
+			if (parts.length != 2)
+				return false;
+
+			byte[] salt, hash;
+			try {
+				salt = Base64.decode(parts[0].toCharArray());
+				hash = Base64.decode(parts[1].toCharArray());
+			} catch (IOException e) {
+				return false;
+			}
+			if (salt.length == 0)
+				return false;
+
+			hashed.add(new HashedEntry(entry, salt, hash));
+		} else {
+			String address = getAddress(entry.hostname, entry.port);
+			List<Entry> entries = plain.get(address);
+			if (entries == null) {
+				entries = new LinkedList<>();
+				plain.put(address, entries);
+			}
+			entries.add(entry);
+		}
+
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return the entries the given one would replace: plain entries for the
+	 *         same host, port and algorithm, or identical hashed hostnames
+	 *         with the same algorithm
+	 */
+	public synchronized List<Entry> findSuperseded(String hostname, int port, String algorithm) {
+		List<Entry> superseded = new LinkedList<>();
+
+		if (hostname.startsWith(HASH_MAGIC)) {
+			for (HashedEntry h : hashed) {
+				if (h.entry.algorithm.equals(algorithm) && h.entry.hostname.equals(hostname))
+					superseded.add(h.entry);
+			}
+			return superseded;
+		}
+
+		List<Entry> entries = plain.get(getAddress(hostname, port));
+		if (entries != null) {
+			for (Entry e : entries) {
+				if (e.algorithm.equals(algorithm))
+					superseded.add(e);
+			}
+		}
+
+		Mac mac = getMac();
+		for (HashedEntry h : hashed) {
+			if (h.entry.algorithm.equals(algorithm) && matches(mac, h, hostname, port))
+				superseded.add(h.entry);
+		}
+
+		return superseded;
+	}
+
+	/**
+	 * @return every entry for the given host and port, whatever its
+	 *         algorithm, including hashed hostnames that match
+	 */
+	public synchronized List<Entry> findForHost(String hostname, int port) {
+		List<Entry> found = new LinkedList<>();
+
+		List<Entry> entries = plain.get(getAddress(hostname, port));
+		if (entries != null)
+			found.addAll(entries);
+
+		Mac mac = null;
+		for (HashedEntry h : hashed) {
+			if (mac == null)
+				mac = getMac();
+			if (matches(mac, h, hostname, port))
+				found.add(h.entry);
+		}
+
+		return found;
+	}
+
+	/**
+	 * Forget the given entries, found by {@link #findSuperseded} or
+	 * {@link #findForHost}.
+	 */
+	public synchronized void remove(List<Entry> entries) {
+		for (Entry entry : entries) {
+			if (entry.isHashed()) {
+				Iterator<HashedEntry> it = hashed.iterator();
+				while (it.hasNext()) {
+					if (it.next().entry == entry) {
+						it.remove();
+						size--;
+					}
+				}
+			} else {
+				List<Entry> list = plain.get(getAddress(entry.hostname, entry.port));
+				if (list != null && list.remove(entry)) {
+					size--;
+					if (list.isEmpty())
+						plain.remove(getAddress(entry.hostname, entry.port));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check a server's host key in the same way as
+	 * {@link KnownHosts#verifyHostkey}.
+	 *
+	 * @return one of {@link KnownHosts#HOSTKEY_IS_OK},
+	 *         {@link KnownHosts#HOSTKEY_IS_NEW} or
+	 *         {@link KnownHosts#HOSTKEY_HAS_CHANGED}
+	 */
+	public synchronized int verify(String hostname, int port, String algorithm, byte[] key) {
+		int result = KnownHosts.HOSTKEY_IS_NEW;
+
+		List<Entry> entries = plain.get(getAddress(hostname, port));
+		if (entries != null) {
+			for (Entry e : entries) {
+				if (!e.algorithm.equals(algorithm))
+					continue;
+				if (Arrays.equals(e.key, key))
+					return KnownHosts.HOSTKEY_IS_OK;
+				result = KnownHosts.HOSTKEY_HAS_CHANGED;
+			}
+		}
+
+		Mac mac = null;
+		for (HashedEntry h : hashed) {
+			if (!h.entry.algorithm.equals(algorithm))
+				continue;
+			if (mac == null)
+				mac = getMac();
+			if (!matches(mac, h, hostname, port))
+				continue;
+			if (Arrays.equals(h.entry.key, key))
+				return KnownHosts.HOSTKEY_IS_OK;
+			result = KnownHosts.HOSTKEY_HAS_CHANGED;
+		}
+
+		return result;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Hash a hostname the way OpenSSH does with {@code HashKnownHosts}.
+	 */
+	public static String hashHostname(String hostname, int port, byte[] salt) {
+		byte[] hash = hash(getMac(), salt, getHashedName(hostname, port));
+		return HASH_MAGIC + new String(Base64.encode(salt)) + "|" + new String(Base64.encode(hash));
+	}
+
+	/**
+	 * Parse one line of an OpenSSH {@code known_hosts} file. Comments,
+	 * certificate authorities, revoked keys and wildcard patterns are skipped.
+	 *
+	 * @return one entry for each hostname on the line
+	 */
+	public static List<Entry> parseLine(String line) {
+		List<Entry> entries = new LinkedList<>();
+
+		line = line.trim();
+		if (line.length() == 0 || line.startsWith("#") || line.startsWith("@"))
+			return entries;
+
+		String[] fields = line.split("\\s+");
+		if (fields.length < 3)
+			return entries;
+
+		byte[] key;
+		try {
+			key = Base64.decode(fields[2].toCharArray());
+		} catch (IOException e) {
+			return entries;
+		}
+
+		for (String name : fields[0].split(",")) {
+			if (name.length() == 0 || name.startsWith("!") || name.indexOf('*') >= 0
+					|| name.indexOf('?') >= 0)
+				continue;
+
+			String hostname = name;
+			int port = DEFAULT_PORT;
+			if (name.startsWith(HASH_MAGIC)) {
+				port = 0;
+			} else if (name.startsWith("[")) {
+				int close = name.indexOf("]:");
+				if (close < 0)
+					continue;
+				hostname = name.substring(1, close);
+				try {
+					port = Integer.parseInt(name.substring(close + 2));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+			}
+
+			entries.add(new Entry(-1, hostname, port, fields[1], key));
+		}
+
+		return entries;
+	}
+
+	private static String getHashedName(String hostname, int port) {
+		if (port == DEFAULT_PORT)
+			return hostname;
+		return String.format(Locale.US, "[%s]:%d", hostname, port);
+	}
+
+	private static boolean matches(Mac mac, HashedEntry h, String hostname, int port) {
+		return Arrays.equals(h.hash, hash(mac, h.salt, getHashedName(hostname, port)));
+	}
+
+	private static byte[] hash(Mac mac, byte[] salt, String name) {
+		try {
+			mac.init(new SecretKeySpec(salt, HASH_ALGORITHM));
+			return mac.doFinal(name.getBytes("UTF-8"));
+		} catch (InvalidKeyException | IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static Mac getMac() {
+		try {
+			return Mac.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
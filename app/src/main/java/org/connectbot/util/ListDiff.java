@@ -0,0 +1,103 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out how to turn one list into another when both keep their items in
+ * the same relative order, such as a filtered list as the filter changes. The
+ * changes are reported in a form that can be passed straight on to a
+ * {@code RecyclerView.Adapter}, so only the affected rows are redrawn.
+ */
+public final class ListDiff {
+	public interface Callback {
+		void onRemoved(int position, int count);
+
+		void onInserted(int position, int count);
+
+		/** The item at {@code position} was replaced by a different copy. */
+		void onChanged(int position);
+
+		/** The lists cannot be matched up and everything must be redrawn. */
+		void onReordered();
+	}
+
+	private ListDiff() {
+	}
+
+	/**
+	 * Report the removals, then the insertions and changes, that turn
+	 * {@code oldList} into {@code newList}. Positions are in terms of the list
+	 * as it stands after the changes reported before them.
+	 */
+	public static <T> void dispatch(List<T> oldList, List<T> newList, Callback callback) {
+		Set<T> oldItems = new HashSet<>(oldList);
+		Set<T> newItems = new HashSet<>(newList);
+
+		List<T> kept = new ArrayList<>();
+		for (T item : oldList) {
+			if (newItems.contains(item))
+				kept.add(item);
+		}
+
+		int k = 0;
+		for (T item : newList) {
+			if (oldItems.contains(item) && (k >= kept.size() || !kept.get(k++).equals(item))) {
+				callback.onReordered();
+				return;
+			}
+		}
+		if (k != kept.size()) {
+			callback.onReordered();
+			return;
+		}
+
+		// remove back to front so earlier positions stay valid
+		int removeEnd = -1;
+		for (int i = oldList.size() - 1; i >= -1; i--) {
+			if (i >= 0 && !newItems.contains(oldList.get(i))) {
+				if (removeEnd < 0)
+					removeEnd = i;
+			} else if (removeEnd >= 0) {
+				callback.onRemoved(i + 1, removeEnd - i);
+				removeEnd = -1;
+			}
+		}
+
+		k = 0;
+		int insertStart = -1;
+		for (int i = 0; i <= newList.size(); i++) {
+			if (i < newList.size() && !oldItems.contains(newList.get(i))) {
+				if (insertStart < 0)
+					insertStart = i;
+				continue;
+			}
+
+			if (insertStart >= 0) {
+				callback.onInserted(insertStart, i - insertStart);
+				insertStart = -1;
+			}
+			if (i < newList.size() && newList.get(i) != kept.get(k++))
+				callback.onChanged(i);
+		}
+	}
+}
@@ -48,6 +48,8 @@ public class PreferenceConstants {
 	public static final String TITLEBARHIDE = "titlebarhide";
 	public static final String PG_UPDN_GESTURE = "pgupdngesture";
 
+	public static final String LOW_MEMORY_BITMAPS = "lowmembitmaps";
+
 	public static final String KEYMODE = "keymode";
 
 	public static final String KEYMODE_RIGHT = "Use right-side keys";
@@ -77,6 +79,16 @@ public class PreferenceConstants {
 
 	public static final String CONNECTION_PERSIST = "connPersist";
 
+	public static final String CONNECTION_SHARING = "connSharing";
+
+	public static final String CONNECTION_GRACE = "connGrace";
+
+	public static final String PREDICTIVE_ECHO = "predictEcho";
+
+	public static final String RECORD_SESSIONS = "recordSessions";
+	public static final String RECORD_INPUT = "recordInput";
+	public static final String RECORD_EXTERNAL = "recordExternal";
+
 	public static final String SHIFT_FKEYS = "shiftfkeys";
 	public static final String CTRL_FKEYS = "ctrlfkeys";
 	public static final String VOLUME_FONT = "volumefont";
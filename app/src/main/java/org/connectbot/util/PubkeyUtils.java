@@ -53,8 +53,11 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.EncryptedPrivateKeyInfo;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -81,6 +84,32 @@ public class PubkeyUtils {
 	// Number of iterations for password hashing. PKCS#5 recommends 1000
 	private static final int ITERATIONS = 1000;
 
+	/*
+	 * Current encrypted key format: magic and version, PBKDF2-HMAC-SHA256
+	 * iteration count, salt, IV, the AES-CBC ciphertext and an HMAC-SHA256
+	 * tag over everything before it. One PBKDF2 block is split into the
+	 * cipher key and the tag key, so a wrong password is always rejected by
+	 * the tag rather than sometimes decrypting to garbage.
+	 */
+	private static final byte[] KEY_FORMAT_MAGIC = { 'C', 'B', 'K', 2 };
+	private static final int KEY_FORMAT_SALT_SIZE = 16;
+	private static final int KEY_FORMAT_IV_SIZE = 16;
+	private static final int KEY_FORMAT_HEADER_SIZE =
+			KEY_FORMAT_MAGIC.length + 4 + KEY_FORMAT_SALT_SIZE + KEY_FORMAT_IV_SIZE;
+	private static final int KEY_FORMAT_KEY_SIZE = 16;
+	private static final int KEY_FORMAT_MAC_SIZE = 32;
+
+	// How long unlocking a key should take on this device
+	private static final long TARGET_UNLOCK_MILLIS = 250;
+
+	// Bounds for the calibrated PBKDF2 iteration count
+	private static final int MIN_KDF_ITERATIONS = 4096;
+	private static final int MAX_KDF_ITERATIONS = 1 << 22;
+
+	private static final int CALIBRATION_ITERATIONS = 2048;
+
+	private static int calibratedIterations = 0;
+
 	// Cannot be instantiated
 	private PubkeyUtils() {
 	}
@@ -105,22 +134,100 @@ public class PubkeyUtils {
 	}
 
 	public static byte[] encrypt(byte[] cleartext, String secret) throws Exception {
-		byte[] salt = new byte[SALT_SIZE];
-
-		byte[] ciphertext = Encryptor.encrypt(salt, ITERATIONS, secret, cleartext);
-
-		byte[] complete = new byte[salt.length + ciphertext.length];
+		return encrypt(cleartext, secret, getCalibratedIterations());
+	}
 
-		System.arraycopy(salt, 0, complete, 0, salt.length);
-		System.arraycopy(ciphertext, 0, complete, salt.length, ciphertext.length);
+	static byte[] encrypt(byte[] cleartext, String secret, int iterations) throws Exception {
+		SecureRandom random = new SecureRandom();
+		byte[] salt = new byte[KEY_FORMAT_SALT_SIZE];
+		byte[] iv = new byte[KEY_FORMAT_IV_SIZE];
+		random.nextBytes(salt);
+		random.nextBytes(iv);
+
+		byte[] key = pbkdf2(secret, salt, iterations, KEY_FORMAT_KEY_SIZE * 2);
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, 0, KEY_FORMAT_KEY_SIZE, "AES"),
+				new IvParameterSpec(iv));
+		byte[] ciphertext = c.doFinal(cleartext);
+
+		byte[] complete = new byte[KEY_FORMAT_HEADER_SIZE + ciphertext.length + KEY_FORMAT_MAC_SIZE];
+		int offset = 0;
+		System.arraycopy(KEY_FORMAT_MAGIC, 0, complete, offset, KEY_FORMAT_MAGIC.length);
+		offset += KEY_FORMAT_MAGIC.length;
+		complete[offset++] = (byte) (iterations >>> 24);
+		complete[offset++] = (byte) (iterations >>> 16);
+		complete[offset++] = (byte) (iterations >>> 8);
+		complete[offset++] = (byte) iterations;
+		System.arraycopy(salt, 0, complete, offset, salt.length);
+		offset += salt.length;
+		System.arraycopy(iv, 0, complete, offset, iv.length);
+		offset += iv.length;
+		System.arraycopy(ciphertext, 0, complete, offset, ciphertext.length);
+		offset += ciphertext.length;
 
-		Arrays.fill(salt, (byte) 0x00);
 		Arrays.fill(ciphertext, (byte) 0x00);
 
+		byte[] tag = keyFormatMac(key, complete, offset);
+		Arrays.fill(key, (byte) 0x00);
+		System.arraycopy(tag, 0, complete, offset, tag.length);
+
 		return complete;
 	}
 
 	public static byte[] decrypt(byte[] saltAndCiphertext, String secret) throws Exception {
+		if (isCurrentKeyFormat(saltAndCiphertext))
+			return decryptCurrent(saltAndCiphertext, secret);
+
+		return decryptLegacy(saltAndCiphertext, secret);
+	}
+
+	private static byte[] decryptCurrent(byte[] encrypted, String secret) throws Exception {
+		int offset = KEY_FORMAT_MAGIC.length;
+		int iterations = ((encrypted[offset] & 0xff) << 24)
+				| ((encrypted[offset + 1] & 0xff) << 16)
+				| ((encrypted[offset + 2] & 0xff) << 8)
+				| (encrypted[offset + 3] & 0xff);
+		offset += 4;
+		if (iterations <= 0 || iterations > MAX_KDF_ITERATIONS)
+			throw new InvalidKeyException("Invalid iteration count " + iterations);
+
+		byte[] salt = new byte[KEY_FORMAT_SALT_SIZE];
+		System.arraycopy(encrypted, offset, salt, 0, salt.length);
+		offset += salt.length;
+		byte[] iv = new byte[KEY_FORMAT_IV_SIZE];
+		System.arraycopy(encrypted, offset, iv, 0, iv.length);
+		offset += iv.length;
+
+		int macOffset = encrypted.length - KEY_FORMAT_MAC_SIZE;
+		byte[] key = pbkdf2(secret, salt, iterations, KEY_FORMAT_KEY_SIZE * 2);
+		byte[] expected = keyFormatMac(key, encrypted, macOffset);
+		byte[] actual = new byte[KEY_FORMAT_MAC_SIZE];
+		System.arraycopy(encrypted, macOffset, actual, 0, actual.length);
+		if (!MessageDigest.isEqual(expected, actual)) {
+			Arrays.fill(key, (byte) 0x00);
+			throw new InvalidKeyException("Wrong password or corrupt key");
+		}
+
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, 0, KEY_FORMAT_KEY_SIZE, "AES"),
+				new IvParameterSpec(iv));
+		Arrays.fill(key, (byte) 0x00);
+		return c.doFinal(encrypted, offset, macOffset - offset);
+	}
+
+	/**
+	 * HMAC-SHA256 of the first {@code length} bytes of {@code data}, keyed
+	 * with the second half of the derived key.
+	 */
+	private static byte[] keyFormatMac(byte[] key, byte[] data, int length)
+			throws NoSuchAlgorithmException, InvalidKeyException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(key, KEY_FORMAT_KEY_SIZE, KEY_FORMAT_KEY_SIZE, "HmacSHA256"));
+		mac.update(data, 0, length);
+		return mac.doFinal();
+	}
+
+	private static byte[] decryptLegacy(byte[] saltAndCiphertext, String secret) throws Exception {
 		try {
 			byte[] salt = new byte[SALT_SIZE];
 			byte[] ciphertext = new byte[saltAndCiphertext.length - salt.length];
@@ -136,6 +243,105 @@ public class PubkeyUtils {
 		}
 	}
 
+	static boolean isCurrentKeyFormat(byte[] encrypted) {
+		if (encrypted == null || encrypted.length <= KEY_FORMAT_HEADER_SIZE + KEY_FORMAT_MAC_SIZE)
+			return false;
+
+		for (int i = 0; i < KEY_FORMAT_MAGIC.length; i++) {
+			if (encrypted[i] != KEY_FORMAT_MAGIC[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Whether an encrypted private key was stored in an older, weaker format
+	 * and should be encrypted again once the user has unlocked it.
+	 */
+	public static boolean needsReencryption(byte[] encrypted) {
+		return !isCurrentKeyFormat(encrypted);
+	}
+
+	/**
+	 * PBKDF2 (RFC 2898) with HMAC-SHA256. Older Android releases do not offer
+	 * it through {@link SecretKeyFactory}, so it is built on {@link Mac}.
+	 */
+	static byte[] pbkdf2(String password, byte[] salt, int iterations, int length)
+			throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+		byte[] pw = password.getBytes("UTF-8");
+		Mac mac = Mac.getInstance("HmacSHA256");
+		// HMAC pads or hashes the key itself, but the spec rejects empty keys
+		mac.init(new SecretKeySpec(pw.length == 0 ? new byte[1] : pw, "HmacSHA256"));
+		Arrays.fill(pw, (byte) 0x00);
+
+		int hashLength = mac.getMacLength();
+		byte[] derived = new byte[length];
+		byte[] u = new byte[hashLength];
+		byte[] t = new byte[hashLength];
+
+		for (int block = 1, offset = 0; offset < length; block++, offset += hashLength) {
+			mac.update(salt);
+			mac.update(new byte[] {
+					(byte) (block >>> 24), (byte) (block >>> 16),
+					(byte) (block >>> 8), (byte) block });
+			try {
+				mac.doFinal(u, 0);
+				System.arraycopy(u, 0, t, 0, hashLength);
+				for (int i = 1; i < iterations; i++) {
+					mac.update(u);
+					mac.doFinal(u, 0);
+					for (int j = 0; j < hashLength; j++)
+						t[j] ^= u[j];
+				}
+			} catch (ShortBufferException e) {
+				throw new IOException(e.getMessage());
+			}
+
+			System.arraycopy(t, 0, derived, offset, Math.min(hashLength, length - offset));
+		}
+
+		Arrays.fill(u, (byte) 0x00);
+		Arrays.fill(t, (byte) 0x00);
+		return derived;
+	}
+
+	/**
+	 * @return the PBKDF2 iteration count that takes about
+	 *         {@link #TARGET_UNLOCK_MILLIS} on this device, measured once per
+	 *         process
+	 */
+	static synchronized int getCalibratedIterations() throws Exception {
+		if (calibratedIterations == 0)
+			calibratedIterations = calibrateIterations(TARGET_UNLOCK_MILLIS);
+		return calibratedIterations;
+	}
+
+	static int calibrateIterations(long targetMillis) throws Exception {
+		byte[] salt = new byte[KEY_FORMAT_SALT_SIZE];
+
+		// Keep doubling the work until a run is long enough to measure. Each
+		// size is timed twice and the faster run kept, since the first one
+		// may still be running before the hot loop is compiled.
+		int probe = CALIBRATION_ITERATIONS / 2;
+		long elapsed;
+		do {
+			probe *= 2;
+			elapsed = Long.MAX_VALUE;
+			for (int i = 0; i < 2; i++) {
+				long start = System.nanoTime();
+				pbkdf2("calibration", salt, probe, KEY_FORMAT_KEY_SIZE * 2);
+				elapsed = Math.min(elapsed, Math.max(1, System.nanoTime() - start));
+			}
+		} while (elapsed < targetMillis * 1000000L / 4 && probe < MAX_KDF_ITERATIONS);
+
+		long iterations = targetMillis * 1000000L * probe / elapsed;
+		int result = (int) Math.max(MIN_KDF_ITERATIONS, Math.min(MAX_KDF_ITERATIONS, iterations));
+		Log.d(TAG, String.format("Calibrated key encryption to %d iterations (%d us for %d)",
+				result, elapsed / 1000, probe));
+		return result;
+	}
+
 	public static byte[] getEncodedPrivate(PrivateKey pk, String secret) throws Exception {
 		final byte[] encoded = pk.getEncoded();
 		if (secret == null || secret.length() == 0) {
@@ -225,7 +431,7 @@ public class PubkeyUtils {
 
 			// Calculate public key Y
 			ECPoint generator = params.getGenerator();
-			BigInteger[] wCoords = EcCore.multiplyPointA(new BigInteger[] { generator.getAffineX(),
+			BigInteger[] wCoords = EcCore.multiplyPoint(new BigInteger[] { generator.getAffineX(),
 					generator.getAffineY() }, ecPriv.getS(), params);
 			ECPoint w = new ECPoint(wCoords[0], wCoords[1]);
 
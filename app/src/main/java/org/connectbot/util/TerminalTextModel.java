@@ -0,0 +1,171 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import de.mud.terminal.VDUBuffer;
+
+/**
+ * Plain text copy of a {@link VDUBuffer} and its scrollback, kept in a single
+ * {@link Editable} so {@link TerminalTextViewOverlay} can be brought up to date
+ * without rebuilding the whole text. Only rows whose contents changed are
+ * rewritten, and rows that scrolled off the top of a full scrollback are
+ * removed in one step.
+ */
+public class TerminalTextModel {
+	/**
+	 * Number of rows that must match to accept a guess at how far the
+	 * scrollback moved since our last update.
+	 */
+	private static final int SCROLL_PROBE_ROWS = 3;
+
+	private final SpannableStringBuilder text = new SpannableStringBuilder();
+	private final List<String> lines = new ArrayList<String>();
+
+	/**
+	 * @return the text of every row, each followed by a newline
+	 */
+	public Editable getText() {
+		return text;
+	}
+
+	public int getLineCount() {
+		return lines.size();
+	}
+
+	/**
+	 * Bring our text in line with the current contents of the buffer.
+	 *
+	 * @return the number of rows that had to be rewritten
+	 */
+	public int update(VDUBuffer vb) {
+		String[] newLines;
+		synchronized (vb) {
+			newLines = readLines(vb);
+		}
+
+		int scrolled = findScrolledLines(newLines);
+		if (scrolled > 0) {
+			int end = 0;
+			for (int i = 0; i < scrolled; i++)
+				end += lines.get(i).length() + 1;
+			text.delete(0, end);
+			lines.subList(0, scrolled).clear();
+		}
+
+		int changed = 0;
+		int offset = 0;
+		int common = Math.min(lines.size(), newLines.length);
+		for (int i = 0; i < common; i++) {
+			String oldLine = lines.get(i);
+			String newLine = newLines[i];
+			if (!oldLine.equals(newLine)) {
+				text.replace(offset, offset + oldLine.length(), newLine);
+				lines.set(i, newLine);
+				changed++;
+			}
+			offset += newLine.length() + 1;
+		}
+
+		if (lines.size() > newLines.length) {
+			// buffer was reset or shrunk
+			text.delete(offset, text.length());
+			lines.subList(newLines.length, lines.size()).clear();
+		} else if (newLines.length > common) {
+			StringBuilder appended = new StringBuilder();
+			for (int i = common; i < newLines.length; i++) {
+				appended.append(newLines[i]).append('\n');
+				lines.add(newLines[i]);
+				changed++;
+			}
+			text.append(appended);
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Add empty rows to the end of the text so that an existing selection
+	 * moves up along with the rest of the buffer. They are filled in by the
+	 * next {@link #update(VDUBuffer)}.
+	 */
+	public void appendBlankLines(int count) {
+		StringBuilder newLines = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			newLines.append('\n');
+			lines.add("");
+		}
+		text.append(newLines);
+	}
+
+	/**
+	 * Guess how many rows scrolled off the top of the buffer since our last
+	 * update by looking for our old rows at the start of the new ones. A wrong
+	 * guess only costs extra rewrites; it never makes the text incorrect.
+	 */
+	private int findScrolledLines(String[] newLines) {
+		int oldCount = lines.size();
+		if (oldCount == 0 || newLines.length == 0)
+			return 0;
+
+		for (int offset = 0; offset < oldCount; offset++) {
+			int probe = Math.min(SCROLL_PROBE_ROWS, Math.min(oldCount - offset, newLines.length));
+			int matched = 0;
+			while (matched < probe && lines.get(offset + matched).equals(newLines[matched]))
+				matched++;
+			if (matched == probe)
+				return offset;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Read every row of the buffer as it would be selected: all but the last
+	 * column, with trailing whitespace removed.
+	 */
+	/* package */ static String[] readLines(VDUBuffer vb) {
+		int numRows = vb.getBufferSize();
+		int numCols = vb.getColumns() - 1;
+
+		int rows = 0;
+		while (rows < numRows && vb.charArray[rows] != null)
+			rows++;
+
+		String[] result = new String[rows];
+		for (int r = 0; r < rows; r++) {
+			char[] row = vb.charArray[r];
+			int end = Math.max(0, Math.min(numCols, row.length));
+			while (end > 0 && isTrailingSpace(row[end - 1]))
+				end--;
+			result[r] = new String(row, 0, end);
+		}
+		return result;
+	}
+
+	/**
+	 * Matches the characters of the regular expression {@code \s}.
+	 */
+	private static boolean isTrailingSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+}
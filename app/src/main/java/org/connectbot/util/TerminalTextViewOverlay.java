@@ -28,6 +28,7 @@ import android.graphics.Typeface;
 import android.os.Build;
 import android.support.v4.view.MotionEventCompat;
 import android.text.ClipboardManager;
+import android.text.Editable;
 import android.view.ActionMode;
 import android.view.InputDevice;
 import android.view.KeyEvent;
@@ -53,6 +54,8 @@ public class TerminalTextViewOverlay extends TextView {
 	private ActionMode selectionActionMode;
 	private ClipboardManager clipboard;
 
+	private final TerminalTextModel textModel = new TerminalTextModel();
+
 	private int oldBufferHeight = 0;
 	private int oldScrollY = -1;
 
@@ -66,28 +69,27 @@ public class TerminalTextViewOverlay extends TextView {
 		setTypeface(Typeface.MONOSPACE);
 		setTextIsSelectable(true);
 		setCustomSelectionActionModeCallback(new TextSelectionActionModeCallback());
+
+		// Show our model's Editable directly rather than a copy of it, so that
+		// edits to it only relayout the rows that changed.
+		setEditableFactory(new Editable.Factory() {
+			@Override
+			public Editable newEditable(CharSequence source) {
+				if (source == textModel.getText())
+					return textModel.getText();
+				return super.newEditable(source);
+			}
+		});
+		setText(textModel.getText(), BufferType.EDITABLE);
 	}
 
 	public void refreshTextFromBuffer() {
 		VDUBuffer vb = terminalView.bridge.getVDUBuffer();
-		int numRows = vb.getBufferSize();
-		int numCols = vb.getColumns() - 1;
-		oldBufferHeight = numRows;
+		oldBufferHeight = vb.getBufferSize();
 
-		String line = "";
-		String buffer = "";
-
-		for (int r = 0; r < numRows && vb.charArray[r] != null; r++) {
-			for (int c = 0; c < numCols; c++) {
-				line += vb.charArray[r][c];
-			}
-			buffer += line.replaceAll("\\s+$", "") + "\n";
-			line = "";
-		}
+		textModel.update(vb);
 
 		oldScrollY = vb.getWindowBase() * getLineHeight();
-
-		setText(buffer);
 	}
 
 	/**
@@ -104,15 +106,10 @@ public class TerminalTextViewOverlay extends TextView {
 			return;
 		}
 
-		String newLines = "";
-		for (int i = 0; i < numNewRows; i++) {
-			newLines += "\n";
-		}
-
 		oldScrollY = (vb.getWindowBase() + numNewRows) * getLineHeight();
 		oldBufferHeight = numRows;
 
-		append(newLines);
+		textModel.appendBlankLines(numNewRows);
 	}
 
 	@Override
@@ -152,7 +149,7 @@ public class TerminalTextViewOverlay extends TextView {
 	@Override
 	protected void onSelectionChanged(int selStart, int selEnd) {
 		if (selStart <= selEnd) {
-			currentSelection = getText().toString().substring(selStart, selEnd);
+			currentSelection = getText().subSequence(selStart, selEnd).toString();
 		}
 		super.onSelectionChanged(selStart, selEnd);
 	}
@@ -264,7 +261,7 @@ public class TerminalTextViewOverlay extends TextView {
 					selectionEnd = tempStart;
 				}
 
-				currentSelection = getText().toString().substring(selectionStart, selectionEnd);
+				currentSelection = getText().subSequence(selectionStart, selectionEnd).toString();
 			}
 		} else if (event.getAction() == MotionEvent.ACTION_DOWN) {
 			terminalView.viewPager.setPagingEnabled(false);
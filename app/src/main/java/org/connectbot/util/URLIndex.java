@@ -0,0 +1,260 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mud.terminal.VDUBuffer;
+
+/**
+ * Finds URLs on the screen and in the scrollback of a {@link VDUBuffer}. The
+ * URLs found in each row are cached by the row's array. The buffer only ever
+ * writes to rows on the screen, so rows in the scrollback are taken as they
+ * were and rows on the screen are compared by a hash of their contents; a
+ * scan only has to look again at rows that were written to since the last
+ * one.
+ * <p>
+ * Instead of a full RFC 3986 regular expression this looks for a scheme
+ * followed by "://" (or "mailto:") and then takes every character that may
+ * appear in a URI. A URL that runs into the last column is joined with the
+ * start of the next row, since long URLs are usually wrapped.
+ */
+public class URLIndex {
+	private static final String TRAILING_PUNCTUATION = ".,;:!?'\"";
+
+	/**
+	 * What we found in a single row, keyed by the row's array in the buffer.
+	 */
+	private static class Row {
+		/** Hash of the row's contents when it was scanned. */
+		final int hash;
+		/** Whether the row was on the screen, where it may still change. */
+		boolean onScreen;
+		/** URLs that start and end within the row. */
+		final List<String> urls = new ArrayList<String>();
+		/** A URL running into the last column, or {@code null}. */
+		String tail;
+		/** The run of URI characters at the start of the row. */
+		String head;
+		/** Whether the first of {@link #urls} starts in the first column. */
+		boolean urlAtStart;
+
+		Row(char[] row) {
+			hash = Arrays.hashCode(row);
+		}
+	}
+
+	private Map<char[], Row> rows = new IdentityHashMap<char[], Row>();
+	private int lastRescanned = 0;
+
+	/**
+	 * @return every distinct URL in the buffer from the oldest row down
+	 */
+	public List<String> scan(VDUBuffer buffer) {
+		Set<String> found = new LinkedHashSet<String>();
+
+		synchronized (buffer) {
+			Map<char[], Row> scanned = new IdentityHashMap<char[], Row>();
+			int rescanned = 0;
+			String carry = null;
+
+			int numRows = buffer.getBufferSize();
+			for (int r = 0; r < numRows && buffer.charArray[r] != null; r++) {
+				char[] chars = buffer.charArray[r];
+
+				Row row = rows.get(chars);
+				if (row == null || (row.onScreen && row.hash != Arrays.hashCode(chars))) {
+					row = scanRow(chars);
+					rescanned++;
+				}
+				row.onScreen = r >= buffer.screenBase;
+				scanned.put(chars, row);
+
+				int first = 0;
+				if (carry != null) {
+					if (row.head.length() == chars.length) {
+						// the whole row continues the URL
+						carry += row.head;
+						continue;
+					}
+
+					addURL(found, carry + row.head);
+					carry = null;
+					if (row.head.length() > 0 && row.urlAtStart)
+						first = 1;
+				}
+
+				for (int i = first; i < row.urls.size(); i++)
+					found.add(row.urls.get(i));
+
+				carry = row.tail;
+			}
+
+			if (carry != null)
+				addURL(found, carry);
+
+			// forget rows that are no longer in the buffer
+			rows = scanned;
+			lastRescanned = rescanned;
+		}
+
+		return new ArrayList<String>(found);
+	}
+
+	/**
+	 * @return the number of rows that had changed since the previous
+	 *         {@link #scan(VDUBuffer)} and had to be scanned again
+	 */
+	public int getLastRescanned() {
+		return lastRescanned;
+	}
+
+	private static void addURL(Set<String> found, String url) {
+		url = trimURL(url);
+		if (url != null)
+			found.add(url);
+	}
+
+	private static Row scanRow(char[] chars) {
+		Row row = new Row(chars);
+		int width = chars.length;
+
+		int headEnd = 0;
+		while (headEnd < width && isURIChar(chars[headEnd]))
+			headEnd++;
+		row.head = new String(chars, 0, headEnd);
+
+		int i = 0;
+		while (i < width) {
+			int start = findURLStart(chars, i, width);
+			if (start < 0)
+				break;
+
+			int end = start;
+			while (end < width && isURIChar(chars[end]))
+				end++;
+
+			if (end == width) {
+				row.tail = new String(chars, start, end - start);
+			} else {
+				String url = trimURL(new String(chars, start, end - start));
+				if (url != null) {
+					if (row.urls.isEmpty() && start == 0)
+						row.urlAtStart = true;
+					row.urls.add(url);
+				}
+			}
+
+			i = end;
+		}
+
+		return row;
+	}
+
+	/**
+	 * Look for the next "scheme://" or "mailto:" starting at or after
+	 * {@code from}.
+	 *
+	 * @return index of the first character of the scheme, or -1 if there is
+	 *         none before {@code width}
+	 */
+	private static int findURLStart(char[] chars, int from, int width) {
+		for (int colon = from + 1; colon < width; colon++) {
+			if (chars[colon] != ':')
+				continue;
+
+			int start = colon;
+			while (start > from && isSchemeChar(chars[start - 1]))
+				start--;
+			// schemes must begin with a letter
+			while (start < colon && !isLetter(chars[start]))
+				start++;
+			if (start == colon)
+				continue;
+
+			if (colon + 3 < width && chars[colon + 1] == '/' && chars[colon + 2] == '/'
+					&& isURIChar(chars[colon + 3]))
+				return start;
+
+			if (colon - start == 6 && colon + 1 < width && isURIChar(chars[colon + 1])
+					&& "mailto".equalsIgnoreCase(new String(chars, start, 6)))
+				return start;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Drop punctuation that more likely ends the surrounding sentence than
+	 * the URL itself, such as a final period or an unmatched parenthesis.
+	 *
+	 * @return the URL, or {@code null} if nothing is left of it
+	 */
+	private static String trimURL(String url) {
+		int open = 0;
+		int close = 0;
+		for (int i = 0; i < url.length(); i++) {
+			char c = url.charAt(i);
+			if (c == '(')
+				open++;
+			else if (c == ')')
+				close++;
+		}
+
+		int end = url.length();
+		while (end > 0) {
+			char c = url.charAt(end - 1);
+			if (TRAILING_PUNCTUATION.indexOf(c) >= 0) {
+				end--;
+			} else if (c == ')' && close > open) {
+				close--;
+				end--;
+			} else {
+				break;
+			}
+		}
+
+		if (url.indexOf(':') < 0 || url.indexOf(':') >= end - 1)
+			return null;
+
+		return url.substring(0, end);
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+	}
+
+	private static boolean isSchemeChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+	}
+
+	/**
+	 * @return whether {@code c} may appear in a URI, escaped or not
+	 */
+	private static boolean isURIChar(char c) {
+		if (isLetter(c) || (c >= '0' && c <= '9'))
+			return true;
+		return "-._~%!$&'()*+,;=:/?#@[]".indexOf(c) >= 0;
+	}
+}
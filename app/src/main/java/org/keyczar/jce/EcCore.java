@@ -212,10 +212,10 @@ public final class EcCore {
 //    throw new IllegalArgumentException("Unsupport EC parameters");
 //  }
 //
-//  private static final BigInteger ZERO = BigInteger.ZERO;
-//  private static final BigInteger ONE = BigInteger.ONE;
 //  private static final BigInteger TWO = BigInteger.valueOf(2);
 // END connectbot-removed
+  private static final BigInteger ZERO = BigInteger.ZERO;
+  private static final BigInteger ONE = BigInteger.ONE;
   private static final BigInteger THREE = BigInteger.valueOf(3);
 // BEGIN connectbot-removed
 //  private static final BigInteger FOUR = BigInteger.valueOf(4);
@@ -267,6 +267,150 @@ public final class EcCore {
     return Q;
   }
 
+// BEGIN connectbot-added
+  // Width of the fixed window used by multiplyPoint
+  private static final int WINDOW_BITS = 4;
+  private static final int TABLE_SIZE = 1 << (WINDOW_BITS - 1);
+
+  // Jacobian doubling, P = (X, Y, Z) with Z == 0 being the point at infinity
+  private static BigInteger[] doublePointJ(BigInteger[] P,
+      ECParameterSpec params) {
+    final BigInteger p = ((ECFieldFp) params.getCurve().getField()).getP();
+    final BigInteger a = params.getCurve().getA();
+
+    if (P[2].signum() == 0 || P[1].signum() == 0)
+      return new BigInteger[] {ONE, ONE, ZERO};
+
+    BigInteger Y2 = P[1].multiply(P[1]).mod(p);
+    BigInteger S = P[0].multiply(Y2).shiftLeft(2).mod(p);
+    BigInteger Z2 = P[2].multiply(P[2]).mod(p);
+    BigInteger M = P[0].multiply(P[0]).multiply(THREE)
+        .add(a.multiply(Z2.multiply(Z2))).mod(p);
+
+    BigInteger X3 = M.multiply(M).subtract(S.shiftLeft(1)).mod(p);
+    BigInteger Y3 = M.multiply(S.subtract(X3))
+        .subtract(Y2.multiply(Y2).shiftLeft(3)).mod(p);
+    BigInteger Z3 = P[1].multiply(P[2]).shiftLeft(1).mod(p);
+
+    return new BigInteger[] {X3, Y3, Z3};
+  }
+
+  // Jacobian addition of two Jacobian points
+  private static BigInteger[] addPointsJ(BigInteger[] P1, BigInteger[] P2,
+      ECParameterSpec params) {
+    final BigInteger p = ((ECFieldFp) params.getCurve().getField()).getP();
+
+    if (P1[2].signum() == 0) return P2;
+
+    if (P2[2].signum() == 0) return P1;
+
+    BigInteger Z1Z1 = P1[2].multiply(P1[2]).mod(p);
+    BigInteger Z2Z2 = P2[2].multiply(P2[2]).mod(p);
+    BigInteger U1 = P1[0].multiply(Z2Z2).mod(p);
+    BigInteger U2 = P2[0].multiply(Z1Z1).mod(p);
+    BigInteger S1 = P1[1].multiply(P2[2]).multiply(Z2Z2).mod(p);
+    BigInteger S2 = P2[1].multiply(P1[2]).multiply(Z1Z1).mod(p);
+    BigInteger H = U2.subtract(U1).mod(p);
+    BigInteger r = S2.subtract(S1).mod(p);
+
+    if (H.signum() == 0) {
+      if (r.signum() == 0) return doublePointJ(P1, params);
+      return new BigInteger[] {ONE, ONE, ZERO};
+    }
+
+    BigInteger H2 = H.multiply(H).mod(p);
+    BigInteger H3 = H2.multiply(H).mod(p);
+    BigInteger U1H2 = U1.multiply(H2).mod(p);
+
+    BigInteger X3 = r.multiply(r).subtract(H3).subtract(U1H2.shiftLeft(1))
+        .mod(p);
+    BigInteger Y3 = r.multiply(U1H2.subtract(X3)).subtract(S1.multiply(H3))
+        .mod(p);
+    BigInteger Z3 = P1[2].multiply(P2[2]).multiply(H).mod(p);
+
+    return new BigInteger[] {X3, Y3, Z3};
+  }
+
+  // Convert a Jacobian point to affine, {null, null} being the point at inf
+  private static BigInteger[] toAffine(BigInteger[] P, ECParameterSpec params) {
+    final BigInteger p = ((ECFieldFp) params.getCurve().getField()).getP();
+
+    if (P[2].signum() == 0) return new BigInteger[] {null, null};
+
+    BigInteger zInv = P[2].modInverse(p);
+    BigInteger zInv2 = zInv.multiply(zInv).mod(p);
+    return new BigInteger[] {
+        P[0].multiply(zInv2).mod(p),
+        P[1].multiply(zInv2).multiply(zInv).mod(p)};
+  }
+
+  /**
+   * Computes kP like {@link #multiplyPointA} but in Jacobian coordinates with
+   * a fixed window, so only a single inversion is needed at the very end.
+   *
+   * The scalar is recoded into odd signed digits (Joye-Tunstall), so every
+   * window costs the same doublings and one addition, and table entries are
+   * read by scanning the whole table. The sequence of point operations thus
+   * does not depend on the bits of k. P must be of order n, as is the case
+   * for every point on the NIST curves.
+   */
+  public static BigInteger[] multiplyPoint(BigInteger[] P, BigInteger k,
+      ECParameterSpec params) {
+    final BigInteger p = ((ECFieldFp) params.getCurve().getField()).getP();
+    final BigInteger n = params.getOrder();
+
+    // kP == (k + n)P, and one of the two is odd as n is odd
+    BigInteger kn = k.mod(n);
+    BigInteger[] candidates = new BigInteger[] {kn.add(n), kn};
+    BigInteger h = candidates[kn.testBit(0) ? 1 : 0];
+
+    // table[i] = (2i + 1)P
+    BigInteger[][] table = new BigInteger[TABLE_SIZE][];
+    table[0] = new BigInteger[] {P[0], P[1], ONE};
+    BigInteger[] P2 = doublePointJ(table[0], params);
+    for (int i = 1; i < TABLE_SIZE; i++)
+      table[i] = addPointsJ(table[i - 1], P2, params);
+
+    // Fixed number of digits for the curve, whatever the size of k
+    int windows = (n.bitLength() + 1 + WINDOW_BITS - 1) / WINDOW_BITS + 1;
+    int[] digits = new int[windows];
+    BigInteger mask = BigInteger.ONE.shiftLeft(WINDOW_BITS + 1)
+        .subtract(BigInteger.ONE);
+    for (int i = 0; i < windows - 1; i++) {
+      digits[i] = h.and(mask).intValue() - (1 << WINDOW_BITS);
+      h = h.subtract(BigInteger.valueOf(digits[i])).shiftRight(WINDOW_BITS);
+    }
+    digits[windows - 1] = h.intValue();
+
+    BigInteger[] R = selectPoint(table, digits[windows - 1], p);
+    for (int i = windows - 2; i >= 0; i--) {
+      for (int j = 0; j < WINDOW_BITS; j++)
+        R = doublePointJ(R, params);
+      R = addPointsJ(R, selectPoint(table, digits[i], p), params);
+    }
+
+    return toAffine(R, params);
+  }
+
+  // Returns digit * P for an odd digit, touching every table entry
+  private static BigInteger[] selectPoint(BigInteger[][] table, int digit,
+      BigInteger p) {
+    int sign = digit >>> 31;
+    int index = ((digit ^ -sign) + sign) >>> 1;
+
+    BigInteger[] Q = table[0];
+    for (int i = 1; i < table.length; i++) {
+      // 1 if i == index, 0 otherwise
+      int match = ((i ^ index) - 1) >>> 31;
+      BigInteger[][] choice = new BigInteger[][] {Q, table[i]};
+      Q = choice[match];
+    }
+
+    BigInteger[] y = new BigInteger[] {Q[1], p.subtract(Q[1])};
+    return new BigInteger[] {Q[0], y[sign], Q[2]};
+  }
+// END connectbot-added
+
 // BEGIN connectbot-removed
 //  private static BigInteger[] doublePointJ(BigInteger[] P,
 //      ECParameterSpec params) {
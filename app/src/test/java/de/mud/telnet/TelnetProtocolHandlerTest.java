@@ -0,0 +1,120 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.mud.telnet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TelnetProtocolHandlerTest {
+	private static final byte IAC = (byte) 255;
+	private static final byte WILL = (byte) 251;
+	private static final byte WONT = (byte) 252;
+	private static final byte DO = (byte) 253;
+	private static final byte DONT = (byte) 254;
+	private static final byte TIMING_MARK = 6;
+
+	private ByteArrayOutputStream sent;
+	private int timingMarks;
+	private TelnetProtocolHandler handler;
+
+	@Before
+	public void setUp() {
+		sent = new ByteArrayOutputStream();
+		timingMarks = 0;
+		handler = new TelnetProtocolHandler() {
+			@Override
+			protected String getTerminalType() {
+				return "screen";
+			}
+
+			@Override
+			protected int[] getWindowSize() {
+				return new int[] { 80, 24 };
+			}
+
+			@Override
+			protected void setLocalEcho(boolean echo) {
+			}
+
+			@Override
+			protected void notifyEndOfRecord() {
+			}
+
+			@Override
+			protected void write(byte[] b) {
+				sent.write(b, 0, b.length);
+			}
+
+			@Override
+			protected String getCharsetName() {
+				return "UTF-8";
+			}
+
+			@Override
+			protected void notifyTimingMark() {
+				timingMarks++;
+			}
+		};
+	}
+
+	private void receive(byte... bytes) throws IOException {
+		handler.inputfeed(bytes, 0, bytes.length);
+		byte[] data = new byte[64];
+		while (handler.negotiate(data, 0) >= 0) {
+			// only negotiation, nothing to show
+		}
+	}
+
+	@Test
+	public void timingMark_Answered_Notified() throws Exception {
+		handler.sendTimingMark();
+		assertArrayEquals(new byte[] { IAC, DO, TIMING_MARK }, sent.toByteArray());
+
+		receive(IAC, WILL, TIMING_MARK);
+		assertEquals(1, timingMarks);
+
+		// an answer needs no reply
+		assertEquals(3, sent.size());
+	}
+
+	@Test
+	public void timingMark_Unsolicited_NotCounted() throws Exception {
+		receive(IAC, WILL, TIMING_MARK);
+		// refused like any other option we don't support
+		assertArrayEquals(new byte[] { IAC, DONT, TIMING_MARK }, sent.toByteArray());
+
+		receive(IAC, WONT, TIMING_MARK);
+		assertEquals(0, timingMarks);
+	}
+
+	@Test
+	public void timingMark_MoreAnswersThanRequests_CountsOnlyRequested() throws Exception {
+		handler.sendTimingMark();
+
+		receive(IAC, WONT, TIMING_MARK);
+		receive(IAC, WILL, TIMING_MARK);
+
+		assertEquals(1, timingMarks);
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.bean.HostBean;
+import org.connectbot.mock.MemoryHostStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class HostCatalogueTest {
+	private MemoryHostStorage storage;
+	private HostCatalogue catalogue;
+
+	@Before
+	public void setUp() {
+		storage = new MemoryHostStorage();
+		catalogue = new HostCatalogue(storage);
+	}
+
+	private HostBean addHost(String nickname, String username, String hostname, String color) {
+		HostBean host = new HostBean(nickname, "ssh", username, hostname, 22);
+		host.setColor(color);
+		return storage.saveHost(host);
+	}
+
+	private static List<String> nicknames(List<HostBean> hosts) {
+		List<String> nicknames = new ArrayList<>();
+		for (HostBean host : hosts)
+			nicknames.add(host.getNickname());
+		return nicknames;
+	}
+
+	private static List<String> list(String... nicknames) {
+		List<String> list = new ArrayList<>();
+		for (String nickname : nicknames)
+			list.add(nickname);
+		return list;
+	}
+
+	@Test
+	public void getHosts_SortsByNicknameOrColor() {
+		addHost("web", "root", "web.example.com", "red");
+		addHost("db", "admin", "db.example.com", "blue");
+		addHost("cache", "root", "cache.example.com", "red");
+
+		assertEquals(list("cache", "db", "web"), nicknames(catalogue.getHosts(false)));
+		assertEquals(list("db", "cache", "web"), nicknames(catalogue.getHosts(true)));
+		assertEquals(1, storage.reads);
+	}
+
+	@Test
+	public void filter_LongWords_MatchAnywhereInAnyName() {
+		addHost("web", "root", "web.example.com", null);
+		addHost("db", "admin", "db.internal.net", null);
+		addHost("cache", "deploy", "cache.example.com", null);
+
+		assertEquals(list("cache", "web"), nicknames(catalogue.filter("ample", false)));
+		assertEquals(list("db"), nicknames(catalogue.filter("ADMIN", false)));
+		assertEquals(list("cache"), nicknames(catalogue.filter("xample depl", false)));
+		assertEquals(list(), nicknames(catalogue.filter("nowhere", false)));
+	}
+
+	@Test
+	public void filter_ShortWords_MatchStartOfNames() {
+		addHost("web", "root", "web-01.example.com", null);
+		addHost("db", "admin", "db-02.example.com", null);
+		addHost("ab", "root", "xdb.example.com", null);
+
+		assertEquals(list("db"), nicknames(catalogue.filter("db", false)));
+		assertEquals(list("web"), nicknames(catalogue.filter("01", false)));
+		assertEquals(list("ab", "web"), nicknames(catalogue.filter("r", false)));
+	}
+
+	@Test
+	public void filter_ExtendedQuery_NarrowsPreviousResult() {
+		addHost("web", "root", "web.example.com", null);
+		addHost("webmail", "root", "mail.example.com", null);
+		addHost("db", "root", "db.example.com", null);
+
+		catalogue.filter("we", false);
+		assertEquals(list("web", "webmail"), nicknames(catalogue.filter("web", false)));
+		assertEquals(0, catalogue.getNarrowedSearches());
+
+		assertEquals(list("webmail"), nicknames(catalogue.filter("webm", false)));
+		assertEquals(list("webmail"), nicknames(catalogue.filter("webm ro", false)));
+		assertEquals(2, catalogue.getNarrowedSearches());
+
+		assertEquals(list("db"), nicknames(catalogue.filter("db", false)));
+		assertEquals(2, catalogue.getNarrowedSearches());
+	}
+
+	@Test
+	public void saveAndDelete_UpdateResults() {
+		addHost("web", "root", "web.example.com", null);
+		assertEquals(list("web"), nicknames(catalogue.filter("exam", false)));
+
+		HostBean db = catalogue.saveHost(new HostBean("db", "ssh", "root", "db.example.com", 22));
+		assertEquals(list("db", "web"), nicknames(catalogue.filter("exam", false)));
+
+		db.setHostname("db.internal.net");
+		catalogue.saveHost(db);
+		assertEquals(list("web"), nicknames(catalogue.filter("exam", false)));
+		assertEquals(list("db"), nicknames(catalogue.filter("internal", false)));
+
+		catalogue.deleteHost(db);
+		assertEquals(list(), nicknames(catalogue.filter("internal", false)));
+		assertNull(catalogue.findHostById(db.getId()));
+		assertEquals(1, storage.reads);
+	}
+
+	@Test
+	public void update_SameNames_ReplacesHostWithoutReindexing() {
+		HostBean web = addHost("web", "root", "web.example.com", null);
+		catalogue.getHosts(false);
+
+		HostBean copy = new HostBean("web", "ssh", "root", "web.example.com", 22);
+		copy.setId(web.getId());
+		copy.setLastConnect(1234);
+		catalogue.update(copy);
+
+		assertEquals(1234, catalogue.filter("web", false).get(0).getLastConnect());
+		assertTrue(catalogue.contains(copy));
+		assertFalse(HostCatalogue.matches(copy, "db"));
+	}
+
+	/**
+	 * @return a separate copy of {@code host}, as a session would hold
+	 */
+	private static HostBean copyOf(HostBean host) {
+		HostBean copy = HostBean.fromContentValues(host.getValues());
+		copy.setId(host.getId());
+		return copy;
+	}
+
+	@Test
+	public void getHosts_OverWriteBehindStorage_IncludesHeldBackSaves() {
+		HostBean web = addHost("web", "root", "web.example.com", "red");
+		WriteBehindHostStorage writer = new WriteBehindHostStorage(storage, 60000);
+		try {
+			HostBean session = copyOf(web);
+			session.setFontSize(20);
+			writer.saveHost(session);
+
+			HostCatalogue list = new HostCatalogue(writer);
+			assertEquals(20, list.findHostById(web.getId()).getFontSize());
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	@Test
+	public void saveHost_OverWriteBehindStorage_NotUndoneByHeldBackSave() {
+		HostBean web = addHost("web", "root", "web.example.com", "red");
+		WriteBehindHostStorage writer = new WriteBehindHostStorage(storage, 60000);
+		try {
+			HostBean session = copyOf(web);
+			session.setFontSize(20);
+			writer.saveHost(session);
+
+			HostBean edited = copyOf(web);
+			edited.setNickname("www");
+			new HostCatalogue(writer).saveHost(edited);
+
+			writer.flush();
+			assertEquals("www", storage.hosts.get(web.getId()).getNickname());
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	@Test
+	public void filter_ManyHosts_MatchesFullScan() {
+		String[] words = { "web", "db", "mail", "cache", "prod", "staging", "eu", "us", "01", "02", "lb" };
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			String nickname = words[random.nextInt(words.length)] + "-" + i;
+			String hostname = words[random.nextInt(words.length)] + "." + words[random.nextInt(words.length)]
+					+ ".example.com";
+			addHost(nickname, words[random.nextInt(words.length)], hostname, null);
+		}
+
+		String[] queries = { "w", "we", "web", "web.", "web.p", "web pr", "web prod", "ail", "s", "st",
+				"sta", "01", "1", "12", "123", "-1", "e", "ex", "exa", "example mail db" };
+		for (String query : queries) {
+			List<HostBean> expected = new ArrayList<>();
+			for (HostBean host : catalogue.getHosts(false)) {
+				if (HostCatalogue.matches(host, query))
+					expected.add(host);
+			}
+			catalogue.getHosts(false);
+
+			// once from scratch, then again narrowed from a shorter query
+			assertEquals(query, expected, catalogue.filter(query, false));
+			catalogue.filter(query.substring(0, query.length() - 1), false);
+			assertEquals(query, expected, catalogue.filter(query, false));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.data;
+
+import java.util.List;
+import java.util.Random;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.bean.HostBean;
+import org.connectbot.mock.MemoryHostStorage;
+import org.connectbot.mock.Timing;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * How long the host list takes to filter 10,000 hosts for each key the
+ * user types, compared with checking every host in turn.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class HostCatalogueTimingTest {
+	private static final int HOSTS = 10000;
+	private static final int RUNS = 5;
+
+	private static final String[] WORDS = { "web", "db", "mail", "cache", "prod", "staging",
+			"eu", "us", "01", "02", "lb" };
+
+	private static final String[] TYPED = { "web-1", "prod db", "example mail" };
+
+	private MemoryHostStorage storage;
+
+	@Before
+	public void setUp() {
+		Timing.assumeRequested();
+
+		storage = new MemoryHostStorage();
+		Random random = new Random(42);
+		for (int i = 0; i < HOSTS; i++) {
+			String nickname = WORDS[random.nextInt(WORDS.length)] + "-" + i;
+			String hostname = WORDS[random.nextInt(WORDS.length)] + "." + WORDS[random.nextInt(WORDS.length)]
+					+ ".example.com";
+			storage.saveHost(new HostBean(nickname, "ssh", WORDS[random.nextInt(WORDS.length)], hostname, 22));
+		}
+	}
+
+	@Test
+	public void filter_TenThousandHosts_PerKeystroke() {
+		// let the JIT see the code once before measuring
+		typeAll(new HostCatalogue(storage));
+
+		long load = 0;
+		long[] typed = new long[TYPED.length];
+		long[] scanned = new long[TYPED.length];
+		for (int run = 0; run < RUNS; run++) {
+			HostCatalogue catalogue = new HostCatalogue(storage);
+
+			long start = System.nanoTime();
+			catalogue.getHosts(false);
+			load += System.nanoTime() - start;
+
+			List<HostBean> all = catalogue.getHosts(false);
+			for (int i = 0; i < TYPED.length; i++) {
+				typed[i] += type(catalogue, TYPED[i]);
+				scanned[i] += scan(all, TYPED[i]);
+
+				assertEquals(countMatches(all, TYPED[i]), catalogue.filter(TYPED[i], false).size());
+			}
+		}
+
+		Timing.report("host catalogue of %d hosts: %.1f ms to load and index",
+				HOSTS, Timing.millis(load / RUNS));
+		for (int i = 0; i < TYPED.length; i++) {
+			int keys = TYPED[i].length();
+			Timing.report("  typing \"%s\": %.3f ms per key, %.3f ms per key checking every host",
+					TYPED[i], Timing.millis(typed[i] / RUNS / keys), Timing.millis(scanned[i] / RUNS / keys));
+		}
+	}
+
+	private static void typeAll(HostCatalogue catalogue) {
+		List<HostBean> all = catalogue.getHosts(false);
+		for (String query : TYPED) {
+			type(catalogue, query);
+			scan(all, query);
+		}
+	}
+
+	/**
+	 * Filter for each prefix of the query in turn, as the search box does.
+	 * @return nanoseconds taken
+	 */
+	private static long type(HostCatalogue catalogue, String query) {
+		long start = System.nanoTime();
+		for (int end = 1; end <= query.length(); end++)
+			catalogue.filter(query.substring(0, end), false);
+		long elapsed = System.nanoTime() - start;
+
+		catalogue.filter("", false);
+		return elapsed;
+	}
+
+	/**
+	 * Check every host against each prefix of the query.
+	 * @return nanoseconds taken
+	 */
+	private static long scan(List<HostBean> all, String query) {
+		long start = System.nanoTime();
+		for (int end = 1; end <= query.length(); end++)
+			countMatches(all, query.substring(0, end));
+		return System.nanoTime() - start;
+	}
+
+	private static int countMatches(List<HostBean> all, String query) {
+		int found = 0;
+		for (HostBean host : all) {
+			if (HostCatalogue.matches(host, query))
+				found++;
+		}
+		return found;
+	}
+}
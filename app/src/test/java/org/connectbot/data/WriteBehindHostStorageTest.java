@@ -0,0 +1,187 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.data;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.connectbot.util.HostImporter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class WriteBehindHostStorageTest {
+	/** Records the writes that reach it. */
+	private static class RecordingStorage implements HostStorage {
+		final List<String> writes = new ArrayList<>();
+		int transactions = 0;
+
+		public void resetDatabase() {
+		}
+
+		public HostBean findHost(Map<String, String> selection) {
+			return null;
+		}
+
+		public void deleteHost(HostBean host) {
+			writes.add("delete " + host.getId());
+		}
+
+		public HostBean saveHost(HostBean host) {
+			if (host.getId() < 0)
+				host.setId(100);
+			writes.add("save " + host.getId() + " " + host.getFontSize());
+			return host;
+		}
+
+		public List<HostBean> getHosts(boolean sortedByColor) {
+			return Collections.emptyList();
+		}
+
+		public void touchHost(HostBean host) {
+			writes.add("touch " + host.getId());
+		}
+
+		public HostBean findHostById(long hostId) {
+			return null;
+		}
+
+		public int verifyKnownHost(String hostname, int port, String algorithm, byte[] key) {
+			return 0;
+		}
+
+		public void saveKnownHost(String hostname, int port, String algorithm, byte[] key) {
+			writes.add("knownhost " + hostname + ":" + port + " " + key.length);
+		}
+
+		public int importKnownHosts(Reader reader) {
+			return 0;
+		}
+
+		public HostImporter.Result importHosts(HostImporter importer) {
+			return new HostImporter.Result();
+		}
+
+		public List<PortForwardBean> getPortForwardsForHost(HostBean host) {
+			return Collections.emptyList();
+		}
+
+		public void runInTransaction(Runnable writes) {
+			transactions++;
+			writes.run();
+		}
+	}
+
+	private RecordingStorage storage;
+	private WriteBehindHostStorage writer;
+
+	@Before
+	public void setUp() {
+		storage = new RecordingStorage();
+		// long enough that only explicit flushes write during a test
+		writer = new WriteBehindHostStorage(storage, 60000);
+	}
+
+	private static HostBean makeHost(long id) {
+		HostBean host = new HostBean();
+		host.setId(id);
+		return host;
+	}
+
+	@Test
+	public void saveHost_RepeatedUpdates_WrittenOnce() {
+		HostBean host = makeHost(1);
+		for (int size = 10; size <= 14; size++) {
+			host.setFontSize(size);
+			writer.saveHost(host);
+		}
+		assertEquals(0, storage.writes.size());
+
+		writer.flush();
+		assertEquals(1, storage.transactions);
+		assertEquals(Collections.singletonList("save 1 14"), storage.writes);
+		assertEquals(5, writer.getWritesRequested());
+		assertEquals(4, writer.getWritesAvoided());
+	}
+
+	@Test
+	public void saveHost_NewHost_WrittenImmediately() {
+		HostBean host = writer.saveHost(makeHost(-1));
+
+		assertEquals(100, host.getId());
+		assertEquals(1, storage.writes.size());
+	}
+
+	@Test
+	public void flush_SingleTransactionForAllHosts() {
+		writer.saveHost(makeHost(1));
+		writer.touchHost(makeHost(1));
+		writer.touchHost(makeHost(2));
+		writer.saveKnownHost("example.com", 22, "ssh-rsa", new byte[3]);
+		writer.saveKnownHost("example.com", 22, "ssh-rsa", new byte[4]);
+
+		writer.flush();
+		assertEquals(1, storage.transactions);
+		assertEquals(4, storage.writes.size());
+		assertEquals("save 1 0", storage.writes.get(0));
+		assertEquals("knownhost example.com:22 4", storage.writes.get(3));
+		assertEquals(1, writer.getWritesAvoided());
+	}
+
+	@Test
+	public void read_FlushesPendingWrites() {
+		writer.touchHost(makeHost(1));
+
+		writer.getHosts(false);
+		assertEquals(Collections.singletonList("touch 1"), storage.writes);
+	}
+
+	@Test
+	public void deleteHost_DropsPendingWrites() {
+		HostBean host = makeHost(1);
+		writer.saveHost(host);
+		writer.touchHost(host);
+		writer.deleteHost(host);
+
+		writer.flush();
+		assertEquals(Collections.singletonList("delete 1"), storage.writes);
+		assertEquals(0, storage.transactions);
+	}
+
+	@Test
+	public void shutdown_FlushesAndWritesThrough() {
+		writer.touchHost(makeHost(1));
+		writer.shutdown();
+		assertEquals(Collections.singletonList("touch 1"), storage.writes);
+
+		writer.touchHost(makeHost(2));
+		assertEquals(2, storage.writes.size());
+	}
+}
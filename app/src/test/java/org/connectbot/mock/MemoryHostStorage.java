@@ -0,0 +1,92 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.connectbot.data.HostStorage;
+import org.connectbot.util.HostImporter;
+
+/**
+ * Keeps hosts in a map and counts how often they are read.
+ */
+public class MemoryHostStorage implements HostStorage {
+	public final Map<Long, HostBean> hosts = new LinkedHashMap<>();
+	private long nextId = 1;
+	public int reads = 0;
+
+	public void resetDatabase() {
+		hosts.clear();
+	}
+
+	public HostBean findHost(Map<String, String> selection) {
+		return null;
+	}
+
+	public void deleteHost(HostBean host) {
+		hosts.remove(host.getId());
+	}
+
+	public HostBean saveHost(HostBean host) {
+		if (host.getId() < 0)
+			host.setId(nextId++);
+		hosts.put(host.getId(), host);
+		return host;
+	}
+
+	public List<HostBean> getHosts(boolean sortedByColor) {
+		reads++;
+		return new ArrayList<>(hosts.values());
+	}
+
+	public void touchHost(HostBean host) {
+	}
+
+	public HostBean findHostById(long hostId) {
+		return hosts.get(hostId);
+	}
+
+	public int verifyKnownHost(String hostname, int port, String algorithm, byte[] key) {
+		return 0;
+	}
+
+	public void saveKnownHost(String hostname, int port, String algorithm, byte[] key) {
+	}
+
+	public int importKnownHosts(Reader reader) {
+		return 0;
+	}
+
+	public HostImporter.Result importHosts(HostImporter importer) {
+		return new HostImporter.Result();
+	}
+
+	public List<PortForwardBean> getPortForwardsForHost(HostBean host) {
+		return new ArrayList<>();
+	}
+
+	public void runInTransaction(Runnable writes) {
+		writes.run();
+	}
+}
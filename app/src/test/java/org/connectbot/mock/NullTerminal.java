@@ -0,0 +1,59 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import de.mud.terminal.VDUBuffer;
+import de.mud.terminal.VDUDisplay;
+import de.mud.terminal.vt320;
+
+/**
+ * A terminal emulator with nothing on either end: whatever it would send to
+ * the host and whatever it would ask the display to do goes nowhere, so
+ * tests can print into it and look at the buffer.
+ */
+public class NullTerminal extends vt320 {
+	public NullTerminal(int columns, int rows, int scrollback) {
+		setDisplay(new VDUDisplay() {
+			@Override
+			public void redraw() {}
+			@Override
+			public void updateScrollBar() {}
+			@Override
+			public void setVDUBuffer(VDUBuffer buffer) {}
+			@Override
+			public VDUBuffer getVDUBuffer() { return NullTerminal.this; }
+			@Override
+			public void setColor(int index, int red, int green, int blue) {}
+			@Override
+			public void resetColors() {}
+		});
+		setBufferSize(scrollback);
+		setScreenSize(columns, rows, false);
+	}
+
+	@Override
+	public void write(byte[] b) {}
+	@Override
+	public void write(int b) {}
+	@Override
+	public void sendTelnetCommand(byte cmd) {}
+	@Override
+	public void setWindowSize(int c, int r) {}
+	@Override
+	public void debug(String s) {}
+}
@@ -0,0 +1,66 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.io.InputStream;
+import java.util.LinkedList;
+
+/**
+ * Stands in for the stream of an SSH channel: data arrives as packets and
+ * each read hands out at most what is left of the packet at the front, as a
+ * server sending small packets would.
+ */
+public class PacketStream extends InputStream {
+	private final LinkedList<byte[]> packets = new LinkedList<>();
+	private int offset = 0;
+	private int available = 0;
+
+	public void arrive(byte[] packet) {
+		packets.add(packet);
+		available += packet.length;
+	}
+
+	@Override
+	public int read() {
+		byte[] one = new byte[1];
+		return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] buffer, int start, int len) {
+		if (packets.isEmpty())
+			return 0;
+
+		byte[] packet = packets.getFirst();
+		int n = Math.min(len, packet.length - offset);
+		System.arraycopy(packet, offset, buffer, start, n);
+		offset += n;
+		available -= n;
+
+		if (offset == packet.length) {
+			packets.removeFirst();
+			offset = 0;
+		}
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return available;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+
+import org.connectbot.bean.HostBean;
+import org.connectbot.transport.AbsTransport;
+
+import android.net.Uri;
+
+/**
+ * Plays a {@link Trace} back as if a host were sending it, either as fast as
+ * it is read or with the delays it was captured with. Reading past the end
+ * throws {@link EOFException}, which ends a {@link org.connectbot.service.Relay}
+ * the same way a dropped connection does. Anything written is counted and
+ * thrown away.
+ */
+public class ReplayTransport extends AbsTransport {
+	private final Trace trace;
+	private final boolean realTime;
+
+	private int chunk;
+	private int offset;
+	private long due;
+	private long position;
+	private long written;
+	private boolean closed;
+
+	/**
+	 * @param realTime whether to wait out the captured delay before each
+	 *        chunk instead of handing it over straight away
+	 */
+	public ReplayTransport(Trace trace, boolean realTime) {
+		this.trace = trace;
+		this.realTime = realTime;
+		rewind();
+	}
+
+	/**
+	 * Start the trace again from the beginning.
+	 */
+	public synchronized void rewind() {
+		chunk = 0;
+		offset = 0;
+		due = -1;
+		position = 0;
+		written = 0;
+		closed = false;
+	}
+
+	@Override
+	public synchronized int read(byte[] buffer, int start, int length) throws IOException {
+		List<Trace.Chunk> chunks = trace.getChunks();
+		if (closed || chunk >= chunks.size())
+			throw new EOFException("End of trace " + trace.getName());
+
+		Trace.Chunk current = chunks.get(chunk);
+		if (offset == 0 && realTime)
+			waitFor(current.delayMillis);
+
+		int count = Math.min(length, current.data.length - offset);
+		System.arraycopy(current.data, offset, buffer, start, count);
+		offset += count;
+		position += count;
+		if (offset == current.data.length) {
+			chunk++;
+			offset = 0;
+		}
+		return count;
+	}
+
+	private void waitFor(long delayMillis) throws IOException {
+		long now = System.currentTimeMillis();
+		due = (due < 0 ? now : due) + delayMillis;
+		try {
+			while (now < due) {
+				wait(due - now);
+				now = System.currentTimeMillis();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Replay of " + trace.getName() + " interrupted");
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the trace read so far
+	 */
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the number of bytes written to the transport
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	@Override
+	public synchronized void write(byte[] buffer) throws IOException {
+		written += buffer.length;
+	}
+
+	@Override
+	public synchronized void write(int c) throws IOException {
+		written++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+	}
+
+	@Override
+	public void connect() {
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+	}
+
+	@Override
+	public void setDimensions(int columns, int rows, int width, int height) {
+	}
+
+	@Override
+	public synchronized boolean isConnected() {
+		return !closed && chunk < trace.getChunks().size();
+	}
+
+	@Override
+	public boolean isSessionOpen() {
+		return isConnected();
+	}
+
+	@Override
+	public int getDefaultPort() {
+		return 0;
+	}
+
+	@Override
+	public String getDefaultNickname(String username, String hostname, int port) {
+		return null;
+	}
+
+	@Override
+	public void getSelectionArgs(Uri uri, Map<String, String> selection) {
+	}
+
+	@Override
+	public HostBean createHost(Uri uri) {
+		return null;
+	}
+
+	@Override
+	public boolean usesNetwork() {
+		return false;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Support for tests that report how long something takes instead of
+ * checking what it does. They are skipped unless the build is run with
+ * {@code -PtimingTests}, so the regular suite stays fast and quiet.
+ */
+public final class Timing {
+	private static final String PROPERTY = "connectbot.timingTests";
+
+	private Timing() {
+	}
+
+	/**
+	 * Skip the calling test unless timing tests were asked for.
+	 */
+	public static void assumeRequested() {
+		assumeTrue("run with -PtimingTests", Boolean.getBoolean(PROPERTY));
+	}
+
+	public static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	public static void report(String format, Object... args) {
+		System.out.println(String.format(Locale.US, format, args));
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bytes a host sent during a session, in the reads they arrived in and with
+ * the time between them.
+ */
+public class Trace {
+	public static final class Chunk {
+		public final byte[] data;
+		/** Time since the previous chunk arrived. */
+		public final long delayMillis;
+
+		public Chunk(byte[] data, long delayMillis) {
+			this.data = data;
+			this.delayMillis = delayMillis;
+		}
+	}
+
+	private final String name;
+	private final List<Chunk> chunks;
+	private final long size;
+
+	public Trace(String name, List<Chunk> chunks) {
+		this.name = name;
+		this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+
+		long size = 0;
+		for (Chunk chunk : chunks)
+			size += chunk.data.length;
+		this.size = size;
+	}
+
+	/**
+	 * Cut {@code data} into reads of {@code chunkSize} bytes arriving
+	 * {@code delayMillis} apart.
+	 */
+	public static Trace split(String name, byte[] data, int chunkSize, long delayMillis) {
+		List<Chunk> chunks = new ArrayList<>();
+		for (int offset = 0; offset < data.length; offset += chunkSize) {
+			int length = Math.min(chunkSize, data.length - offset);
+			byte[] chunk = new byte[length];
+			System.arraycopy(data, offset, chunk, 0, length);
+			chunks.add(new Chunk(chunk, offset == 0 ? 0 : delayMillis));
+		}
+		return new Trace(name, chunks);
+	}
+
+	/**
+	 * Read the output events of an asciicast v2 recording, such as one
+	 * written by {@link org.connectbot.service.SessionRecorder}.
+	 */
+	public static Trace fromAsciicast(String name, Reader in, String encoding) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		List<Chunk> chunks = new ArrayList<>();
+		long last = 0;
+
+		// the first line is the header
+		String line = reader.readLine();
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (!line.startsWith("["))
+				continue;
+
+			int comma = line.indexOf(',');
+			long at = Math.round(Double.parseDouble(line.substring(1, comma).trim()) * 1000);
+			int typeStart = line.indexOf('"', comma) + 1;
+			if (line.charAt(typeStart) != 'o' || line.charAt(typeStart + 1) != '"')
+				continue;
+
+			int dataStart = line.indexOf('"', typeStart + 2) + 1;
+			String data = unquote(line, dataStart);
+			chunks.add(new Chunk(data.getBytes(encoding), Math.max(0, at - last)));
+			last = at;
+		}
+		return new Trace(name, chunks);
+	}
+
+	private static String unquote(String line, int start) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = start; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+
+			c = line.charAt(++i);
+			switch (c) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				sb.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+				i += 4;
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		throw new IOException("Unterminated string in " + line);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Chunk> getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return the total number of bytes in the trace
+	 */
+	public long size() {
+		return size;
+	}
+}
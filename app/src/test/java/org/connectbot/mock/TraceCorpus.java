@@ -0,0 +1,242 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.mock;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Traces that reproduce what common programs send to an 80x24 xterm: the
+ * same escape sequences, line lengths and read sizes. They are generated from
+ * fixed seeds so every run sees the same bytes.
+ */
+public class TraceCorpus {
+	private static final String ESC = "\033[";
+
+	private static final String[] WORDS = {
+		"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "lorem",
+		"ipsum", "dolor", "sit", "amet", "connection", "terminal", "buffer",
+		"session", "kernel", "0x7f3a", "ERROR", "/usr/lib/x86_64-linux-gnu",
+	};
+
+	private static final String[] FILES = {
+		"Makefile", "README.md", "build.gradle", "gradlew", "src", "app", "lib",
+		"config.h", "main.c", "libssl.so.1.0.0", "id_rsa.pub", "core", "backup.tar.gz",
+		"photo.jpg", "run.sh", "tmp", "notes.txt", "socket",
+	};
+
+	private TraceCorpus() {
+	}
+
+	/**
+	 * @return every trace in the corpus
+	 */
+	public static List<Trace> all() {
+		List<Trace> traces = new ArrayList<>();
+		traces.add(cat());
+		traces.add(htop());
+		traces.add(vimScroll());
+		traces.add(lsColor());
+		traces.add(cjk());
+		traces.add(sgr());
+		return traces;
+	}
+
+	/**
+	 * {@code cat} of a 1 MB log file: plain text in full 16K reads.
+	 */
+	public static Trace cat() {
+		Random random = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 1024 * 1024) {
+			int length = 20 + random.nextInt(120);
+			int start = sb.length();
+			while (sb.length() - start < length)
+				sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+			sb.append("\r\n");
+		}
+		return Trace.split("cat", encode(sb), 16 * 1024, 1);
+	}
+
+	/**
+	 * {@code htop} redrawing its meters and process list every 1.5 seconds.
+	 */
+	public static Trace htop() {
+		Random random = new Random(2);
+		List<Trace.Chunk> chunks = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int frame = 0; frame < 200; frame++) {
+			sb.setLength(0);
+			sb.append(ESC).append("?25l").append(ESC).append('H');
+			for (int cpu = 0; cpu < 4; cpu++) {
+				int used = random.nextInt(25);
+				sb.append(ESC).append(cpu + 1).append(";3H")
+						.append(ESC).append("0;36m").append(cpu + 1)
+						.append(ESC).append("0;1;39m[")
+						.append(ESC).append("0;32m").append(repeat('|', used / 2))
+						.append(ESC).append("0;31m").append(repeat('|', used - used / 2))
+						.append(ESC).append("0;1;30m").append(repeat(' ', 25 - used))
+						.append(String.format(Locale.US, "%5.1f%%", used * 4.0))
+						.append(ESC).append("0;1;39m]");
+			}
+			sb.append(ESC).append("7;1H").append(ESC).append("30;42m")
+					.append("  PID USER      PRI  NI  VIRT   RES   SHR S CPU% MEM%   TIME+  Command")
+					.append(ESC).append('K');
+			for (int row = 8; row <= 24; row++) {
+				sb.append(ESC).append(row).append(";1H").append(ESC).append("0;39m")
+						.append(String.format(Locale.US, "%5d ", 100 + random.nextInt(30000)))
+						.append(ESC).append("0;1;30m").append("root     ")
+						.append(ESC).append("0;39m").append(" 20   0 ")
+						.append(ESC).append("0;36m").append(String.format(Locale.US, "%5dM", random.nextInt(900)))
+						.append(ESC).append("0;39m").append(String.format(Locale.US, " %5d  %4d S %4.1f %4.1f  0:%02d.%02d ",
+								random.nextInt(9999), random.nextInt(999), random.nextDouble() * 10,
+								random.nextDouble() * 5, random.nextInt(60), random.nextInt(100)))
+						.append(ESC).append("0;32m").append(FILES[random.nextInt(FILES.length)])
+						.append(ESC).append('K');
+			}
+			chunks.add(new Trace.Chunk(encode(sb), frame == 0 ? 0 : 1500));
+		}
+		return new Trace("htop", chunks);
+	}
+
+	/**
+	 * vim scrolling a syntax-highlighted source file one line per key press.
+	 */
+	public static Trace vimScroll() {
+		Random random = new Random(3);
+		String[] keywords = { "if", "for", "while", "return", "static", "int", "void", "struct" };
+		List<Trace.Chunk> chunks = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int line = 0; line < 3000; line++) {
+			sb.setLength(0);
+			sb.append(ESC).append("?25l").append(ESC).append("1;23r")
+					.append(ESC).append("23;1H\n").append(ESC).append("r")
+					.append(ESC).append("23;1H")
+					.append(ESC).append("33m").append(String.format(Locale.US, "%4d ", line + 24)).append(ESC).append('m')
+					.append(repeat(' ', random.nextInt(4) * 4))
+					.append(ESC).append("38;5;130m").append(keywords[random.nextInt(keywords.length)])
+					.append(ESC).append("m (").append(WORDS[random.nextInt(WORDS.length)])
+					.append(" == ").append(ESC).append("35m").append(random.nextInt(1000))
+					.append(ESC).append("m) { ").append(ESC).append("34m/* ")
+					.append(WORDS[random.nextInt(WORDS.length)]).append(" */").append(ESC).append('m')
+					.append(ESC).append("24;63H").append(line + 24).append(",1").append(ESC).append("24;77H")
+					.append(line * 100 / 3000).append('%')
+					.append(ESC).append("1;6H").append(ESC).append("?25h");
+			chunks.add(new Trace.Chunk(encode(sb), line == 0 ? 0 : 30));
+		}
+		return new Trace("vim", chunks);
+	}
+
+	/**
+	 * {@code ls --color} of large directories, in 4K reads.
+	 */
+	public static Trace lsColor() {
+		Random random = new Random(4);
+		String[] colors = { "01;34", "01;32", "01;31", "01;35", "01;36", "40;33;01", "00" };
+		StringBuilder sb = new StringBuilder();
+		for (int line = 0; line < 4000; line++) {
+			for (int column = 0; column < 4; column++) {
+				String file = FILES[random.nextInt(FILES.length)];
+				sb.append(ESC).append("0m").append(ESC).append(colors[random.nextInt(colors.length)])
+						.append('m').append(file).append(ESC).append("0m")
+						.append(repeat(' ', Math.max(1, 20 - file.length())));
+			}
+			sb.append("\r\n");
+		}
+		return Trace.split("ls", encode(sb), 4096, 1);
+	}
+
+	/**
+	 * Chinese, Japanese and Korean text mixed with ASCII, in 4K reads that
+	 * often end part way through a character.
+	 */
+	public static Trace cjk() {
+		Random random = new Random(5);
+		StringBuilder sb = new StringBuilder();
+		for (int line = 0; line < 4000; line++) {
+			int cells = 0;
+			while (cells < 70) {
+				switch (random.nextInt(4)) {
+				case 0:
+					sb.append((char) (0x4e00 + random.nextInt(0x5000)));
+					cells += 2;
+					break;
+				case 1:
+					sb.append((char) (0x3041 + random.nextInt(0x56)));
+					cells += 2;
+					break;
+				case 2:
+					sb.append((char) (0xac00 + random.nextInt(0x2ba4)));
+					cells += 2;
+					break;
+				default:
+					sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+					cells += 6;
+				}
+			}
+			sb.append("\r\n");
+		}
+		return Trace.split("cjk", encode(sb), 4096, 1);
+	}
+
+	/**
+	 * Output that changes colour and attributes on almost every character,
+	 * like a colour test or a rainbow prompt.
+	 */
+	public static Trace sgr() {
+		Random random = new Random(6);
+		String[] attributes = { "1", "4", "7", "22", "24", "27", "0" };
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 512 * 1024) {
+			for (int column = 0; column < 80; column++) {
+				switch (random.nextInt(3)) {
+				case 0:
+					sb.append(ESC).append("38;5;").append(random.nextInt(256)).append('m');
+					break;
+				case 1:
+					sb.append(ESC).append("48;5;").append(random.nextInt(256))
+							.append(';').append(30 + random.nextInt(8)).append('m');
+					break;
+				default:
+					sb.append(ESC).append(attributes[random.nextInt(attributes.length)]).append('m');
+				}
+				sb.append((char) ('!' + random.nextInt(94)));
+			}
+			sb.append(ESC).append("0m\r\n");
+		}
+		return Trace.split("sgr", encode(sb), 4096, 1);
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; i++)
+			sb.append(c);
+		return sb.toString();
+	}
+
+	private static byte[] encode(CharSequence text) {
+		try {
+			return text.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import org.connectbot.util.Colors;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import de.mud.terminal.VDUBuffer;
+
+public class ColorLookupTest {
+	private static final int DEFAULT_FG = 7;
+	private static final int DEFAULT_BG = 0;
+
+	private int[] color;
+	private ColorLookup lookup;
+
+	@Before
+	public void setUp() {
+		color = Colors.defaults.clone();
+		lookup = new ColorLookup();
+		lookup.update(color, DEFAULT_FG, DEFAULT_BG);
+	}
+
+	private static int attr(int fg, int bg, int flags) {
+		return ((fg + 1) << VDUBuffer.COLOR_FG_SHIFT) | ((bg + 1) << VDUBuffer.COLOR_BG_SHIFT) | flags;
+	}
+
+	/** The per-cell decoding the lookup replaces. */
+	private int[] decode(int attr) {
+		int fgcolor = DEFAULT_FG;
+		if ((attr & VDUBuffer.COLOR_FG) != 0)
+			fgcolor = ((attr & VDUBuffer.COLOR_FG) >> VDUBuffer.COLOR_FG_SHIFT) - 1;
+
+		int fg;
+		if (fgcolor < 8 && (attr & VDUBuffer.BOLD) != 0)
+			fg = color[fgcolor + 8];
+		else
+			fg = color[fgcolor];
+
+		int bg;
+		if ((attr & VDUBuffer.COLOR_BG) != 0)
+			bg = color[((attr & VDUBuffer.COLOR_BG) >> VDUBuffer.COLOR_BG_SHIFT) - 1];
+		else
+			bg = color[DEFAULT_BG];
+
+		if ((attr & VDUBuffer.INVERT) != 0)
+			return new int[] { bg, fg };
+		return new int[] { fg, bg };
+	}
+
+	@Test
+	public void lookup_AllColorAttributes_MatchesDecoding() {
+		int[] flags = { 0, VDUBuffer.BOLD, VDUBuffer.INVERT, VDUBuffer.BOLD | VDUBuffer.INVERT,
+				VDUBuffer.UNDERLINE | VDUBuffer.FULLWIDTH };
+		for (int f : flags) {
+			for (int fg = -1; fg < color.length; fg++) {
+				for (int bg = -1; bg < color.length; bg += 17) {
+					int attr = attr(fg, bg, f);
+					int[] expected = decode(attr);
+					assertEquals(Integer.toHexString(attr), expected[0], lookup.getForeground(attr));
+					assertEquals(Integer.toHexString(attr), expected[1], lookup.getBackground(attr));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void lookup_BoldDefaultForeground_IsBrightened() {
+		assertEquals(color[DEFAULT_FG + 8], lookup.getForeground(VDUBuffer.BOLD));
+		assertEquals(color[DEFAULT_FG + 8], lookup.getBackground(VDUBuffer.BOLD | VDUBuffer.INVERT));
+		assertEquals(color[DEFAULT_BG], lookup.getBackground(VDUBuffer.BOLD));
+	}
+
+	@Test
+	public void update_NewPalette_ReplacesColors() {
+		int attr = attr(100, 200, 0);
+		color[100] = 0xff123456;
+		assertEquals(Colors.defaults[100], lookup.getForeground(attr));
+
+		lookup.update(color, 1, 2);
+		assertEquals(0xff123456, lookup.getForeground(attr));
+		assertEquals(color[1], lookup.getForeground(0));
+		assertEquals(color[2], lookup.getBackground(0));
+	}
+}
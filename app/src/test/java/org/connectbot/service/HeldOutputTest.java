@@ -0,0 +1,173 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.connectbot.mock.NullTransport;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HeldOutputTest {
+	private static class RecordingTransport extends NullTransport {
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		int flushes = 0;
+
+		@Override
+		public void write(byte[] buffer) {
+			written.write(buffer, 0, buffer.length);
+		}
+
+		@Override
+		public void write(int c) {
+			written.write(c);
+		}
+
+		@Override
+		public void flush() {
+			flushes++;
+		}
+
+		String getWritten() {
+			return new String(written.toByteArray());
+		}
+	}
+
+	private RecordingTransport transport;
+	private HeldOutput output;
+
+	@Before
+	public void setUp() {
+		transport = new RecordingTransport();
+		output = new HeldOutput(8);
+	}
+
+	@Test
+	public void write_NotHolding_GoesStraightThrough() throws Exception {
+		output.write(transport, "ls".getBytes());
+		output.write(transport, '\r');
+
+		assertFalse(output.isHolding());
+		assertEquals("ls\r", transport.getWritten());
+		assertEquals(0, output.release(transport));
+	}
+
+	@Test
+	public void release_AfterHold_SendsInOrder() throws Exception {
+		output.write(transport, 'a');
+		output.hold();
+		output.write(transport, "bc".getBytes());
+		output.write(transport, 'd');
+
+		assertTrue(output.isHolding());
+		assertEquals("a", transport.getWritten());
+		assertEquals(3, output.size());
+
+		assertEquals(3, output.release(transport));
+		assertEquals("abcd", transport.getWritten());
+		assertEquals(1, transport.flushes);
+
+		output.write(transport, 'e');
+		assertEquals("abcde", transport.getWritten());
+	}
+
+	@Test
+	public void write_PastLimit_DropsEverythingAfter() throws Exception {
+		output.hold();
+		output.write(transport, "1234567".getBytes());
+		output.write(transport, "89".getBytes());
+		output.write(transport, '8');
+
+		assertEquals(7, output.size());
+		assertEquals(3, output.getDropped());
+	}
+
+	@Test
+	public void release_AfterDropping_SendsNothing() throws Exception {
+		output.hold();
+		output.write(transport, "1234567".getBytes());
+		output.write(transport, "89".getBytes());
+
+		try {
+			output.release(transport);
+			fail("release should report the dropped bytes");
+		} catch (IOException expected) {
+		}
+
+		assertFalse(output.isHolding());
+		assertEquals(0, output.size());
+		assertEquals(0, output.getDropped());
+		assertEquals("", transport.getWritten());
+	}
+
+	@Test(timeout = 5000)
+	public void hold_WhileWriteStalled_DoesNotWait() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final RecordingTransport slow = new RecordingTransport() {
+			@Override
+			public void write(byte[] buffer) {
+				writing.countDown();
+				try {
+					stalled.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.write(buffer);
+			}
+		};
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					output.write(slow, "ls".getBytes());
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		writer.start();
+		writing.await();
+
+		output.hold();
+		assertTrue(output.isHolding());
+
+		stalled.countDown();
+		writer.join();
+		assertEquals("ls", slow.getWritten());
+	}
+
+	@Test
+	public void discard_ForgetsHeldBytes() throws Exception {
+		output.hold();
+		output.write(transport, "rm".getBytes());
+		output.discard();
+
+		assertFalse(output.isHolding());
+		assertEquals(0, output.size());
+		assertEquals(0, output.release(transport));
+		assertEquals("", transport.getWritten());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyExpiryTest {
+	private long now;
+	private List<String> expired;
+	private KeyExpiry expiry;
+
+	@Before
+	public void setUp() {
+		now = 1000;
+		expired = new ArrayList<>();
+		expiry = new KeyExpiry(new KeyExpiry.Clock() {
+			public long elapsedRealtime() {
+				return now;
+			}
+		}, new KeyExpiry.Listener() {
+			public void onKeyExpired(String nickname) {
+				expired.add(nickname);
+			}
+		});
+	}
+
+	@Test
+	public void expireDue_BeforeDeadline_KeepsKey() {
+		expiry.schedule("key", 60000);
+
+		now += 59999;
+		assertEquals(0, expiry.expireDue());
+		assertTrue(expired.isEmpty());
+		assertEquals(1, expiry.size());
+	}
+
+	@Test
+	public void expireDue_AtDeadline_UnloadsKey() {
+		expiry.schedule("key", 60000);
+
+		now += 60000;
+		assertEquals(1, expiry.expireDue());
+		assertEquals("key", expired.get(0));
+		assertEquals(0, expiry.size());
+		assertEquals(0, expiry.getMaxLatenessMillis());
+	}
+
+	@Test
+	public void expireDue_InDeadlineOrder() {
+		expiry.schedule("late", 3000);
+		expiry.schedule("early", 1000);
+		expiry.schedule("middle", 2000);
+
+		now += 5000;
+		assertEquals(3, expiry.expireDue());
+		assertEquals("early", expired.get(0));
+		assertEquals("middle", expired.get(1));
+		assertEquals("late", expired.get(2));
+		assertEquals(4000, expiry.getMaxLatenessMillis());
+	}
+
+	@Test
+	public void schedule_Rearm_ReplacesDeadline() {
+		expiry.schedule("key", 1000);
+		now += 500;
+		expiry.schedule("key", 1000);
+		assertEquals(1, expiry.size());
+
+		now += 600;
+		assertEquals(0, expiry.expireDue());
+
+		now += 400;
+		assertEquals(1, expiry.expireDue());
+		assertEquals(1, expired.size());
+	}
+
+	@Test
+	public void cancel_RemovesFromQueue() {
+		expiry.schedule("key", 1000);
+		assertTrue(expiry.cancel("key"));
+		assertFalse(expiry.cancel("key"));
+		assertEquals(0, expiry.size());
+
+		now += 2000;
+		assertEquals(0, expiry.expireDue());
+		assertTrue(expired.isEmpty());
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.connectbot.bean.PubkeyBean;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class KeyPairCacheTest {
+	private static KeyPair pair;
+
+	private long now;
+	private KeyPairCache.Clock clock;
+
+	@BeforeClass
+	public static void generateKey() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(1024);
+		pair = kpg.generateKeyPair();
+	}
+
+	@Before
+	public void setUp() {
+		now = 1000;
+		clock = new KeyPairCache.Clock() {
+			public long elapsedRealtime() {
+				return now;
+			}
+		};
+	}
+
+	private static PubkeyBean makeBean(long id, boolean encrypted, int lifetime) {
+		PubkeyBean pubkey = new PubkeyBean();
+		pubkey.setId(id);
+		pubkey.setNickname("key" + id);
+		pubkey.setEncrypted(encrypted);
+		pubkey.setLifetime(lifetime);
+		pubkey.setPrivateKey(pair.getPrivate().getEncoded());
+		return pubkey;
+	}
+
+	@Test
+	public void get_AfterPut_ReturnsPair() {
+		KeyPairCache cache = new KeyPairCache(clock, 8);
+		PubkeyBean pubkey = makeBean(1, false, 0);
+
+		assertNull(cache.get(pubkey));
+		cache.put(pubkey, pair);
+		assertSame(pair, cache.get(pubkey));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void put_EncryptedKey_NotCached() {
+		KeyPairCache cache = new KeyPairCache(clock, 8);
+		PubkeyBean pubkey = makeBean(1, true, 0);
+
+		cache.put(pubkey, pair);
+		assertNull(cache.get(pubkey));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void get_KeyChanged_Evicted() {
+		KeyPairCache cache = new KeyPairCache(clock, 8);
+		PubkeyBean pubkey = makeBean(1, false, 0);
+		cache.put(pubkey, pair);
+
+		pubkey.setPrivateKey(new byte[] { 1, 2, 3 });
+		assertNull(cache.get(pubkey));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void get_LifetimeElapsed_Evicted() {
+		KeyPairCache cache = new KeyPairCache(clock, 8);
+		PubkeyBean pubkey = makeBean(1, false, 60);
+		cache.put(pubkey, pair);
+
+		now += 59 * 1000;
+		assertSame(pair, cache.get(pubkey));
+
+		now += 2 * 1000;
+		assertNull(cache.get(pubkey));
+	}
+
+	@Test
+	public void put_OverCapacity_EvictsLeastRecentlyUsed() {
+		KeyPairCache cache = new KeyPairCache(clock, 2);
+		PubkeyBean first = makeBean(1, false, 0);
+		PubkeyBean second = makeBean(2, false, 0);
+		PubkeyBean third = makeBean(3, false, 0);
+
+		cache.put(first, pair);
+		cache.put(second, pair);
+		cache.get(first);
+		cache.put(third, pair);
+
+		assertEquals(2, cache.size());
+		assertSame(pair, cache.get(first));
+		assertNull(cache.get(second));
+		assertSame(pair, cache.get(third));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	private LatencyHistogram histogram;
+
+	@Before
+	public void setUp() {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void empty_ReportsNothing() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMillis(50));
+		assertEquals(0, histogram.getMeanMillis());
+		assertEquals(-1, histogram.getSmoothedMillis());
+	}
+
+	@Test
+	public void percentiles_SmallValues_AreExact() {
+		for (int i = 1; i <= 10; i++)
+			histogram.record(i);
+
+		assertEquals(10, histogram.getCount());
+		assertEquals(5, histogram.getPercentileMillis(50));
+		assertEquals(9, histogram.getPercentileMillis(90));
+		assertEquals(10, histogram.getPercentileMillis(100));
+		assertEquals(1, histogram.getPercentileMillis(0));
+		assertEquals(5, histogram.getMeanMillis());
+	}
+
+	@Test
+	public void percentiles_LargeValues_WithinAnEighth() {
+		long[] samples = { 20, 45, 120, 300, 301, 999, 4000, 65000 };
+		for (long sample : samples)
+			histogram.record(sample);
+
+		for (int i = 0; i < samples.length; i++) {
+			double percentile = 100.0 * (i + 1) / samples.length;
+			long reported = histogram.getPercentileMillis(percentile);
+			assertTrue(samples[i] + " reported as " + reported,
+					reported >= samples[i] && reported <= samples[i] + samples[i] / 8);
+		}
+		assertEquals(65000, histogram.getMaxMillis());
+	}
+
+	@Test
+	public void smoothed_MovesAnEighthTowardsEachSample() {
+		histogram.record(100);
+		assertEquals(100, histogram.getSmoothedMillis());
+
+		histogram.record(900);
+		assertEquals(200, histogram.getSmoothedMillis());
+
+		histogram.record(200);
+		assertEquals(200, histogram.getSmoothedMillis());
+	}
+
+	@Test
+	public void recordLost_CountedSeparately() {
+		histogram.record(50);
+		histogram.recordLost();
+		histogram.recordLost();
+
+		assertEquals(1, histogram.getCount());
+		assertEquals(2, histogram.getLost());
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getLost());
+	}
+
+	@Test
+	public void record_ManyThreads_LosesNoSamples() throws Exception {
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 10000; i++)
+						histogram.record(offset * 100 + i % 100);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(40000, histogram.getCount());
+		assertEquals(399, histogram.getMaxMillis());
+		assertEquals(199, histogram.getMeanMillis());
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.Arrays;
+
+import org.connectbot.BuildConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.VDUBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PredictiveEchoTest {
+	private long now;
+	private VDUBuffer buffer;
+	private LatencyHistogram latency;
+	private PredictiveEcho echo;
+
+	@Before
+	public void setUp() {
+		now = 1000;
+		buffer = new VDUBuffer(80, 24);
+		latency = new LatencyHistogram();
+		latency.record(200);
+		echo = new PredictiveEcho(buffer, latency, new PredictiveEcho.Clock() {
+			public long uptimeMillis() {
+				return now;
+			}
+		});
+		prompt("$ ");
+	}
+
+	private void prompt(String text) {
+		buffer.putString(0, 0, text);
+		buffer.setCursorPosition(text.length(), 0);
+	}
+
+	/** Pretend the host echoed {@code text} at the cursor. */
+	private void echoed(String text) {
+		int column = buffer.getCursorColumn();
+		buffer.putString(column, buffer.getCursorRow(), text);
+		buffer.setCursorPosition(column + text.length(), buffer.getCursorRow());
+		echo.onRemoteOutput();
+	}
+
+	@Test
+	public void onTyped_NothingConfirmed_Hidden() {
+		assertFalse(echo.onTyped('l'));
+		assertNull(echo.getVisible());
+	}
+
+	@Test
+	public void onRemoteOutput_Echoed_ShowsNextGuesses() {
+		echo.onTyped('l');
+		echoed("l");
+		assertEquals(1, echo.getHits());
+
+		assertTrue(echo.onTyped('s'));
+		PredictiveEcho.Prediction[] visible = echo.getVisible();
+		assertEquals(1, visible.length);
+		assertEquals(0, visible[0].row);
+		assertEquals(3, visible[0].column);
+		assertEquals('s', visible[0].character);
+
+		echoed("s");
+		assertNull(echo.getVisible());
+		assertEquals(2, echo.getHits());
+		assertEquals(1.0, echo.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void onRemoteOutput_Mismatch_CountsMissAndHides() {
+		echo.onTyped('l');
+		echoed("l");
+		echo.onTyped('s');
+		echo.onTyped('x');
+
+		echoed("*");
+
+		assertEquals(1, echo.getMisses());
+		assertNull(echo.getVisible());
+		assertFalse(echo.onTyped('y'));
+	}
+
+	@Test
+	public void getVisible_NoEcho_ExpiresAsMiss() {
+		echo.onTyped('l');
+		echoed("l");
+		echo.onTyped('s');
+
+		now += 999;
+		assertEquals(1, echo.getVisible().length);
+
+		now += 1;
+		assertNull(echo.getVisible());
+		assertEquals(1, echo.getMisses());
+	}
+
+	@Test
+	public void onTyped_PasswordPrompt_NoGuesses() {
+		prompt("Password: ");
+		echo.onTyped('h');
+		echoed("");
+		echo.onTyped('u');
+		echo.onTyped('n');
+
+		assertNull(echo.getVisible());
+		assertEquals(0, echo.getHits());
+		assertEquals(-1, echo.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void onOtherInput_DropsGuessesWithoutMiss() {
+		echo.onTyped('l');
+		echoed("l");
+		echo.onTyped('s');
+		assertTrue(echo.onOtherInput());
+		assertFalse(echo.onOtherInput());
+
+		assertNull(echo.getVisible());
+		assertEquals(0, echo.getMisses());
+		assertFalse(echo.onTyped('\r'));
+	}
+
+	@Test
+	public void onTyped_Shown_LeavesBufferAlone() {
+		echo.onTyped('l');
+		echoed("l");
+		Arrays.fill(buffer.update, false);
+
+		assertTrue(echo.onTyped('s'));
+		assertTrue(echo.onOtherInput());
+
+		assertEquals(' ', buffer.charArray[buffer.screenBase][3]);
+		for (boolean dirty : buffer.update)
+			assertFalse(dirty);
+	}
+
+	@Test
+	public void isShowing_FastLink_Hidden() {
+		latency.reset();
+		latency.record(20);
+		echo.onTyped('l');
+		echoed("l");
+
+		assertFalse(echo.onTyped('s'));
+		assertNull(echo.getVisible());
+	}
+
+	@Test
+	public void isShowing_ManyRecentMisses_Hidden() {
+		for (int i = 0; i < 5; i++) {
+			echo.onTyped('a');
+			echoed("b");
+		}
+		echo.onTyped('a');
+		echoed("a");
+
+		assertEquals(5, echo.getMisses());
+		assertFalse(echo.onTyped('s'));
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectSchedulerTest {
+	private static final long BASE = 1000;
+	private static final long MAX = 16000;
+	private static final long TIMEOUT = 30000;
+
+	/** Always picks the largest delay the backoff allows. */
+	private static class MaxRandom extends Random {
+		@Override
+		public double nextDouble() {
+			return 0.999999;
+		}
+	}
+
+	/** Stands in for a transport; records when it was asked to connect. */
+	private class StubConnection implements Runnable {
+		final String host;
+
+		StubConnection(String host) {
+			this.host = host;
+		}
+
+		public void run() {
+			started.add(host);
+		}
+	}
+
+	private long now;
+	private List<String> started;
+	private ReconnectScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		now = 1000;
+		started = new ArrayList<>();
+		scheduler = newScheduler(2);
+	}
+
+	private ReconnectScheduler newScheduler(int maxConcurrent) {
+		return new ReconnectScheduler(new ReconnectScheduler.Clock() {
+			public long elapsedRealtime() {
+				return now;
+			}
+		}, new MaxRandom(), BASE, MAX, maxConcurrent, TIMEOUT);
+	}
+
+	private void request(String host) {
+		scheduler.request(host, new StubConnection(host), true);
+	}
+
+	@Test
+	public void request_FirstAttempt_WaitsOnlyForJitter() {
+		request("web");
+
+		now += BASE - 2;
+		assertEquals(0, scheduler.runDue());
+
+		now += 1;
+		assertEquals(1, scheduler.runDue());
+		assertEquals("web", started.get(0));
+	}
+
+	@Test
+	public void request_RepeatedFailures_BackOffToMaximum() {
+		long[] expected = { BASE, 2 * BASE, 4 * BASE, 8 * BASE, MAX, MAX };
+		for (int failures = 0; failures < expected.length; failures++) {
+			long requestedAt = now;
+			request("web");
+
+			now = requestedAt + expected[failures] - 2;
+			assertEquals(0, scheduler.runDue());
+			now = requestedAt + expected[failures];
+			assertEquals(1, scheduler.runDue());
+		}
+
+		ReconnectScheduler.Stats stats = scheduler.getStats("web");
+		assertEquals(6, stats.attempts);
+		assertEquals(5, stats.failures);
+		assertEquals(0, stats.successes);
+	}
+
+	@Test
+	public void connected_ResetsBackoffAndRecordsLatency() {
+		request("web");
+		now += BASE;
+		scheduler.runDue();
+		request("web");
+		now += 2 * BASE;
+		scheduler.runDue();
+
+		now += 250;
+		scheduler.connected("web");
+
+		ReconnectScheduler.Stats stats = scheduler.getStats("web");
+		assertEquals(1, stats.successes);
+		assertEquals(0, stats.failures);
+		assertEquals(250, stats.lastLatencyMillis);
+		assertEquals(250, stats.getAverageLatencyMillis());
+		assertEquals(0, scheduler.size());
+
+		request("web");
+		now += BASE;
+		assertEquals(1, scheduler.runDue());
+	}
+
+	@Test
+	public void runDue_ManyHosts_LimitsConcurrentAttempts() {
+		for (int i = 0; i < 5; i++)
+			request("host" + i);
+
+		now += BASE;
+		assertEquals(2, scheduler.runDue());
+		assertEquals(0, scheduler.runDue());
+		assertEquals(2, scheduler.getRunning());
+
+		scheduler.connected(started.get(0));
+		assertEquals(1, scheduler.runDue());
+
+		now += TIMEOUT;
+		assertEquals(2, scheduler.runDue());
+		assertEquals(5, started.size());
+		assertEquals(5, scheduler.size() + 1);
+	}
+
+	@Test
+	public void setOnline_Offline_HoldsNetworkAttempts() {
+		scheduler.setOnline(false);
+		request("web");
+		scheduler.request("local", new StubConnection("local"), false);
+
+		now += MAX;
+		assertEquals(1, scheduler.runDue());
+		assertEquals("local", started.get(0));
+
+		scheduler.setOnline(true);
+		assertEquals(0, scheduler.runDue());
+		now += BASE;
+		assertEquals(1, scheduler.runDue());
+		assertEquals("web", started.get(1));
+	}
+
+	@Test
+	public void cancel_DropsWaitingAttempt() {
+		request("web");
+		assertTrue(scheduler.cancel("web"));
+		assertFalse(scheduler.cancel("web"));
+
+		now += MAX;
+		assertEquals(0, scheduler.runDue());
+		assertTrue(started.isEmpty());
+		assertEquals(0, scheduler.getStats("web").attempts);
+		assertNull(scheduler.getStats("db"));
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.mock.ReplayTransport;
+import org.connectbot.mock.Trace;
+import org.connectbot.mock.TraceCorpus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.vt320;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pushes the trace corpus through {@link Relay} into the terminal emulator.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RelayTest {
+	private TerminalBridge bridge;
+	private vt320 buffer;
+
+	@Before
+	public void setUp() {
+		bridge = new TerminalBridge();
+		buffer = (vt320) bridge.getVDUBuffer();
+		buffer.setDisplay(bridge);
+		buffer.setScreenSize(80, 24, false);
+		buffer.setBufferSize(140);
+	}
+
+	private void replay(Trace trace) {
+		ReplayTransport transport = new ReplayTransport(trace, false);
+		new Relay(bridge, transport, buffer, "UTF-8").run();
+		assertEquals(trace.getName(), trace.size(), transport.getPosition());
+	}
+
+	@Test
+	public void corpus_ReplaysThroughEmulator() {
+		for (Trace trace : TraceCorpus.all()) {
+			replay(trace);
+
+			assertTrue(trace.getName(), buffer.getCursorRow() >= 0 && buffer.getCursorRow() < buffer.getRows());
+			assertTrue(trace.getName(), buffer.getCursorColumn() >= 0 && buffer.getCursorColumn() <= buffer.getColumns());
+		}
+	}
+
+	@Test
+	public void replay_RealTime_WaitsOutDelays() throws Exception {
+		List<Trace.Chunk> chunks = new ArrayList<>();
+		chunks.add(new Trace.Chunk("a".getBytes("UTF-8"), 0));
+		chunks.add(new Trace.Chunk("b".getBytes("UTF-8"), 40));
+		chunks.add(new Trace.Chunk("c".getBytes("UTF-8"), 40));
+		Trace trace = new Trace("timed", chunks);
+
+		long start = System.currentTimeMillis();
+		ReplayTransport transport = new ReplayTransport(trace, true);
+		new Relay(bridge, transport, buffer, "UTF-8").run();
+
+		assertTrue(System.currentTimeMillis() - start >= 80);
+		assertEquals(3, transport.getPosition());
+		assertEquals('c', buffer.getChar(2, buffer.getCursorRow()));
+	}
+
+	@Test
+	public void fromAsciicast_ReadsOutputEvents() throws Exception {
+		String cast = "{\"version\": 2, \"width\": 80, \"height\": 24}\n"
+				+ "[0.500, \"o\", \"$ \"]\n"
+				+ "[0.750, \"i\", \"l\"]\n"
+				+ "[1.250, \"o\", \"\\u001b[1mls\\r\\n\\\"x\\\"\"]\n";
+		Trace trace = Trace.fromAsciicast("cast", new StringReader(cast), "UTF-8");
+
+		assertEquals(2, trace.getChunks().size());
+		assertEquals(500, trace.getChunks().get(0).delayMillis);
+		assertEquals(750, trace.getChunks().get(1).delayMillis);
+		assertEquals("\033[1mls\r\n\"x\"", new String(trace.getChunks().get(1).data, "UTF-8"));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.mock.ReplayTransport;
+import org.connectbot.mock.Timing;
+import org.connectbot.mock.Trace;
+import org.connectbot.mock.TraceCorpus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.vt320;
+
+/**
+ * How fast each trace of the corpus goes through {@link Relay} into the
+ * terminal emulator, decoding included. The emulator on its own is measured
+ * by the benchmark module's {@code TerminalParseBenchmark}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RelayTimingTest {
+	private static final int RUNS = 3;
+
+	private TerminalBridge bridge;
+	private vt320 buffer;
+
+	@Before
+	public void setUp() {
+		Timing.assumeRequested();
+
+		bridge = new TerminalBridge();
+		buffer = (vt320) bridge.getVDUBuffer();
+		buffer.setDisplay(bridge);
+		buffer.setScreenSize(80, 24, false);
+		buffer.setBufferSize(140);
+	}
+
+	private void replay(Trace trace) {
+		new Relay(bridge, new ReplayTransport(trace, false), buffer, "UTF-8").run();
+	}
+
+	@Test
+	public void corpus_Throughput() {
+		for (Trace trace : TraceCorpus.all()) {
+			// let the JIT see the trace once before measuring
+			replay(trace);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++)
+				replay(trace);
+			long nanos = System.nanoTime() - start;
+
+			double megabytesPerSecond = (trace.size() * RUNS / (1024.0 * 1024.0)) / (nanos / 1e9);
+			Timing.report("%-5s %7d KB %8.2f MB/s", trace.getName(), trace.size() / 1024, megabytesPerSecond);
+		}
+	}
+}
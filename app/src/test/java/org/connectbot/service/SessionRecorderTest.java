@@ -0,0 +1,159 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRecorderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private long now;
+	private File directory;
+
+	private final SessionRecorder.Clock clock = new SessionRecorder.Clock() {
+		public long uptimeMillis() {
+			return now;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		now = 5000;
+		directory = new File(folder.getRoot(), "recordings");
+	}
+
+	private SessionRecorder newRecorder(boolean recordInput, int queueLength, long partBytes, int parts) {
+		return new SessionRecorder(directory, "host", "user@host", 80, 24, recordInput,
+				queueLength, partBytes, parts, clock);
+	}
+
+	private static void finish(SessionRecorder recorder) throws Exception {
+		recorder.close();
+		assertTrue(recorder.awaitClose(5000));
+	}
+
+	private static List<String> readLines(File file) throws Exception {
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	@Test
+	public void events_WrittenAsAsciicast() throws Exception {
+		SessionRecorder recorder = newRecorder(true, 16, SessionRecorder.DEFAULT_PART_BYTES, 2);
+		recorder.output("$ ".toCharArray(), 0, 2);
+		now += 1234;
+		recorder.input("ls\r");
+		now += 7;
+		recorder.output("x\"y\\\u001b[0m\n".toCharArray(), 0, 9);
+		recorder.resize(100, 30);
+
+		recorder.start();
+		finish(recorder);
+
+		List<String> lines = readLines(recorder.getPartFile(1));
+		assertEquals(5, lines.size());
+		assertTrue(lines.get(0), lines.get(0).startsWith("{\"version\": 2, \"width\": 80, \"height\": 24, "));
+		assertTrue(lines.get(0), lines.get(0).endsWith(", \"title\": \"user@host\"}"));
+		assertEquals("[0.000, \"o\", \"$ \"]", lines.get(1));
+		assertEquals("[1.234, \"i\", \"ls\\r\"]", lines.get(2));
+		assertEquals("[1.241, \"o\", \"x\\\"y\\\\\\u001b[0m\\n\"]", lines.get(3));
+		assertEquals("[1.241, \"r\", \"100x30\"]", lines.get(4));
+	}
+
+	@Test
+	public void input_NotRecordingInput_Ignored() throws Exception {
+		SessionRecorder recorder = newRecorder(false, 16, SessionRecorder.DEFAULT_PART_BYTES, 2);
+		recorder.input("secret\r");
+		recorder.output("ok".toCharArray(), 0, 2);
+
+		recorder.start();
+		finish(recorder);
+
+		List<String> lines = readLines(recorder.getPartFile(1));
+		assertEquals(2, lines.size());
+		assertEquals("[0.000, \"o\", \"ok\"]", lines.get(1));
+	}
+
+	@Test
+	public void output_QueueFull_DropsWithoutWaiting() throws Exception {
+		SessionRecorder recorder = newRecorder(false, 2, SessionRecorder.DEFAULT_PART_BYTES, 2);
+		for (int i = 0; i < 5; i++)
+			recorder.output("a".toCharArray(), 0, 1);
+
+		assertEquals(3, recorder.getDropped());
+
+		recorder.start();
+		finish(recorder);
+		assertEquals(3, readLines(recorder.getPartFile(1)).size());
+	}
+
+	@Test
+	public void parts_PastSize_RotateAndKeepNewest() throws Exception {
+		// more events than fit in one batch, so each batch starts a new part
+		SessionRecorder recorder = newRecorder(false, 200, 1, 2);
+		for (int i = 0; i < 150; i++)
+			recorder.output("a".toCharArray(), 0, 1);
+		recorder.resize(120, 40);
+		recorder.output("b".toCharArray(), 0, 1);
+
+		recorder.start();
+		finish(recorder);
+
+		assertFalse(recorder.getPartFile(1).exists());
+		assertTrue(recorder.getPartFile(2).exists());
+		List<String> last = readLines(recorder.getPartFile(3));
+		assertTrue(last.get(0), last.get(0).startsWith("{\"version\": 2, \"width\": 80, "));
+		assertEquals("[0.000, \"o\", \"b\"]", last.get(last.size() - 1));
+	}
+
+	@Test
+	public void close_StopsTakingEvents() throws Exception {
+		SessionRecorder recorder = newRecorder(false, 16, SessionRecorder.DEFAULT_PART_BYTES, 2);
+		recorder.output("a".toCharArray(), 0, 1);
+		recorder.close();
+		recorder.output("b".toCharArray(), 0, 1);
+
+		recorder.start();
+		assertTrue(recorder.awaitClose(5000));
+		assertEquals(2, readLines(recorder.getPartFile(1)).size());
+		assertEquals(0, recorder.getDropped());
+	}
+}
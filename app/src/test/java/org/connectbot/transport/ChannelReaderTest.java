@@ -0,0 +1,153 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport;
+
+import java.util.Arrays;
+
+import org.connectbot.mock.PacketStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.trilead.ssh2.ChannelCondition;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChannelReaderTest {
+	private static final int BOTH = ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA;
+
+	private PacketStream stdout;
+	private PacketStream stderr;
+	private ChannelReader reader;
+	private byte[] buffer;
+
+	@Before
+	public void setUp() {
+		stdout = new PacketStream();
+		stderr = new PacketStream();
+		reader = new ChannelReader(stdout, stderr);
+		buffer = new byte[4096];
+	}
+
+	private String read(int conditions) throws Exception {
+		int n = reader.read(conditions, buffer, 0, buffer.length);
+		return new String(buffer, 0, n, "UTF-8");
+	}
+
+	@Test
+	public void read_DrainsEveryWaitingPacket() throws Exception {
+		stdout.arrive("one ".getBytes("UTF-8"));
+		stdout.arrive("two ".getBytes("UTF-8"));
+		stdout.arrive("three".getBytes("UTF-8"));
+
+		assertEquals("one two three", read(ChannelCondition.STDOUT_DATA));
+	}
+
+	@Test
+	public void read_StdoutEndsLine_AppendsStderr() throws Exception {
+		stdout.arrive("out\n".getBytes("UTF-8"));
+		stderr.arrive("err\n".getBytes("UTF-8"));
+
+		assertEquals("out\nerr\n", read(BOTH));
+	}
+
+	@Test
+	public void read_StdoutEndsMidCharacter_HoldsStderr() throws Exception {
+		byte[] cafe = "caf\u00e9\n".getBytes("UTF-8");
+		// the last packet ends between the two bytes of the e acute
+		int split = cafe.length - 2;
+		byte[] first = new byte[split];
+		System.arraycopy(cafe, 0, first, 0, split);
+		stdout.arrive(first);
+		stderr.arrive("err\n".getBytes("UTF-8"));
+
+		int n = reader.read(BOTH, buffer, 0, buffer.length);
+		assertEquals(split, n);
+
+		stdout.arrive(new byte[] { cafe[split], cafe[split + 1] });
+		n += reader.read(BOTH, buffer, n, buffer.length - n);
+		assertEquals("caf\u00e9\nerr\n", new String(buffer, 0, n, "UTF-8"));
+	}
+
+	@Test
+	public void read_StdoutEndsMidEscape_HoldsStderr() throws Exception {
+		stdout.arrive("\u001b[3".getBytes("UTF-8"));
+		stderr.arrive("err\n".getBytes("UTF-8"));
+
+		assertEquals("\u001b[3", read(BOTH));
+		assertEquals("err\n", read(ChannelCondition.STDERR_DATA));
+	}
+
+	@Test
+	public void read_StdoutNeverEndsLine_MergesStderrAfterLimit() throws Exception {
+		stderr.arrive("err\n".getBytes("UTF-8"));
+
+		// a progress bar redrawing itself without ever printing a newline
+		for (int i = 0; i < ChannelReader.MAX_HELD_READS; i++) {
+			stdout.arrive("\r42%".getBytes("UTF-8"));
+			assertEquals("\r42%", read(BOTH));
+		}
+
+		stdout.arrive("\r43%".getBytes("UTF-8"));
+		assertEquals("\r43%err\n", read(BOTH));
+	}
+
+	@Test
+	public void read_LargeStdoutWithoutLineEnd_MergesStderrAfterByteLimit() throws Exception {
+		stderr.arrive("err\n".getBytes("UTF-8"));
+
+		byte[] screen = new byte[ChannelReader.MAX_HELD_BYTES / 4];
+		Arrays.fill(screen, (byte) 'x');
+		byte[] big = new byte[screen.length * 2];
+		for (int i = 0; i < 4; i++) {
+			stdout.arrive(screen);
+			assertEquals(screen.length, reader.read(BOTH, big, 0, big.length));
+		}
+
+		stdout.arrive("x".getBytes("UTF-8"));
+		assertEquals("xerr\n", read(BOTH));
+	}
+
+	@Test
+	public void read_StderrOnly_Read() throws Exception {
+		stderr.arrive("Permission denied".getBytes("UTF-8"));
+
+		assertEquals("Permission denied", read(ChannelCondition.STDERR_DATA));
+	}
+
+	@Test
+	public void read_FullBuffer_LeavesRestForNextRead() throws Exception {
+		stdout.arrive(new byte[buffer.length + 100]);
+
+		assertEquals(buffer.length, reader.read(ChannelCondition.STDOUT_DATA, buffer, 0, buffer.length));
+		assertEquals(100, reader.read(ChannelCondition.STDOUT_DATA, buffer, 0, buffer.length));
+	}
+
+	@Test
+	public void getWakeupsPerMegabyte_CountsReads() throws Exception {
+		assertEquals(0, reader.getWakeupsPerMegabyte(), 0);
+
+		for (int i = 0; i < 4; i++) {
+			for (int p = 0; p < 4; p++)
+				stdout.arrive(new byte[1024]);
+			reader.read(ChannelCondition.STDOUT_DATA, buffer, 0, buffer.length);
+		}
+
+		// four wakeups for 16K
+		assertEquals(256, reader.getWakeupsPerMegabyte(), 0.001);
+	}
+}
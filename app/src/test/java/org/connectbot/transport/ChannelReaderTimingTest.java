@@ -0,0 +1,77 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport;
+
+import org.connectbot.mock.PacketStream;
+import org.connectbot.mock.Timing;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.trilead.ssh2.ChannelCondition;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Feeds 16 MB through {@link ChannelReader} from a stand-in channel that
+ * delivers output in bursts of small packets, the way a server streaming a
+ * large file does, and reports the wake-ups per megabyte and throughput.
+ */
+public class ChannelReaderTimingTest {
+	private static final int RELAY_BUFFER = 4096;
+	private static final int MEGABYTES = 16;
+
+	@Before
+	public void setUp() {
+		Timing.assumeRequested();
+	}
+
+	private static void run(int packetSize, int packetsPerBurst) throws Exception {
+		PacketStream stdout = new PacketStream();
+		ChannelReader reader = new ChannelReader(stdout, new PacketStream());
+		byte[] buffer = new byte[RELAY_BUFFER];
+		byte[] packet = new byte[packetSize];
+
+		long total = MEGABYTES * 1024L * 1024L;
+		long received = 0;
+		long start = System.nanoTime();
+		while (received < total) {
+			if (stdout.available() == 0) {
+				for (int i = 0; i < packetsPerBurst; i++)
+					stdout.arrive(packet);
+			}
+			received += reader.read(ChannelCondition.STDOUT_DATA, buffer, 0, buffer.length);
+		}
+		long nanos = System.nanoTime() - start;
+
+		assertEquals(0, received % packetSize);
+		Timing.report("%5d byte packets, %2d per burst: %7.1f wake-ups/MB, %8.1f MB/s",
+				packetSize, packetsPerBurst, reader.getWakeupsPerMegabyte(),
+				MEGABYTES / (nanos / 1e9));
+	}
+
+	@Test
+	public void read_Bursts() throws Exception {
+		// let the JIT see the code once before measuring
+		run(512, 8);
+
+		run(512, 1);
+		run(512, 8);
+		run(1400, 8);
+		run(16384, 2);
+	}
+}
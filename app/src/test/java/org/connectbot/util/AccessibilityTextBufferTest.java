@@ -0,0 +1,73 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccessibilityTextBufferTest {
+	private static String filter(String... chunks) {
+		AccessibilityTextBuffer buffer = new AccessibilityTextBuffer(64);
+		for (String chunk : chunks)
+			buffer.append(chunk.toCharArray(), 0, chunk.length());
+		return buffer.drain();
+	}
+
+	@Test
+	public void append_PlainText_Unchanged() {
+		assertEquals("hello world\n", filter("hello world\r\n"));
+	}
+
+	@Test
+	public void append_Colors_Stripped() {
+		assertEquals("red text", filter("\u001b[1;31mred\u001b[0m text"));
+	}
+
+	@Test
+	public void append_CursorMovement_SeparatesWords() {
+		assertEquals("one two", filter("one\u001b[10;1Htwo"));
+	}
+
+	@Test
+	public void append_Backspace_RemovesCharacter() {
+		assertEquals("cat", filter("caz\b\u001b[Kt"));
+	}
+
+	@Test
+	public void append_WindowTitle_Stripped() {
+		assertEquals("$ ", filter("\u001b]0;user@host: ~\u0007$ "));
+		assertEquals("$ ", filter("\u001b]0;user@host: ~\u001b\\$ "));
+	}
+
+	@Test
+	public void append_SequenceSplitAcrossChunks_Stripped() {
+		assertEquals("ab", filter("a\u001b[3", "2mb"));
+	}
+
+	@Test
+	public void append_Overflow_KeepsNewest() {
+		AccessibilityTextBuffer buffer = new AccessibilityTextBuffer(4);
+		char[] text = "abcdef".toCharArray();
+		buffer.append(text, 0, text.length);
+
+		assertEquals(2, buffer.getDropped());
+		assertEquals("cdef", buffer.drain());
+		assertEquals("", buffer.drain());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.connectbot.BuildConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import com.trilead.ssh2.KnownHosts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class HostDatabaseTest {
+	private static final byte[] FIRST_KEY = new byte[] { 1, 2, 3 };
+	private static final byte[] SECOND_KEY = new byte[] { 4, 5, 6 };
+
+	private HostDatabase db;
+
+	@Before
+	public void setUp() {
+		HostDatabase.resetInMemoryInstance(RuntimeEnvironment.application);
+		db = HostDatabase.get(RuntimeEnvironment.application);
+	}
+
+	@Test(timeout = 10000)
+	public void saveKnownHost_InTransactionWhileAnotherThreadSaves_BothFinish() throws Exception {
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final CountDownLatch inTransaction = new CountDownLatch(1);
+		final CountDownLatch saving = new CountDownLatch(1);
+
+		final Thread second = new Thread(new Runnable() {
+			public void run() {
+				try {
+					inTransaction.await();
+					saving.countDown();
+					db.saveKnownHost("second.example.com", 22, "ssh-rsa", SECOND_KEY);
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+
+		// what a write-behind flush does: save host keys inside a transaction
+		Thread first = new Thread(new Runnable() {
+			public void run() {
+				try {
+					db.runInTransaction(new Runnable() {
+						public void run() {
+							inTransaction.countDown();
+							waitUntilBlocked(saving, second);
+							db.saveKnownHost("first.example.com", 22, "ssh-rsa", FIRST_KEY);
+						}
+					});
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+
+		second.start();
+		first.start();
+		first.join(5000);
+		second.join(5000);
+
+		assertFalse("transaction thread deadlocked", first.isAlive());
+		assertFalse("saving thread deadlocked", second.isAlive());
+		assertNull(failure.get());
+
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, db.verifyKnownHost("first.example.com", 22, "ssh-rsa", FIRST_KEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, db.verifyKnownHost("second.example.com", 22, "ssh-rsa", SECOND_KEY));
+	}
+
+	/**
+	 * Wait for {@code thread} to start saving and then block on a lock or the
+	 * database, so the caller runs into whatever it is holding.
+	 */
+	private static void waitUntilBlocked(CountDownLatch saving, Thread thread) {
+		try {
+			saving.await();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+		while (System.nanoTime() < deadline) {
+			Thread.State state = thread.getState();
+			if (state == Thread.State.BLOCKED || state == Thread.State.WAITING
+					|| state == Thread.State.TIMED_WAITING)
+				return;
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.bean.HostBean;
+import org.connectbot.bean.PortForwardBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class HostImporterTest {
+	private static final String SSH_CONFIG = ""
+			+ "# defaults for everything\n"
+			+ "Port 2222\n"
+			+ "\n"
+			+ "Host *.prod\n"
+			+ "    User deploy\n"
+			+ "\n"
+			+ "Host web.prod db.prod\n"
+			+ "    User ignored\n"
+			+ "    HostName %h.example.com\n"
+			+ "    LocalForward 8080 localhost:80\n"
+			+ "\n"
+			+ "Host=bastion\n"
+			+ "    HostName = 192.0.2.1\n"
+			+ "    User \"admin\"\n"
+			+ "    LocalForward 127.0.0.1:5432 [2001:db8::1]:5432\n"
+			+ "    RemoteForward 9000 localhost:9000\n"
+			+ "    DynamicForward 1080\n"
+			+ "    LocalForward /tmp/socket /tmp/remote\n"
+			+ "\n"
+			+ "Match exec true\n"
+			+ "    User nobody\n"
+			+ "\n"
+			+ "Host nouser\n"
+			+ "    HostName nouser.example.com\n";
+
+	private static HostImporter.Source source(final String contents) {
+		return new HostImporter.Source() {
+			public Reader open() {
+				return new StringReader(contents);
+			}
+		};
+	}
+
+	private static List<HostImporter.Entry> readAll(HostImporter importer) throws IOException {
+		List<HostImporter.Entry> entries = new ArrayList<>();
+		HostImporter.Entry entry;
+		while ((entry = importer.next()) != null)
+			entries.add(entry);
+		return entries;
+	}
+
+	@Test
+	public void sshConfig_HostBlocks_FirstValueWins() throws Exception {
+		HostImporter importer = HostImporter.forSshConfig(source(SSH_CONFIG));
+		List<HostImporter.Entry> entries = readAll(importer);
+
+		assertEquals(3, entries.size());
+		assertEquals(1, importer.getSkipped());
+
+		HostBean web = entries.get(0).host;
+		assertEquals("web.prod", web.getNickname());
+		assertEquals("web.prod.example.com", web.getHostname());
+		assertEquals("deploy", web.getUsername());
+		assertEquals(2222, web.getPort());
+		assertEquals(1, entries.get(0).portForwards.size());
+
+		assertEquals("db.prod", entries.get(1).host.getNickname());
+		assertEquals("db.prod.example.com", entries.get(1).host.getHostname());
+
+		HostBean bastion = entries.get(2).host;
+		assertEquals("bastion", bastion.getNickname());
+		assertEquals("192.0.2.1", bastion.getHostname());
+		assertEquals("admin", bastion.getUsername());
+	}
+
+	@Test
+	public void sshConfig_TrailingWildcardBlock_FillsInDefaults() throws Exception {
+		String config = ""
+				+ "Host web\n"
+				+ "    HostName web.example.com\n"
+				+ "\n"
+				+ "Host db\n"
+				+ "    User admin\n"
+				+ "\n"
+				+ "Host *\n"
+				+ "    User deploy\n"
+				+ "    Port 2222\n";
+		HostImporter importer = HostImporter.forSshConfig(source(config));
+		List<HostImporter.Entry> entries = readAll(importer);
+
+		assertEquals(2, entries.size());
+		assertEquals(0, importer.getSkipped());
+
+		HostBean web = entries.get(0).host;
+		assertEquals("web.example.com", web.getHostname());
+		assertEquals("deploy", web.getUsername());
+		assertEquals(2222, web.getPort());
+
+		HostBean db = entries.get(1).host;
+		assertEquals("db", db.getHostname());
+		assertEquals("admin", db.getUsername());
+		assertEquals(2222, db.getPort());
+	}
+
+	@Test
+	public void sshConfig_Forwards_ParsedByType() throws Exception {
+		List<HostImporter.Entry> entries = readAll(HostImporter.forSshConfig(source(SSH_CONFIG)));
+		List<PortForwardBean> forwards = entries.get(2).portForwards;
+
+		assertEquals(3, forwards.size());
+
+		assertEquals(HostDatabase.PORTFORWARD_LOCAL, forwards.get(0).getType());
+		assertEquals(5432, forwards.get(0).getSourcePort());
+		assertEquals("2001:db8::1", forwards.get(0).getDestAddr());
+		assertEquals(5432, forwards.get(0).getDestPort());
+
+		assertEquals(HostDatabase.PORTFORWARD_REMOTE, forwards.get(1).getType());
+		assertEquals(9000, forwards.get(1).getSourcePort());
+
+		assertEquals(HostDatabase.PORTFORWARD_DYNAMIC5, forwards.get(2).getType());
+		assertEquals(1080, forwards.get(2).getSourcePort());
+	}
+
+	@Test
+	public void csv_WithHeader_ReadsNamedColumns() throws Exception {
+		String csv = "hostname,user,nickname,protocol,port\r\n"
+				+ "web.example.com,root,\"web, primary\",,\r\n"
+				+ "\"router\"\"s.example.com\",,,telnet,\n"
+				+ "db.example.com,,db,,\n"
+				+ "bad.example.com,root,bad,ssh,notaport\n";
+		HostImporter importer = HostImporter.forCsv(new StringReader(csv));
+		List<HostImporter.Entry> entries = readAll(importer);
+
+		assertEquals(2, entries.size());
+		assertEquals(2, importer.getSkipped());
+
+		HostBean web = entries.get(0).host;
+		assertEquals("web, primary", web.getNickname());
+		assertEquals("root", web.getUsername());
+		assertEquals("ssh", web.getProtocol());
+		assertEquals(22, web.getPort());
+
+		HostBean router = entries.get(1).host;
+		assertEquals("router\"s.example.com", router.getHostname());
+		assertEquals("telnet", router.getProtocol());
+		assertEquals(23, router.getPort());
+		assertEquals("router\"s.example.com", router.getNickname());
+	}
+
+	@Test
+	public void open_DetectsFormat() throws Exception {
+		HostImporter csv = HostImporter.open(source("# hosts\nweb,root,web.example.com,2200\n  # more hosts\n"));
+		HostBean host = csv.next().host;
+		assertEquals("web", host.getNickname());
+		assertEquals(2200, host.getPort());
+		assertNull(csv.next());
+
+		HostImporter config = HostImporter.open(source("Host web\n  User root\n"));
+		assertEquals("web", config.next().host.getNickname());
+		assertNull(config.next());
+	}
+}
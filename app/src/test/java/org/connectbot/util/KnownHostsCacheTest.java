@@ -0,0 +1,133 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.trilead.ssh2.KnownHosts;
+import com.trilead.ssh2.crypto.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KnownHostsCacheTest {
+	private static final String KEY_TYPE = "ssh-ed25519";
+	private static final String KEY = "AAAAC3NzaC1lZDI1NTE5AAAAIOMqqnkVzrm0SdG6UOoqKLsabgH5C9okWi0dh2l9GKJl";
+
+	/* ssh-keygen -H of "example.com" and "[example.com]:2222" with KEY */
+	private static final String HASHED_22 =
+			"|1|3ggu8tA7q6EjZAzdOiCx/cjKjyQ=|pLOC1cX4tkADAT7CEkxkOt2mK6Q= " + KEY_TYPE + " " + KEY;
+	private static final String HASHED_2222 =
+			"|1|yOZyBrcatb0hWb/s3qOChQXyILc=|TdE36PV6S6O5WnB254QPuZc7ezg= " + KEY_TYPE + " " + KEY;
+
+	private static final byte[] HOSTKEY = new byte[] {1, 2, 3, 4};
+	private static final byte[] OTHER_HOSTKEY = new byte[] {5, 6, 7, 8};
+
+	private static KnownHostsCache load(String... lines) {
+		KnownHostsCache cache = new KnownHostsCache();
+		for (String line : lines) {
+			for (KnownHostsCache.Entry entry : KnownHostsCache.parseLine(line))
+				assertTrue(cache.add(entry));
+		}
+		return cache;
+	}
+
+	@Test
+	public void verify_PlainEntry() {
+		KnownHostsCache cache = new KnownHostsCache();
+		cache.add(new KnownHostsCache.Entry(1, "example.com", 22, "ssh-rsa", HOSTKEY));
+
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, cache.verify("example.com", 22, "ssh-rsa", HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_HAS_CHANGED, cache.verify("example.com", 22, "ssh-rsa", OTHER_HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_NEW, cache.verify("example.com", 22, "ssh-dss", HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_NEW, cache.verify("example.com", 2222, "ssh-rsa", HOSTKEY));
+	}
+
+	@Test
+	public void verify_OpenSshHashedEntries() throws Exception {
+		KnownHostsCache cache = load(HASHED_22, HASHED_2222);
+		byte[] key = KnownHostsCache.parseLine(HASHED_22).get(0).key;
+
+		assertEquals(2, cache.size());
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, cache.verify("example.com", 22, KEY_TYPE, key));
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, cache.verify("example.com", 2222, KEY_TYPE, key));
+		assertEquals(KnownHosts.HOSTKEY_HAS_CHANGED, cache.verify("example.com", 22, KEY_TYPE, HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_NEW, cache.verify("example.org", 22, KEY_TYPE, key));
+	}
+
+	@Test
+	public void hashHostname_MatchesOpenSsh() throws Exception {
+		KnownHostsCache.Entry entry = KnownHostsCache.parseLine(HASHED_2222).get(0);
+		byte[] salt = Base64.decode("yOZyBrcatb0hWb/s3qOChQXyILc=".toCharArray());
+
+		assertEquals(entry.hostname, KnownHostsCache.hashHostname("example.com", 2222, salt));
+	}
+
+	@Test
+	public void parseLine_HostList() {
+		List<KnownHostsCache.Entry> entries = KnownHostsCache.parseLine(
+				"example.com,[10.0.0.1]:2222,*.example.org " + KEY_TYPE + " " + KEY + " comment");
+
+		assertEquals(2, entries.size());
+		assertEquals("example.com", entries.get(0).hostname);
+		assertEquals(22, entries.get(0).port);
+		assertEquals("10.0.0.1", entries.get(1).hostname);
+		assertEquals(2222, entries.get(1).port);
+		assertEquals(KEY_TYPE, entries.get(1).algorithm);
+	}
+
+	@Test
+	public void parseLine_SkipsCommentsAndMarkers() {
+		assertTrue(KnownHostsCache.parseLine("# example.com " + KEY_TYPE + " " + KEY).isEmpty());
+		assertTrue(KnownHostsCache.parseLine("@revoked example.com " + KEY_TYPE + " " + KEY).isEmpty());
+		assertTrue(KnownHostsCache.parseLine("").isEmpty());
+	}
+
+	@Test
+	public void findSuperseded_PlainAndHashed() {
+		KnownHostsCache cache = load(HASHED_22);
+		cache.add(new KnownHostsCache.Entry(1, "example.com", 22, KEY_TYPE, HOSTKEY));
+		cache.add(new KnownHostsCache.Entry(2, "example.com", 22, "ssh-rsa", HOSTKEY));
+
+		List<KnownHostsCache.Entry> superseded = cache.findSuperseded("example.com", 22, KEY_TYPE);
+		assertEquals(2, superseded.size());
+
+		cache.remove(superseded);
+		assertEquals(1, cache.size());
+		assertEquals(KnownHosts.HOSTKEY_IS_NEW, cache.verify("example.com", 22, KEY_TYPE, HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, cache.verify("example.com", 22, "ssh-rsa", HOSTKEY));
+	}
+
+	@Test
+	public void findForHost_AllAlgorithmsForThatPort() {
+		KnownHostsCache cache = load(HASHED_22, HASHED_2222);
+		cache.add(new KnownHostsCache.Entry(1, "example.com", 22, KEY_TYPE, HOSTKEY));
+		cache.add(new KnownHostsCache.Entry(2, "example.com", 22, "ssh-rsa", HOSTKEY));
+		cache.add(new KnownHostsCache.Entry(3, "example.org", 22, "ssh-rsa", HOSTKEY));
+
+		List<KnownHostsCache.Entry> entries = cache.findForHost("example.com", 22);
+		assertEquals(3, entries.size());
+
+		cache.remove(entries);
+		assertEquals(2, cache.size());
+		assertEquals(KnownHosts.HOSTKEY_IS_NEW, cache.verify("example.com", 22, "ssh-rsa", OTHER_HOSTKEY));
+		assertEquals(KnownHosts.HOSTKEY_IS_OK, cache.verify("example.org", 22, "ssh-rsa", HOSTKEY));
+	}
+}
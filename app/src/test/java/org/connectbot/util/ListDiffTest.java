@@ -0,0 +1,106 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ListDiffTest {
+	/** Applies the reported changes to a copy of the old list. */
+	private static class Applier implements ListDiff.Callback {
+		final List<String> items;
+		final List<String> target;
+		final List<String> calls = new ArrayList<>();
+		boolean reordered = false;
+
+		Applier(List<String> oldList, List<String> newList) {
+			items = new ArrayList<>(oldList);
+			target = newList;
+		}
+
+		public void onRemoved(int position, int count) {
+			calls.add("remove " + position + " " + count);
+			for (int i = 0; i < count; i++)
+				items.remove(position);
+		}
+
+		public void onInserted(int position, int count) {
+			calls.add("insert " + position + " " + count);
+			for (int i = 0; i < count; i++)
+				items.add(position + i, target.get(position + i));
+		}
+
+		public void onChanged(int position) {
+			calls.add("change " + position);
+			items.set(position, target.get(position));
+		}
+
+		public void onReordered() {
+			reordered = true;
+		}
+	}
+
+	private static Applier diff(List<String> oldList, List<String> newList) {
+		Applier applier = new Applier(oldList, newList);
+		ListDiff.dispatch(oldList, newList, applier);
+		return applier;
+	}
+
+	@Test
+	public void dispatch_Narrowed_ReportsRemovedRanges() {
+		Applier applier = diff(Arrays.asList("a", "b", "c", "d", "e"), Arrays.asList("b", "e"));
+
+		assertFalse(applier.reordered);
+		assertEquals(Arrays.asList("remove 2 2", "remove 0 1"), applier.calls);
+		assertEquals(Arrays.asList("b", "e"), applier.items);
+	}
+
+	@Test
+	public void dispatch_Widened_ReportsInsertedRanges() {
+		Applier applier = diff(Arrays.asList("b", "e"), Arrays.asList("a", "b", "c", "d", "e", "f"));
+
+		assertFalse(applier.reordered);
+		assertEquals(Arrays.asList("insert 0 1", "insert 2 2", "insert 5 1"), applier.calls);
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), applier.items);
+	}
+
+	@Test
+	public void dispatch_Mixed_ProducesNewList() {
+		List<String> newList = Arrays.asList("a", "c", new String("d"), "x", "f");
+		Applier applier = diff(Arrays.asList("b", "c", "d", "e", "f"), newList);
+
+		assertFalse(applier.reordered);
+		assertTrue(applier.calls.contains("change 2"));
+		assertEquals(newList, applier.items);
+	}
+
+	@Test
+	public void dispatch_Reordered_ReportsReorder() {
+		Applier applier = diff(Arrays.asList("a", "b", "c"), Arrays.asList("c", "b", "a"));
+
+		assertTrue(applier.reordered);
+		assertTrue(applier.calls.isEmpty());
+	}
+}
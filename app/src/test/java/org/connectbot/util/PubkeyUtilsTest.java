@@ -24,6 +24,7 @@ import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.math.BigInteger;
+import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -34,6 +35,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -368,4 +370,47 @@ public class PubkeyUtilsTest {
 		} catch (NoSuchAlgorithmException expected) {
 		}
 	}
+
+	@Test
+	public void pbkdf2_Rfc7914_TestVector() throws Exception {
+		byte[] expected = new BigInteger("55ac046e56e3089fec1691c22544b605", 16).toByteArray();
+
+		assertTrue(Arrays.equals(expected,
+				PubkeyUtils.pbkdf2("passwd", "salt".getBytes("UTF-8"), 1, 16)));
+	}
+
+	@Test
+	public void encrypt_Decrypt_RoundTrip() throws Exception {
+		byte[] encrypted = PubkeyUtils.encrypt(EC_KEY_PKCS8, "secret", 4096);
+
+		assertFalse(PubkeyUtils.needsReencryption(encrypted));
+		assertTrue(Arrays.equals(EC_KEY_PKCS8, PubkeyUtils.decrypt(encrypted, "secret")));
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void decrypt_WrongPassword_Failure() throws Exception {
+		byte[] encrypted = PubkeyUtils.encrypt(EC_KEY_PKCS8, "secret", 4096);
+
+		PubkeyUtils.decrypt(encrypted, "wrong");
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void decrypt_TamperedCiphertext_Failure() throws Exception {
+		byte[] encrypted = PubkeyUtils.encrypt(EC_KEY_PKCS8, "secret", 4096);
+		encrypted[encrypted.length - 40] ^= 0x01;
+
+		PubkeyUtils.decrypt(encrypted, "secret");
+	}
+
+	@Test
+	public void decrypt_LegacyFormat_NeedsReencryption() throws Exception {
+		byte[] salt = new byte[8];
+		byte[] ciphertext = Encryptor.encrypt(salt, 1000, "secret", EC_KEY_PKCS8);
+		byte[] legacy = new byte[salt.length + ciphertext.length];
+		System.arraycopy(salt, 0, legacy, 0, salt.length);
+		System.arraycopy(ciphertext, 0, legacy, salt.length, ciphertext.length);
+
+		assertTrue(PubkeyUtils.needsReencryption(legacy));
+		assertTrue(Arrays.equals(EC_KEY_PKCS8, PubkeyUtils.decrypt(legacy, "secret")));
+	}
 }
@@ -0,0 +1,129 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.mock.NullTerminal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.vt320;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TerminalTextModelTest {
+	private static final int COLUMNS = 80;
+	private static final int ROWS = 24;
+	private static final int SCROLLBACK = 5000;
+
+	private vt320 buffer;
+	private TerminalTextModel model;
+
+	@Before
+	public void setUp() {
+		buffer = new NullTerminal(COLUMNS, ROWS, SCROLLBACK);
+
+		model = new TerminalTextModel();
+	}
+
+	/**
+	 * The text the overlay used to build by concatenating every row.
+	 */
+	private String expectedText() {
+		StringBuilder sb = new StringBuilder();
+		for (int r = 0; r < buffer.getBufferSize() && buffer.charArray[r] != null; r++) {
+			String line = new String(buffer.charArray[r], 0, buffer.getColumns() - 1);
+			sb.append(line.replaceAll("\\s+$", "")).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private void printLines(int first, int count) {
+		for (int i = first; i < first + count; i++)
+			buffer.putString("line " + i + "\r\n");
+	}
+
+	@Test
+	public void update_MatchesBuffer() {
+		printLines(0, 10);
+		model.update(buffer);
+		assertEquals(expectedText(), model.getText().toString());
+	}
+
+	@Test
+	public void update_Unchanged_RewritesNothing() {
+		printLines(0, 100);
+		model.update(buffer);
+		assertEquals(0, model.update(buffer));
+	}
+
+	@Test
+	public void update_NewOutput_RewritesOnlyChangedRows() {
+		printLines(0, 100);
+		model.update(buffer);
+
+		printLines(100, 2);
+		int changed = model.update(buffer);
+
+		assertEquals(expectedText(), model.getText().toString());
+		assertTrue("rewrote " + changed + " rows", changed <= ROWS + 2);
+	}
+
+	@Test
+	public void update_FullScrollback_TrimsScrolledRows() {
+		printLines(0, SCROLLBACK + ROWS);
+		model.update(buffer);
+
+		printLines(SCROLLBACK + ROWS, 50);
+		int changed = model.update(buffer);
+
+		assertEquals(expectedText(), model.getText().toString());
+		assertTrue("rewrote " + changed + " rows", changed <= ROWS + 50);
+	}
+
+	@Test
+	public void update_AfterBlankLines_MatchesBuffer() {
+		printLines(0, 10);
+		model.update(buffer);
+
+		printLines(10, 5);
+		model.appendBlankLines(5);
+		model.update(buffer);
+
+		assertEquals(expectedText(), model.getText().toString());
+	}
+
+	@Test
+	public void update_AfterReset_MatchesBuffer() {
+		printLines(0, 200);
+		model.update(buffer);
+
+		buffer.reset();
+		buffer.setBufferSize(SCROLLBACK);
+		printLines(0, 3);
+		model.update(buffer);
+
+		assertEquals(expectedText(), model.getText().toString());
+	}
+}
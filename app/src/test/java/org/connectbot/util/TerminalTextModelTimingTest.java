@@ -0,0 +1,89 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.mock.NullTerminal;
+import org.connectbot.mock.Timing;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.vt320;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * How long a long-press waits for the selection overlay to catch up with a
+ * full 5000 row scrollback, first from nothing and then after more output.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TerminalTextModelTimingTest {
+	private static final int COLUMNS = 80;
+	private static final int ROWS = 24;
+	private static final int SCROLLBACK = 5000;
+	private static final int RUNS = 5;
+
+	private vt320 buffer;
+	private int printed;
+
+	@Before
+	public void setUp() {
+		Timing.assumeRequested();
+
+		buffer = new NullTerminal(COLUMNS, ROWS, SCROLLBACK);
+
+		printLines(SCROLLBACK + ROWS);
+	}
+
+	private void printLines(int count) {
+		for (int i = 0; i < count; i++, printed++)
+			buffer.putString(String.format("%6d  drwxr-xr-x  2 connectbot users  4096 Oct 19 13:22 directory-%d\r\n",
+					printed, printed));
+	}
+
+	@Test
+	public void update_FullScrollback() {
+		// let the JIT see the code once before measuring
+		new TerminalTextModel().update(buffer);
+
+		long first = 0;
+		long incremental = 0;
+		for (int i = 0; i < RUNS; i++) {
+			TerminalTextModel model = new TerminalTextModel();
+
+			long start = System.nanoTime();
+			model.update(buffer);
+			first += System.nanoTime() - start;
+
+			printLines(50);
+
+			start = System.nanoTime();
+			model.update(buffer);
+			incremental += System.nanoTime() - start;
+
+			assertEquals(SCROLLBACK, model.getLineCount());
+		}
+
+		Timing.report("selection text for %d rows: %.1f ms from nothing, %.1f ms after 50 new rows",
+				SCROLLBACK, Timing.millis(first / RUNS), Timing.millis(incremental / RUNS));
+	}
+}
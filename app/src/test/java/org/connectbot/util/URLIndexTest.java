@@ -0,0 +1,110 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.connectbot.BuildConfig;
+import org.connectbot.mock.NullTerminal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.mud.terminal.vt320;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class URLIndexTest {
+	private static final int COLUMNS = 40;
+	private static final int ROWS = 24;
+	private static final int SCROLLBACK = 500;
+
+	private vt320 buffer;
+	private URLIndex index;
+
+	@Before
+	public void setUp() {
+		buffer = new NullTerminal(COLUMNS, ROWS, SCROLLBACK);
+
+		index = new URLIndex();
+	}
+
+	@Test
+	public void scan_NoURLs_Empty() {
+		buffer.putString("nothing: to see here\r\n");
+		assertEquals(Collections.<String>emptyList(), index.scan(buffer));
+	}
+
+	@Test
+	public void scan_FindsURLsInText() {
+		buffer.putString("see http://example.com/a?b=c, or\r\n");
+		buffer.putString("(mailto:root@example.org).\r\n");
+		assertEquals(Arrays.asList("http://example.com/a?b=c", "mailto:root@example.org"),
+				index.scan(buffer));
+	}
+
+	@Test
+	public void scan_WrappedURL_Joined() {
+		buffer.putString("https://example.com/a/very/long/path/that/wraps/around\r\n");
+		assertEquals(Arrays.asList("https://example.com/a/very/long/path/that/wraps/around"),
+				index.scan(buffer));
+	}
+
+	@Test
+	public void scan_IncludesScrollback() {
+		buffer.putString("ftp://example.net/\r\n");
+		for (int i = 0; i < ROWS * 2; i++)
+			buffer.putString("filler " + i + "\r\n");
+		assertEquals(Arrays.asList("ftp://example.net/"), index.scan(buffer));
+	}
+
+	@Test
+	public void scan_Repeated_OnlyRescansChangedRows() {
+		for (int i = 0; i < ROWS * 4; i++)
+			buffer.putString("http://example.com/" + i + "\r\n");
+		index.scan(buffer);
+
+		assertEquals(0, scanAgain());
+
+		buffer.putString("http://example.com/new\r\n");
+		assertEquals(2, scanAgain());
+	}
+
+	@Test
+	public void scan_RowChangedBeforeScrollingOff_Rescanned() {
+		buffer.putString("http://example.com/old\r\n");
+		index.scan(buffer);
+
+		// overwrite the same row, then push it into the scrollback
+		buffer.putString("\u001b[Ahttp://example.com/new\r\n");
+		for (int i = 0; i < ROWS; i++)
+			buffer.putString("filler " + i + "\r\n");
+
+		assertEquals(Arrays.asList("http://example.com/new"), index.scan(buffer));
+	}
+
+	private int scanAgain() {
+		index.scan(buffer);
+		return index.getLastRescanned();
+	}
+}
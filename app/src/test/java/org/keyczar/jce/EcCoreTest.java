@@ -0,0 +1,114 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keyczar.jce;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EcCoreTest {
+	private static final String[] CURVES = { "secp256r1", "secp384r1", "secp521r1" };
+
+	private static KeyPair generate(String curve) throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+		kpg.initialize(new ECGenParameterSpec(curve));
+		return kpg.generateKeyPair();
+	}
+
+	private static BigInteger[] generator(ECParameterSpec params) {
+		ECPoint g = params.getGenerator();
+		return new BigInteger[] { g.getAffineX(), g.getAffineY() };
+	}
+
+	private static void assertSamePoint(BigInteger[] expected, BigInteger[] actual) {
+		assertEquals(expected[0], actual[0]);
+		assertEquals(expected[1], actual[1]);
+	}
+
+	@Test
+	public void multiplyPoint_GeneratedKeys_MatchesPublicKey() throws Exception {
+		for (String curve : CURVES) {
+			KeyPair pair = generate(curve);
+			ECPrivateKey priv = (ECPrivateKey) pair.getPrivate();
+			ECPoint w = ((ECPublicKey) pair.getPublic()).getW();
+			ECParameterSpec params = priv.getParams();
+
+			BigInteger[] result = EcCore.multiplyPoint(generator(params), priv.getS(), params);
+			assertSamePoint(new BigInteger[] { w.getAffineX(), w.getAffineY() }, result);
+		}
+	}
+
+	@Test
+	public void multiplyPoint_RandomScalars_MatchesAffine() throws Exception {
+		Random random = new Random(0x5eed);
+		for (String curve : CURVES) {
+			ECParameterSpec params = ((ECPublicKey) generate(curve).getPublic()).getParams();
+			BigInteger[] g = generator(params);
+			BigInteger n = params.getOrder();
+
+			for (int i = 0; i < 8; i++) {
+				BigInteger k = new BigInteger(n.bitLength(), random).mod(n);
+				assertSamePoint(EcCore.multiplyPointA(g, k, params),
+						EcCore.multiplyPoint(g, k, params));
+			}
+		}
+	}
+
+	@Test
+	public void multiplyPoint_EdgeScalars_MatchesAffine() throws Exception {
+		for (String curve : CURVES) {
+			ECParameterSpec params = ((ECPublicKey) generate(curve).getPublic()).getParams();
+			BigInteger[] g = generator(params);
+			BigInteger n = params.getOrder();
+
+			BigInteger[] scalars = {
+					BigInteger.ONE,
+					BigInteger.valueOf(2),
+					BigInteger.valueOf(15),
+					BigInteger.valueOf(16),
+					BigInteger.valueOf(17),
+					n.subtract(BigInteger.ONE),
+					n.subtract(BigInteger.valueOf(2)),
+					BigInteger.ONE.shiftLeft(n.bitLength() - 1),
+			};
+			for (BigInteger k : scalars)
+				assertSamePoint(EcCore.multiplyPointA(g, k, params),
+						EcCore.multiplyPoint(g, k, params));
+		}
+	}
+
+	@Test
+	public void multiplyPoint_Zero_PointAtInfinity() throws Exception {
+		ECParameterSpec params = ((ECPublicKey) generate("secp256r1").getPublic()).getParams();
+
+		BigInteger[] result = EcCore.multiplyPoint(generator(params), BigInteger.ZERO, params);
+		assertNull(result[0]);
+		assertNull(result[1]);
+	}
+}
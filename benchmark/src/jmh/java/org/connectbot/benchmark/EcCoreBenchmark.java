@@ -0,0 +1,75 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.util.concurrent.TimeUnit;
+
+import org.keyczar.jce.EcCore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Recovers a public key from a private one on each NIST curve, as loading an
+ * EC key does, with the windowed Jacobian multiplication and with the affine
+ * double-and-add it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EcCoreBenchmark {
+	@Param({ "secp256r1", "secp384r1", "secp521r1" })
+	public String curve;
+
+	private ECParameterSpec params;
+	private BigInteger[] generator;
+	private BigInteger scalar;
+
+	@Setup
+	public void setUp() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+		kpg.initialize(new ECGenParameterSpec(curve));
+		ECPrivateKey key = (ECPrivateKey) kpg.generateKeyPair().getPrivate();
+
+		params = key.getParams();
+		ECPoint g = params.getGenerator();
+		generator = new BigInteger[] { g.getAffineX(), g.getAffineY() };
+		scalar = key.getS();
+	}
+
+	@Benchmark
+	public BigInteger[] multiplyPoint() {
+		return EcCore.multiplyPoint(generator, scalar, params);
+	}
+
+	@Benchmark
+	public BigInteger[] multiplyPointAffine() {
+		return EcCore.multiplyPointA(generator, scalar, params);
+	}
+}
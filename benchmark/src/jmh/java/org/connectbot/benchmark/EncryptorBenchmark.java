@@ -0,0 +1,62 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.connectbot.util.Encryptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The legacy key encryption, with the iteration count keys in the old
+ * format were stored with, on a 2K private key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncryptorBenchmark {
+	private static final int ITERATIONS = 1000;
+	private static final String PASSWORD = "correct horse battery staple";
+
+	private final byte[] cleartext = new byte[2048];
+	private final byte[] salt = new byte[8];
+	private byte[] ciphertext;
+
+	@Setup
+	public void setUp() throws Exception {
+		new Random(1).nextBytes(cleartext);
+		ciphertext = Encryptor.encrypt(salt, ITERATIONS, PASSWORD, cleartext);
+	}
+
+	@Benchmark
+	public byte[] encrypt() throws Exception {
+		return Encryptor.encrypt(new byte[8], ITERATIONS, PASSWORD, cleartext);
+	}
+
+	@Benchmark
+	public byte[] decrypt() throws Exception {
+		return Encryptor.decrypt(salt, ITERATIONS, PASSWORD, ciphertext);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.harmony.niochar.charset.additional.IBM437;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decodes a 4K read in the CP437 charset used by BBSes and old DOS hosts,
+ * either plain ASCII or full of box drawing characters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IBM437Benchmark {
+	private static final int READ = 4096;
+
+	@Param({ "ascii", "boxes" })
+	public String text;
+
+	private final ByteBuffer in = ByteBuffer.allocate(READ);
+	private final CharBuffer out = CharBuffer.allocate(READ);
+	private CharsetDecoder decoder;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		byte[] bytes = in.array();
+		for (int i = 0; i < READ; i++) {
+			if ("boxes".equals(text) && random.nextBoolean())
+				bytes[i] = (byte) (0xb0 + random.nextInt(0x30));
+			else
+				bytes[i] = (byte) (' ' + random.nextInt(95));
+		}
+
+		decoder = new IBM437("IBM437", new String[] { "IBM437", "CP437" }).newDecoder();
+	}
+
+	@Benchmark
+	public CoderResult decode() {
+		in.clear();
+		out.clear();
+		decoder.reset();
+		return decoder.decode(in, out, true);
+	}
+}
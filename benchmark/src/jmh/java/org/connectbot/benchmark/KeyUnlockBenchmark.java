@@ -0,0 +1,63 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.connectbot.util.PubkeyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unlocks a key stored in the current PBKDF2 format. The iteration count is
+ * calibrated on this machine when the key is encrypted, so the result shows
+ * how close the calibration lands to its target rather than the speed of
+ * the code alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyUnlockBenchmark {
+	private static final String PASSWORD = "correct horse battery staple";
+
+	private byte[] encrypted;
+
+	@Setup
+	public void setUp() throws Exception {
+		byte[] key = new byte[1218];
+		new Random(1).nextBytes(key);
+		encrypted = PubkeyUtils.encrypt(key, PASSWORD);
+	}
+
+	@Benchmark
+	public byte[] decrypt() throws Exception {
+		return PubkeyUtils.decrypt(encrypted, PASSWORD);
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.mud.terminal.Precomposer;
+
+/**
+ * Combining marks after Latin, Greek and Cyrillic letters, including pairs
+ * that have no precomposed form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrecomposerBenchmark {
+	private static final int PAIRS = 1024;
+
+	private static final char[] BASES = { 'a', 'e', 'o', 'u', 'A', 'N', 'z', '\u03b1', '\u0438', 'q' };
+	private static final char[] MARKS = { '\u0300', '\u0301', '\u0302', '\u0303', '\u0308', '\u030a', '\u0327' };
+
+	private final char[] bases = new char[PAIRS];
+	private final char[] marks = new char[PAIRS];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		for (int i = 0; i < PAIRS; i++) {
+			bases[i] = BASES[random.nextInt(BASES.length)];
+			marks[i] = MARKS[random.nextInt(MARKS.length)];
+		}
+	}
+
+	/** Precomposes {@value #PAIRS} pairs. */
+	@Benchmark
+	public int precompose() {
+		int sum = 0;
+		for (int i = 0; i < PAIRS; i++)
+			sum += Precomposer.precompose(bases[i], marks[i]);
+		return sum;
+	}
+}
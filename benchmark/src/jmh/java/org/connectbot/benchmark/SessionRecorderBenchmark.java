@@ -0,0 +1,81 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.connectbot.service.SessionRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * What the relay thread pays to hand a 4K read to a session recorder. The
+ * benchmark outruns any disk, so most of the time the queue is full and the
+ * read is dropped; that is the worst case the terminal sees.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionRecorderBenchmark {
+	private static final int READ = 4096;
+
+	private final char[] read = new char[READ];
+	private File directory;
+	private SessionRecorder recorder;
+
+	@Setup
+	public void setUp() throws Exception {
+		Random random = new Random(1);
+		for (int i = 0; i < READ; i++)
+			read[i] = (char) (' ' + random.nextInt(95));
+
+		directory = File.createTempFile("recordings", "");
+		if (!directory.delete() || !directory.mkdir())
+			throw new IllegalStateException("Could not create " + directory);
+
+		recorder = new SessionRecorder(directory, "benchmark", "benchmark", 80, 24, false);
+		recorder.start();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		recorder.close();
+		recorder.awaitClose(10000);
+
+		File[] parts = directory.listFiles();
+		if (parts != null) {
+			for (File part : parts)
+				part.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public SessionRecorder output() {
+		recorder.output(read, 0, READ);
+		return recorder;
+	}
+}
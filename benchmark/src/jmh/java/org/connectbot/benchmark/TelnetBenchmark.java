@@ -0,0 +1,139 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.mud.telnet.TelnetProtocolHandler;
+
+/**
+ * Runs 4K reads through {@link TelnetProtocolHandler#negotiate} the way the
+ * telnet transport does, with option negotiation and escaped 0xff bytes
+ * mixed into the text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TelnetBenchmark {
+	private static final byte IAC = (byte) 255;
+	private static final byte WILL = (byte) 251;
+	private static final byte DO = (byte) 253;
+	private static final byte SB = (byte) 250;
+	private static final byte SE = (byte) 240;
+	private static final byte ECHO = 1;
+	private static final byte SGA = 3;
+	private static final byte TTYPE = 24;
+
+	private static final int READ = 4096;
+
+	/** How many bytes in a thousand start a telnet command. */
+	@Param({ "0", "5", "50" })
+	public int commandsPerThousand;
+
+	private byte[] input;
+	private final byte[] output = new byte[READ];
+	private TelnetProtocolHandler handler;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		while (bytes.size() < READ - 8) {
+			if (random.nextInt(1000) < commandsPerThousand) {
+				switch (random.nextInt(4)) {
+				case 0:
+					bytes.write(IAC);
+					bytes.write(WILL);
+					bytes.write(random.nextBoolean() ? ECHO : SGA);
+					break;
+				case 1:
+					bytes.write(IAC);
+					bytes.write(DO);
+					bytes.write(TTYPE);
+					break;
+				case 2:
+					bytes.write(IAC);
+					bytes.write(SB);
+					bytes.write(TTYPE);
+					bytes.write(1);
+					bytes.write(IAC);
+					bytes.write(SE);
+					break;
+				default:
+					// an escaped 0xff in the data
+					bytes.write(IAC);
+					bytes.write(IAC);
+				}
+			} else {
+				bytes.write(' ' + random.nextInt(95));
+			}
+		}
+		input = bytes.toByteArray();
+
+		handler = new TelnetProtocolHandler() {
+			@Override
+			protected String getTerminalType() {
+				return "xterm-256color";
+			}
+
+			@Override
+			protected int[] getWindowSize() {
+				return new int[] { 80, 24 };
+			}
+
+			@Override
+			protected void setLocalEcho(boolean echo) {
+			}
+
+			@Override
+			protected void notifyEndOfRecord() {
+			}
+
+			@Override
+			protected void write(byte[] b) {
+			}
+
+			@Override
+			protected String getCharsetName() {
+				return "UTF-8";
+			}
+		};
+	}
+
+	@Benchmark
+	public int negotiate() throws IOException {
+		handler.inputfeed(input, 0, input.length);
+		int total = 0;
+		int n;
+		while ((n = handler.negotiate(output, 0)) != -1)
+			total += n;
+		return total;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.connectbot.mock.Trace;
+import org.connectbot.mock.TraceCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.text.AndroidCharacter;
+import de.mud.terminal.vt320;
+
+/**
+ * Feeds each trace of the replay corpus to {@link vt320} the way the relay
+ * thread does: decoded in the reads it arrived in, with character widths
+ * measured per read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TerminalParseBenchmark {
+	@Param({ "cat", "htop", "vim", "ls", "cjk", "sgr" })
+	public String trace;
+
+	private final List<char[]> reads = new ArrayList<>();
+	private final List<byte[]> widths = new ArrayList<>();
+	private vt320 buffer;
+
+	@Setup
+	public void setUp() throws Exception {
+		Trace selected = null;
+		for (Trace candidate : TraceCorpus.all()) {
+			if (candidate.getName().equals(trace))
+				selected = candidate;
+		}
+		if (selected == null)
+			throw new IllegalArgumentException("No trace named " + trace);
+
+		CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+		ByteBuffer in = ByteBuffer.allocate((int) selected.size());
+		CharBuffer out = CharBuffer.allocate((int) selected.size());
+		for (Trace.Chunk chunk : selected.getChunks()) {
+			in.put(chunk.data);
+			in.flip();
+			decoder.decode(in, out, false);
+			in.compact();
+
+			char[] read = new char[out.position()];
+			out.flip();
+			out.get(read);
+			out.clear();
+
+			byte[] width = new byte[read.length];
+			AndroidCharacter.getEastAsianWidths(read, 0, read.length, width);
+			reads.add(read);
+			widths.add(width);
+		}
+
+		buffer = Terminals.newTerminal(80, 24, 140);
+	}
+
+	@Benchmark
+	public vt320 putString() {
+		for (int i = 0; i < reads.size(); i++) {
+			char[] read = reads.get(i);
+			buffer.putString(read, widths.get(i), 0, read.length);
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import de.mud.terminal.VDUBuffer;
+import de.mud.terminal.VDUDisplay;
+import de.mud.terminal.vt320;
+
+/**
+ * Terminals with nothing attached, as a headless bridge would have.
+ */
+final class Terminals {
+	private Terminals() {
+	}
+
+	private static final class NullDisplay implements VDUDisplay {
+		private VDUBuffer buffer;
+
+		public void redraw() {
+		}
+
+		public void updateScrollBar() {
+		}
+
+		public void setVDUBuffer(VDUBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public VDUBuffer getVDUBuffer() {
+			return buffer;
+		}
+
+		public void setColor(int index, int red, int green, int blue) {
+		}
+
+		public void resetColors() {
+		}
+	}
+
+	static vt320 newTerminal(int columns, int rows, int scrollback) {
+		vt320 buffer = new vt320() {
+			@Override
+			public void debug(String s) {
+			}
+
+			@Override
+			public void write(byte[] b) {
+			}
+
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void sendTelnetCommand(byte cmd) {
+			}
+
+			@Override
+			public void setWindowSize(int c, int r) {
+			}
+		};
+		attach(buffer, columns, rows, scrollback);
+		return buffer;
+	}
+
+	static VDUBuffer newBuffer(int columns, int rows, int scrollback) {
+		VDUBuffer buffer = new VDUBuffer();
+		attach(buffer, columns, rows, scrollback);
+		return buffer;
+	}
+
+	private static void attach(VDUBuffer buffer, int columns, int rows, int scrollback) {
+		NullDisplay display = new NullDisplay();
+		display.setVDUBuffer(buffer);
+		buffer.setDisplay(display);
+		buffer.setScreenSize(columns, rows, false);
+		buffer.setBufferSize(scrollback);
+	}
+}
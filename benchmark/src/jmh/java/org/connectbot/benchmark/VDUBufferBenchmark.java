@@ -0,0 +1,83 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.mud.terminal.VDUBuffer;
+
+/**
+ * Scrolling and clearing on a full 80x24 screen, with the default
+ * scrollback and a long one. A buffer with no scrollback at all is left out:
+ * scrolling it up fails inside insertLine and only the error path would be
+ * measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VDUBufferBenchmark {
+	@Param({ "140", "1000" })
+	public int scrollback;
+
+	private VDUBuffer buffer;
+
+	@Setup
+	public void setUp() {
+		buffer = Terminals.newBuffer(80, 24, scrollback);
+		for (int row = 0; row < buffer.getRows(); row++)
+			buffer.putString(0, row, "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ!@#$%^&*()_+-=[]{}",
+					VDUBuffer.BOLD);
+	}
+
+	/** A line feed on the bottom row. */
+	@Benchmark
+	public VDUBuffer scrollUp() {
+		buffer.insertLine(buffer.getRows() - 1, 1, VDUBuffer.SCROLL_UP);
+		return buffer;
+	}
+
+	/** A reverse index on the top row, as editors send to scroll back. */
+	@Benchmark
+	public VDUBuffer scrollDown() {
+		buffer.insertLine(0, 1, VDUBuffer.SCROLL_DOWN);
+		return buffer;
+	}
+
+	/** Clearing the whole screen. */
+	@Benchmark
+	public VDUBuffer deleteAreaScreen() {
+		buffer.deleteArea(0, 0, buffer.getColumns(), buffer.getRows(), VDUBuffer.NORMAL);
+		return buffer;
+	}
+
+	/** Clearing to the end of a line. */
+	@Benchmark
+	public VDUBuffer deleteAreaLine() {
+		buffer.deleteArea(40, 12, buffer.getColumns() - 40, 1, VDUBuffer.NORMAL);
+		return buffer;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2015 Kenny Root, Jeffrey Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+/**
+ * Stands in for the Android character width table so the terminal core can
+ * run on a desktop JVM. Only the main wide blocks are recognised, which is
+ * enough to send CJK text down the same paths as on a device.
+ */
+public final class AndroidCharacter {
+	public static final int EAST_ASIAN_WIDTH_NEUTRAL = 0;
+	public static final int EAST_ASIAN_WIDTH_AMBIGUOUS = 1;
+	public static final int EAST_ASIAN_WIDTH_HALF_WIDTH = 2;
+	public static final int EAST_ASIAN_WIDTH_FULL_WIDTH = 3;
+	public static final int EAST_ASIAN_WIDTH_NARROW = 4;
+	public static final int EAST_ASIAN_WIDTH_WIDE = 5;
+
+	private AndroidCharacter() {
+	}
+
+	public static int getEastAsianWidth(char input) {
+		if (input >= 0xff01 && input <= 0xff60 || input >= 0xffe0 && input <= 0xffe6)
+			return EAST_ASIAN_WIDTH_FULL_WIDTH;
+		if (input >= 0x1100 && input <= 0x115f
+				|| input >= 0x2e80 && input <= 0xa4cf
+				|| input >= 0xac00 && input <= 0xd7a3
+				|| input >= 0xf900 && input <= 0xfaff
+				|| input >= 0xfe30 && input <= 0xfe4f)
+			return EAST_ASIAN_WIDTH_WIDE;
+		if (input < 0x7f)
+			return EAST_ASIAN_WIDTH_NARROW;
+		return EAST_ASIAN_WIDTH_NEUTRAL;
+	}
+
+	public static void getEastAsianWidths(char[] src, int start, int count, byte[] dest) {
+		for (int i = 0; i < count; i++)
+			dest[i] = (byte) getEastAsianWidth(src[start + i]);
+	}
+}